@@ -0,0 +1,64 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.engine.*;
+import org.unifize.discountplatform.sample.AssignmentScenario;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline: the assignment cart and its four rules, as run by Main.
+ * Run with -prof gc to see allocation per calculation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssignmentScenarioBenchmark {
+
+    @Param({"OFF", "SUMMARY", "FULL"})
+    public ReasoningLevel reasoningLevel;
+
+    private Cart cart;
+    private List<DiscountStrategy> strategies;
+    private DiscountPlan plan;
+    private DiscountRuleIndex index;
+    private DiscountCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        cart = AssignmentScenario.createCart();
+        strategies = AssignmentScenario.createDiscountStrategies();
+        plan = DiscountPlan.compile(strategies);
+        index = new DiscountRuleIndex(plan);
+        calculator = new DiscountCalculator(reasoningLevel);
+    }
+
+    @Benchmark
+    public DiscountResult linearScan() {
+        return calculator.calculateDiscounts(cart, strategies);
+    }
+
+    @Benchmark
+    public DiscountResult compiledPlan() {
+        return calculator.calculate(cart, plan);
+    }
+
+    @Benchmark
+    public DiscountResult ruleIndex() {
+        return calculator.calculateDiscounts(cart, index);
+    }
+
+    /**
+     * Includes rendering, i.e. the cost paid by callers that do read the reasoning.
+     */
+    @Benchmark
+    public String compiledPlanWithReasoning() {
+        return calculator.calculate(cart, plan).getReasoning();
+    }
+}
@@ -0,0 +1,205 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.payment.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+/**
+ * Deterministic generators for benchmark carts and rule sets.
+ * A fixed seed keeps every fork and every run on identical inputs.
+ */
+public final class BenchmarkData {
+
+    private static final long SEED = 42L;
+    private static final String[] BANKS = {"ICICI", "HDFC", "SBI", "AXIS", "KOTAK"};
+    private static final String[] UPI_APPS = {"PhonePe", "GPay", "Paytm", "BHIM"};
+    private static final String[] WALLETS = {"Paytm", "Amazon Pay", "Mobikwik"};
+    private static final String[] CATEGORIES = {"T-shirts", "Footwear", "Jeans", "Jackets",
+            "Dresses", "Accessories", "Watches", "Bags"};
+
+    /**
+     * Share of the rule count given to each discount type, in BRAND, CATEGORY,
+     * VOUCHER, PAYMENT order.
+     */
+    public enum TypeMix {
+        BALANCED(25, 25, 25, 25),
+        ITEM_LEVEL(50, 50, 0, 0),
+        BRAND_HEAVY(85, 10, 1, 4),
+        CART_LEVEL(0, 0, 50, 50);
+
+        private final int[] weights;
+
+        TypeMix(int... weights) {
+            this.weights = weights;
+        }
+
+        int share(DiscountType type, int ruleCount) {
+            return ruleCount * weights[type.ordinal()] / 100;
+        }
+    }
+
+    private BenchmarkData() {}
+
+    /**
+     * Brands in the catalogue; rules and carts draw from the same universe so a
+     * realistic fraction of brand rules matches each cart.
+     */
+    static int brandUniverse(int ruleCount) {
+        return Math.max(8, Math.min(ruleCount, 20_000));
+    }
+
+    static List<DiscountStrategy> rules(int ruleCount, TypeMix mix) {
+        Random random = new Random(SEED);
+        int brands = brandUniverse(ruleCount);
+        List<DiscountStrategy> rules = new ArrayList<>(ruleCount);
+
+        for (int i = 0; i < mix.share(DiscountType.BRAND, ruleCount); i++) {
+            rules.add(BrandDiscount.builder()
+                    .id("BRAND_" + i)
+                    .description("Brand offer " + i)
+                    .discountPercent(5 + random.nextInt(50))
+                    .targetBrand(brand(random.nextInt(brands)))
+                    .build());
+        }
+        for (int i = 0; i < mix.share(DiscountType.CATEGORY, ruleCount); i++) {
+            rules.add(CategoryDiscount.builder()
+                    .id("CAT_" + i)
+                    .description("Category offer " + i)
+                    .discountPercent(5 + random.nextInt(20))
+                    .targetCategory(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .build());
+        }
+        for (int i = 0; i < mix.share(DiscountType.VOUCHER, ruleCount); i++) {
+            rules.add(VoucherDiscount.builder()
+                    .id("VOUCHER_" + i)
+                    .voucherCode("CODE" + i)
+                    .description("Voucher " + i)
+                    .discountPercent(10 + random.nextInt(60))
+                    .excludedBrands(new HashSet<>(Arrays.asList(brand(random.nextInt(brands)))))
+                    .maxDiscountCap(Money.ofRupees(100 + random.nextInt(900)))
+                    .build());
+        }
+        for (int i = 0; i < mix.share(DiscountType.PAYMENT, ruleCount); i++) {
+            rules.add(paymentOffer(i, random));
+        }
+
+        // Integer division can leave a few slots; top up with brand rules so counts are exact
+        while (rules.size() < ruleCount) {
+            int i = rules.size();
+            rules.add(BrandDiscount.builder()
+                    .id("BRAND_FILL_" + i)
+                    .description("Brand offer " + i)
+                    .discountPercent(5 + random.nextInt(50))
+                    .targetBrand(brand(random.nextInt(brands)))
+                    .build());
+        }
+        return rules;
+    }
+
+    /**
+     * Rules that all compete for the given cart: per level (brand, category, voucher,
+     * payment), the given number of rules matching it, each level one exclusive group.
+     * Brand and payment rules are non-stackable, category and voucher rules are named groups.
+     *
+     * @param exclusive false to build the same rules fully stackable, for comparison
+     */
+    static List<DiscountStrategy> competingRules(Cart cart, int rulesPerLevel, boolean exclusive) {
+        Random random = new Random(SEED + rulesPerLevel);
+        List<CartItem> items = cart.getItems();
+        List<DiscountStrategy> rules = new ArrayList<>(rulesPerLevel * 4);
+        for (int i = 0; i < rulesPerLevel; i++) {
+            CartItem item = items.get(random.nextInt(items.size()));
+            rules.add(BrandDiscount.builder()
+                    .id("BRAND_" + i)
+                    .description("Brand offer " + i)
+                    .discountPercent(5 + random.nextInt(50))
+                    .targetBrand(item.getBrand())
+                    .stackable(!exclusive)
+                    .build());
+            rules.add(CategoryDiscount.builder()
+                    .id("CAT_" + i)
+                    .description("Category offer " + i)
+                    .discountPercent(5 + random.nextInt(20))
+                    .targetCategory(item.getCategory())
+                    .exclusiveGroup(exclusive ? "category" : null)
+                    .build());
+            rules.add(VoucherDiscount.builder()
+                    .id("VOUCHER_" + i)
+                    .voucherCode(cart.getVoucherCode())
+                    .description("Voucher " + i)
+                    .discountPercent(10 + random.nextInt(60))
+                    .maxDiscountCap(Money.ofRupees(100 + random.nextInt(900)))
+                    .exclusiveGroup(exclusive ? "voucher" : null)
+                    .build());
+            rules.add(PaymentDiscount.builder()
+                    .id("PAY_" + i)
+                    .description("Payment offer " + i)
+                    .discountPercent(5 + random.nextInt(15))
+                    .maxDiscountCap(Money.ofRupees(100 + random.nextInt(400)))
+                    .minCartValue(Money.ofRupees(500 + random.nextInt(2000)))
+                    .stackable(!exclusive)
+                    .build());
+        }
+        return rules;
+    }
+
+    static Cart cart(int cartSize, int ruleCount, PaymentMode paymentMode) {
+        Random random = new Random(SEED + cartSize);
+        int brands = brandUniverse(ruleCount);
+        List<CartItem> items = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            items.add(new CartItem(
+                    "SKU-" + i,
+                    "Product " + i,
+                    brand(random.nextInt(brands)),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    Money.ofPaise(19_900 + random.nextInt(1_000_000)),
+                    1 + random.nextInt(3)));
+        }
+        return new Cart("bench-" + cartSize, items, paymentMethod(paymentMode, random),
+                "cust-1", "STANDARD", "CODE0");
+    }
+
+    private static DiscountStrategy paymentOffer(int i, Random random) {
+        PaymentDiscount.Builder builder = PaymentDiscount.builder()
+                .id("PAY_" + i)
+                .description("Payment offer " + i)
+                .discountPercent(5 + random.nextInt(15))
+                .maxDiscountCap(Money.ofRupees(100 + random.nextInt(400)))
+                .minCartValue(Money.ofRupees(500 + random.nextInt(2000)));
+        switch (i % 3) {
+            case 0:
+                return builder.paymentMode(PaymentMode.CREDIT_CARD)
+                        .requiredBank(BANKS[random.nextInt(BANKS.length)])
+                        .build();
+            case 1:
+                return builder.paymentMode(PaymentMode.UPI)
+                        .requiredUpiApp(UPI_APPS[random.nextInt(UPI_APPS.length)])
+                        .build();
+            default:
+                return builder.paymentMode(PaymentMode.WALLET)
+                        .requiredWalletProvider(WALLETS[random.nextInt(WALLETS.length)])
+                        .build();
+        }
+    }
+
+    private static PaymentMethod paymentMethod(PaymentMode mode, Random random) {
+        switch (mode) {
+            case UPI:
+                return PaymentMethodFactory.createUpi("bench@upi", UPI_APPS[random.nextInt(UPI_APPS.length)]);
+            case WALLET:
+                return PaymentMethodFactory.createWallet(WALLETS[random.nextInt(WALLETS.length)]);
+            case DEBIT_CARD:
+                return PaymentMethodFactory.createDebitCard(BANKS[random.nextInt(BANKS.length)], "RUPAY");
+            case CREDIT_CARD:
+            default:
+                return PaymentMethodFactory.createCreditCard(BANKS[random.nextInt(BANKS.length)], "VISA");
+        }
+    }
+
+    private static String brand(int i) {
+        return "BRAND-" + i;
+    }
+}
@@ -0,0 +1,89 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.BrandDiscount;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.domain.strategy.PaymentDiscount;
+import org.unifize.discountplatform.engine.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carts per second replayed against a baseline and a candidate rule set, compared with
+ * pricing the corpus once per rule set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CampaignSimulatorBenchmark {
+
+    private static final int CORPUS_SIZE = 10_000;
+
+    public enum Change {
+        BANK_OFFER,   // A new credit card offer, reaching only carts paid with that bank
+        BRAND_OFFER   // One brand offer made deeper, reaching only carts with that brand
+    }
+
+    @Param({"1000"})
+    public int ruleCount;
+
+    @Param({"BANK_OFFER", "BRAND_OFFER"})
+    public Change change;
+
+    private List<Cart> carts;
+    private List<DiscountStrategy> baseline;
+    private List<DiscountStrategy> candidate;
+    private CampaignSimulator simulator;
+    private DiscountCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        PaymentMode[] modes = PaymentMode.values();
+        carts = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            carts.add(BenchmarkData.cart(1 + i % 20, ruleCount, modes[i % modes.length]));
+        }
+        baseline = BenchmarkData.rules(ruleCount, BenchmarkData.TypeMix.BALANCED);
+        candidate = new ArrayList<>(baseline);
+        if (change == Change.BANK_OFFER) {
+            candidate.add(PaymentDiscount.builder()
+                    .id("NEW_BANK_OFFER")
+                    .description("New bank offer")
+                    .discountPercent(10)
+                    .maxDiscountCap(Money.ofRupees(250))
+                    .paymentMode(PaymentMode.CREDIT_CARD)
+                    .requiredBank("HDFC")
+                    .build());
+        } else {
+            BrandDiscount brand = (BrandDiscount) baseline.get(0);
+            candidate.set(0, BrandDiscount.builder()
+                    .id(brand.getId())
+                    .description(brand.getDescription())
+                    .discountPercent(Math.min(100, brand.getDiscountPercent() + 10))
+                    .targetBrand(brand.getTargetBrand())
+                    .build());
+        }
+        simulator = new CampaignSimulator(baseline, candidate);
+        calculator = new DiscountCalculator(ReasoningLevel.OFF);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public SimulationReport simulate() {
+        return simulator.simulate(carts);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public long priceEachRuleSet() {
+        List<DiscountResult> before = calculator.calculateBatch(carts, DiscountPlan.compile(baseline));
+        List<DiscountResult> after = calculator.calculateBatch(carts, DiscountPlan.compile(candidate));
+        return before.size() + after.size();
+    }
+}
@@ -0,0 +1,75 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brand and category discounts over carts of growing size: through the strategies, which
+ * switch to the columnar kernels from {@link ColumnarCart#MIN_LINES} lines, against the
+ * same rules applied item by item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarCartBenchmark {
+
+    private static final int RULE_COUNT = 64;
+
+    @Param({"16", "64", "256", "1024", "8192"})
+    public int cartSize;
+
+    private Cart cart;
+    private List<ItemLevelDiscount> rules;
+    private PriceLedger ledger;
+    private DiscountResult.Builder resultBuilder;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkData.cart(cartSize, RULE_COUNT, PaymentMode.UPI);
+        rules = new ArrayList<>();
+        for (DiscountStrategy rule : BenchmarkData.rules(RULE_COUNT, BenchmarkData.TypeMix.ITEM_LEVEL)) {
+            rules.add((ItemLevelDiscount) rule);
+        }
+        ledger = new PriceLedger(cart);
+        resultBuilder = DiscountResult.builder(ReasoningLevel.OFF);
+    }
+
+    @Benchmark
+    public long columnar() {
+        ledger.reset(cart);
+        long total = 0;
+        for (int r = 0; r < rules.size(); r++) {
+            total += rules.get(r).apply(cart, ledger, resultBuilder);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long itemByItem() {
+        List<CartItem> items = cart.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            ledger.set(i, items.get(i).getTotalPaise());
+        }
+        long total = 0;
+        for (int r = 0; r < rules.size(); r++) {
+            ItemLevelDiscount rule = rules.get(r);
+            for (int i = 0; i < items.size(); i++) {
+                if (rule.appliesTo(items.get(i))) {
+                    long price = ledger.get(i);
+                    long discount = rule.discountFor(price);
+                    ledger.set(i, price - discount);
+                    total += discount;
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,68 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.engine.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-cart latency and throughput across cart sizes, rule counts, rule type
+ * mixes and payment modes. The full matrix is large; narrow it with -p, e.g.
+ * -p cartSize=100 -p ruleCount=10000. Add -prof gc for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscountEngineBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    public int cartSize;
+
+    @Param({"4", "100", "10000", "100000"})
+    public int ruleCount;
+
+    @Param({"BALANCED", "ITEM_LEVEL", "BRAND_HEAVY", "CART_LEVEL"})
+    public BenchmarkData.TypeMix typeMix;
+
+    @Param({"CREDIT_CARD", "UPI", "WALLET"})
+    public PaymentMode paymentMode;
+
+    @Param({"OFF"})
+    public ReasoningLevel reasoningLevel;
+
+    private Cart cart;
+    private List<DiscountStrategy> strategies;
+    private DiscountPlan plan;
+    private DiscountRuleIndex index;
+    private DiscountCalculator calculator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        strategies = BenchmarkData.rules(ruleCount, typeMix);
+        cart = BenchmarkData.cart(cartSize, ruleCount, paymentMode);
+        plan = DiscountPlan.compile(strategies);
+        index = new DiscountRuleIndex(plan);
+        calculator = new DiscountCalculator(reasoningLevel);
+    }
+
+    @Benchmark
+    public DiscountResult linearScan() {
+        return calculator.calculateDiscounts(cart, strategies);
+    }
+
+    @Benchmark
+    public DiscountResult compiledPlan() {
+        return calculator.calculate(cart, plan);
+    }
+
+    @Benchmark
+    public DiscountResult ruleIndex() {
+        return calculator.calculateDiscounts(cart, index);
+    }
+}
@@ -0,0 +1,52 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.engine.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of choosing the best combination when every rule of a level competes with the
+ * others, against the same rules stacked without any choice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExclusiveGroupBenchmark {
+
+    @Param({"10", "100"})
+    public int cartSize;
+
+    @Param({"4", "12", "24", "48"})
+    public int rulesPerLevel;
+
+    @Param({"OFF", "SUMMARY"})
+    public ReasoningLevel reasoningLevel;
+
+    private Cart cart;
+    private DiscountPlan exclusivePlan;
+    private DiscountPlan stackablePlan;
+    private DiscountCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkData.cart(cartSize, 100, PaymentMode.UPI);
+        exclusivePlan = DiscountPlan.compile(BenchmarkData.competingRules(cart, rulesPerLevel, true));
+        stackablePlan = DiscountPlan.compile(BenchmarkData.competingRules(cart, rulesPerLevel, false));
+        calculator = new DiscountCalculator(reasoningLevel);
+    }
+
+    @Benchmark
+    public DiscountResult bestCombination() {
+        return calculator.calculate(cart, exclusivePlan);
+    }
+
+    @Benchmark
+    public DiscountResult allStacked() {
+        return calculator.calculate(cart, stackablePlan);
+    }
+}
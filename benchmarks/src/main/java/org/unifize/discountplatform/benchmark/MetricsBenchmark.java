@@ -0,0 +1,48 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.engine.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording per-strategy metrics, against the same calculator without them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @Param({"10", "100"})
+    public int cartSize;
+
+    @Param({"100"})
+    public int ruleCount;
+
+    private Cart cart;
+    private DiscountPlan plan;
+    private DiscountCalculator plain;
+    private DiscountCalculator instrumented;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkData.cart(cartSize, ruleCount, PaymentMode.UPI);
+        plan = DiscountPlan.compile(BenchmarkData.rules(ruleCount, BenchmarkData.TypeMix.BALANCED));
+        plain = new DiscountCalculator(ReasoningLevel.OFF);
+        instrumented = new DiscountCalculator(ReasoningLevel.OFF, null, new DiscountMetrics());
+    }
+
+    @Benchmark
+    public DiscountResult withoutMetrics() {
+        return plain.calculate(cart, plan);
+    }
+
+    @Benchmark
+    public DiscountResult withMetrics() {
+        return instrumented.calculate(cart, plan);
+    }
+}
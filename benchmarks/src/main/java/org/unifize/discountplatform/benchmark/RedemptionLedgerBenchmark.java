@@ -0,0 +1,59 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.engine.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservations per second against one hot rule limited by count and budget, from several
+ * threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class RedemptionLedgerBenchmark {
+
+    private Cart cart;
+    private DiscountResult result;
+    private RedemptionLedger ledger;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkData.cart(10, 100, PaymentMode.UPI);
+        List<AppliedDiscount> applied = new DiscountCalculator(ReasoningLevel.OFF)
+                .calculate(cart, DiscountPlan.compile(BenchmarkData.rules(100, BenchmarkData.TypeMix.BALANCED)))
+                .getAppliedDiscounts();
+        result = DiscountResult.builder(ReasoningLevel.OFF)
+                .originalTotal(cart.getOriginalTotal())
+                .finalPrice(cart.getOriginalTotal().subtract(applied.get(0).getAmount()))
+                .addAppliedDiscount(applied.get(0))
+                .build();
+        ledger = new RedemptionLedger();
+        ledger.setLimit(applied.get(0).getDiscountId(), RedemptionLimit.builder()
+                .maxRedemptions(Long.MAX_VALUE / 2)
+                .budget(Money.ofPaise(Long.MAX_VALUE / 2))
+                .build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        ledger.close();
+    }
+
+    @Benchmark
+    public boolean reserveAndCommit() {
+        return ledger.reserve(cart, result).commit();
+    }
+
+    @Benchmark
+    public boolean reserveAndRelease() {
+        return ledger.reserve(cart, result).release();
+    }
+}
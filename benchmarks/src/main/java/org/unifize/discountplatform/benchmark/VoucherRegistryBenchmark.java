@@ -0,0 +1,80 @@
+package org.unifize.discountplatform.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.unifize.discountplatform.domain.strategy.VoucherDiscount;
+import org.unifize.discountplatform.engine.VoucherRegistry;
+
+import java.util.AbstractList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Voucher code lookups against registries of generated codes: registered codes, and random
+ * codes of the same shape as a brute-force attempt would send. Latency should not move with
+ * the registry size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=2g")
+public class VoucherRegistryBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int codeCount;
+
+    private VoucherRegistry registry;
+    private String[] registered;
+    private String[] unknown;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        VoucherDiscount voucher = VoucherDiscount.builder()
+                .id("GENERATED")
+                .voucherCode("GENERATED")
+                .description("Single-use code")
+                .discountPercent(10)
+                .build();
+        registry = new VoucherRegistry(codeCount);
+        registry.importCodes(voucher, new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return code(index);
+            }
+
+            @Override
+            public int size() {
+                return codeCount;
+            }
+        });
+
+        Random random = new Random(42);
+        registered = new String[SAMPLES];
+        unknown = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            registered[i] = code(random.nextInt(codeCount));
+            unknown[i] = code(codeCount + random.nextInt(Integer.MAX_VALUE - codeCount));
+        }
+    }
+
+    @Benchmark
+    public VoucherDiscount registeredCode() {
+        return registry.lookup(registered[next++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public VoucherDiscount unknownCode() {
+        return registry.lookup(unknown[next++ & (SAMPLES - 1)]);
+    }
+
+    /**
+     * Codes of up to twelve characters, spread so neighbouring numbers share no prefix.
+     */
+    private static String code(long n) {
+        return Long.toString((n * 0x9E3779B97F4A7C15L) >>> 4, 36).toUpperCase();
+    }
+}
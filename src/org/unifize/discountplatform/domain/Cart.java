@@ -15,14 +15,22 @@ public final class Cart {
     private final PaymentMethod paymentMethod;
     private final String customerId;
     private final String customerTier;
+    private final String voucherCode;
+    private volatile ColumnarCart columns;
 
     public Cart(String cartId, List<CartItem> items, PaymentMethod paymentMethod,
                 String customerId, String customerTier) {
+        this(cartId, items, paymentMethod, customerId, customerTier, null);
+    }
+
+    public Cart(String cartId, List<CartItem> items, PaymentMethod paymentMethod,
+                String customerId, String customerTier, String voucherCode) {
         this.cartId = cartId;
-        this.items = new ArrayList<>(items);
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
         this.paymentMethod = paymentMethod;
         this.customerId = customerId;
         this.customerTier = customerTier;
+        this.voucherCode = voucherCode;
     }
 
     public String getCartId() {
@@ -30,7 +38,7 @@ public final class Cart {
     }
 
     public List<CartItem> getItems() {
-        return Collections.unmodifiableList(items);
+        return items;
     }
 
     public PaymentMethod getPaymentMethod() {
@@ -45,10 +53,35 @@ public final class Cart {
         return customerTier;
     }
 
+    /**
+     * @return Voucher code entered by the customer, or null if none
+     */
+    public String getVoucherCode() {
+        return voucherCode;
+    }
+
+    /**
+     * @return The items as primitive columns, built on first use and then shared
+     */
+    public ColumnarCart getColumns() {
+        ColumnarCart built = columns;
+        if (built == null) {
+            built = ColumnarCart.of(this);
+            columns = built;
+        }
+        return built;
+    }
+
     public Money getOriginalTotal() {
-        return items.stream()
-                .map(CartItem::getTotalPrice)
-                .reduce(Money.zero(), Money::add);
+        return Money.ofPaise(getOriginalTotalPaise());
+    }
+
+    public long getOriginalTotalPaise() {
+        long total = 0;
+        for (int i = 0; i < items.size(); i++) {
+            total += items.get(i).getTotalPaise();
+        }
+        return total;
     }
 
     public boolean isEmpty() {
@@ -0,0 +1,77 @@
+package org.unifize.discountplatform.domain;
+
+/**
+ * A single edit to a cart's lines: adding a line, removing one, or changing its quantity.
+ * Existing lines are addressed by product id; if several lines share it, the first is used.
+ */
+public final class CartDelta {
+
+    public enum Kind {
+        ADD,
+        REMOVE,
+        UPDATE_QUANTITY
+    }
+
+    private final Kind kind;
+    private final CartItem item;
+    private final String productId;
+    private final int quantity;
+
+    private CartDelta(Kind kind, CartItem item, String productId, int quantity) {
+        this.kind = kind;
+        this.item = item;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Append a line to the end of the cart.
+     */
+    public static CartDelta add(CartItem item) {
+        if (item == null) {
+            throw new IllegalArgumentException("item must not be null");
+        }
+        return new CartDelta(Kind.ADD, item, item.getProductId(), item.getQuantity());
+    }
+
+    public static CartDelta remove(String productId) {
+        return new CartDelta(Kind.REMOVE, null, productId, 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException if quantity is not positive; use {@link #remove(String)}
+     */
+    public static CartDelta updateQuantity(String productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        return new CartDelta(Kind.UPDATE_QUANTITY, null, productId, quantity);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The line to add, or null for other kinds
+     */
+    public CartItem getItem() {
+        return item;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return The new quantity for UPDATE_QUANTITY, the added line's quantity for ADD, 0 for REMOVE
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + productId + (kind == Kind.REMOVE ? "" : " x" + quantity);
+    }
+}
@@ -9,6 +9,8 @@ public final class CartItem {
     private final String category;
     private final Money unitPrice;
     private final int quantity;
+    private int brandId = SymbolTable.UNRESOLVED;
+    private int categoryId = SymbolTable.UNRESOLVED;
 
     public CartItem(String productId, String name, String brand, String category, Money unitPrice, int quantity) {
         this.productId = productId;
@@ -35,6 +37,30 @@ public final class CartItem {
         return category;
     }
 
+    /**
+     * @return Brand id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getBrandId() {
+        int id = brandId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(brand, id);
+            brandId = id;
+        }
+        return id;
+    }
+
+    /**
+     * @return Category id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getCategoryId() {
+        int id = categoryId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(category, id);
+            categoryId = id;
+        }
+        return id;
+    }
+
     public Money getUnitPrice() {
         return unitPrice;
     }
@@ -47,6 +73,10 @@ public final class CartItem {
         return unitPrice.multiply(quantity);
     }
 
+    public long getTotalPaise() {
+        return unitPrice.getPaise() * quantity;
+    }
+
     @Override
     public String toString() {
         return String.format("%d × %s (%s) @ %s", quantity, name, brand, unitPrice);
@@ -0,0 +1,134 @@
+package org.unifize.discountplatform.domain;
+
+import java.util.List;
+
+/**
+ * The lines of a cart as parallel primitive arrays: unit prices, quantities and line
+ * totals in paise, and the {@link SymbolTable} ids of each line's brand and category.
+ * Item-level discounts on large carts run over these columns instead of visiting one
+ * {@link CartItem} and its {@link Money} objects per line; see
+ * {@link PriceLedger#discountMatching(int[], int, int)}.
+ *
+ * Line i is the cart's item i. Ids that were missing from the symbol table are looked up
+ * again once the table has grown, as {@link CartItem#getBrandId()} does.
+ */
+public final class ColumnarCart {
+
+    /**
+     * Carts with fewer lines are priced item by item; below this the columns cost more to
+     * build than the kernels save.
+     */
+    public static final int MIN_LINES = 32;
+
+    private final int size;
+    private final long[] unitPrices;
+    private final int[] quantities;
+    private final long[] lineTotals;
+    private final String[] brands;
+    private final String[] categories;
+    private final int[] brandIds;
+    private final int[] categoryIds;
+    private volatile int resolvedAt;
+    private volatile boolean complete;
+
+    private ColumnarCart(List<CartItem> items) {
+        this.size = items.size();
+        this.unitPrices = new long[size];
+        this.quantities = new int[size];
+        this.lineTotals = new long[size];
+        this.brands = new String[size];
+        this.categories = new String[size];
+        this.brandIds = new int[size];
+        this.categoryIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            CartItem item = items.get(i);
+            unitPrices[i] = item.getUnitPrice().getPaise();
+            quantities[i] = item.getQuantity();
+            lineTotals[i] = item.getTotalPaise();
+            brands[i] = item.getBrand();
+            categories[i] = item.getCategory();
+            brandIds[i] = item.getBrandId();
+            categoryIds[i] = item.getCategoryId();
+        }
+        this.resolvedAt = SymbolTable.global().size();
+        this.complete = allResolved();
+    }
+
+    /**
+     * Build the columns of a cart's items. Prefer {@link Cart#getColumns()}, which builds
+     * them once per cart.
+     */
+    public static ColumnarCart of(Cart cart) {
+        return new ColumnarCart(cart.getItems());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getUnitPricePaise(int line) {
+        return unitPrices[line];
+    }
+
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    public long getLineTotalPaise(int line) {
+        return lineTotals[line];
+    }
+
+    /**
+     * Copy the undiscounted line totals into the start of an array.
+     */
+    public void copyLineTotals(long[] target) {
+        System.arraycopy(lineTotals, 0, target, 0, size);
+    }
+
+    /**
+     * @return Brand id of every line, negative where no rule mentions the brand;
+     *         not to be modified
+     */
+    public int[] brandIds() {
+        refreshIds();
+        return brandIds;
+    }
+
+    /**
+     * @return Category id of every line, negative where no rule mentions the category;
+     *         not to be modified
+     */
+    public int[] categoryIds() {
+        refreshIds();
+        return categoryIds;
+    }
+
+    private void refreshIds() {
+        if (!complete && resolvedAt != SymbolTable.global().size()) {
+            resolveMissing();
+        }
+    }
+
+    private synchronized void resolveMissing() {
+        SymbolTable symbols = SymbolTable.global();
+        int known = symbols.size();
+        if (complete || resolvedAt == known) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            brandIds[i] = symbols.resolve(brands[i], brandIds[i]);
+            categoryIds[i] = symbols.resolve(categories[i], categoryIds[i]);
+        }
+        complete = allResolved();
+        resolvedAt = known;
+    }
+
+    private boolean allResolved() {
+        for (int i = 0; i < size; i++) {
+            if (brandIds[i] < 0 || categoryIds[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
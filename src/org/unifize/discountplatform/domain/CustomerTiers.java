@@ -0,0 +1,105 @@
+package org.unifize.discountplatform.domain;
+
+import java.util.*;
+
+/**
+ * Ordered customer tiers, lowest first, e.g. STANDARD &lt; SILVER &lt; GOLD &lt; PLATINUM.
+ * A customer is eligible for a rule with a minimum tier when their tier ranks at or above
+ * it. Tier names compare ignoring case; a customer with no tier, or a tier outside the
+ * model, ranks below every tier and only gets rules without a minimum.
+ */
+public final class CustomerTiers {
+
+    /**
+     * Rank of a customer without a known tier, below every tier.
+     */
+    public static final int NO_TIER = -1;
+
+    private final List<String> tiers;
+    private final Map<String, Integer> ranks = new HashMap<>();
+
+    private CustomerTiers(List<String> tiers) {
+        this.tiers = List.copyOf(tiers);
+        for (int rank = 0; rank < this.tiers.size(); rank++) {
+            String tier = this.tiers.get(rank);
+            if (ranks.putIfAbsent(SymbolTable.normalize(tier), rank) != null) {
+                throw new IllegalArgumentException("Duplicate customer tier: " + tier);
+            }
+            ranks.put(tier, rank);
+        }
+    }
+
+    /**
+     * @param lowestFirst Tier names from the lowest tier to the highest
+     * @throws IllegalArgumentException if there are no tiers or two names match ignoring case
+     */
+    public static CustomerTiers of(String... lowestFirst) {
+        return of(Arrays.asList(lowestFirst));
+    }
+
+    /**
+     * @param lowestFirst Tier names from the lowest tier to the highest
+     * @throws IllegalArgumentException if there are no tiers or two names match ignoring case
+     */
+    public static CustomerTiers of(List<String> lowestFirst) {
+        if (lowestFirst.isEmpty()) {
+            throw new IllegalArgumentException("At least one customer tier is required");
+        }
+        return new CustomerTiers(lowestFirst);
+    }
+
+    /**
+     * @return Tier names, lowest first
+     */
+    public List<String> getTiers() {
+        return tiers;
+    }
+
+    public int size() {
+        return tiers.size();
+    }
+
+    /**
+     * @return Position of the tier from 0 for the lowest, or {@link #NO_TIER} if the tier is
+     *         null or not in the model
+     */
+    public int rank(String tier) {
+        if (tier == null) {
+            return NO_TIER;
+        }
+        Integer rank = ranks.get(tier);
+        if (rank == null) {
+            rank = ranks.get(SymbolTable.normalize(tier));
+        }
+        return rank != null ? rank : NO_TIER;
+    }
+
+    /**
+     * @param minCustomerTier A rule's minimum tier, or null for none
+     * @return Rank a customer needs for the rule, or {@link #NO_TIER} if anyone qualifies
+     * @throws IllegalArgumentException if the minimum tier is not in the model
+     */
+    public int requiredRank(String minCustomerTier) {
+        if (minCustomerTier == null) {
+            return NO_TIER;
+        }
+        int rank = rank(minCustomerTier);
+        if (rank == NO_TIER) {
+            throw new IllegalArgumentException("Unknown customer tier " + minCustomerTier + ", expected one of " + tiers);
+        }
+        return rank;
+    }
+
+    /**
+     * @return true if a customer of the given tier may get a rule with the given minimum
+     * @throws IllegalArgumentException if the minimum tier is not in the model
+     */
+    public boolean isEligible(String customerTier, String minCustomerTier) {
+        return rank(customerTier) >= requiredRank(minCustomerTier);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" < ", tiers);
+    }
+}
@@ -1,28 +1,39 @@
 package org.unifize.discountplatform.domain;
 
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Result of discount calculation containing final price, applied discounts, and reasoning.
+ * Reasoning and skipped reasons are recorded as trace events and rendered on first read.
  */
 public final class DiscountResult {
     private final Money originalTotal;
     private final Money finalPrice;
     private final List<AppliedDiscount> appliedDiscounts;
-    private final List<String> skippedReasons;
-    private final String reasoning;
+    private final long ruleVersion;
+    private final Cart cart;
+    private final ReasoningTrace reasoningTrace;
+    private final ReasoningTrace skipTrace;
+    private volatile List<String> skippedReasons;
+    private volatile String reasoning;
 
     private DiscountResult(Money originalTotal, Money finalPrice,
                           List<AppliedDiscount> appliedDiscounts,
-                          List<String> skippedReasons,
-                          String reasoning) {
+                          long ruleVersion,
+                          Cart cart,
+                          ReasoningTrace reasoningTrace,
+                          ReasoningTrace skipTrace) {
         this.originalTotal = originalTotal;
         this.finalPrice = finalPrice;
         this.appliedDiscounts = new ArrayList<>(appliedDiscounts);
-        this.skippedReasons = new ArrayList<>(skippedReasons);
-        this.reasoning = reasoning;
+        this.ruleVersion = ruleVersion;
+        this.cart = cart;
+        this.reasoningTrace = reasoningTrace;
+        this.skipTrace = skipTrace;
     }
 
     public Money getOriginalTotal() {
@@ -37,12 +48,29 @@ public final class DiscountResult {
         return Collections.unmodifiableList(appliedDiscounts);
     }
 
+    /**
+     * @return Version of the rule snapshot used, or 0 if the rules were passed in directly
+     */
+    public long getRuleVersion() {
+        return ruleVersion;
+    }
+
     public List<String> getSkippedReasons() {
-        return Collections.unmodifiableList(skippedReasons);
+        List<String> reasons = skippedReasons;
+        if (reasons == null) {
+            reasons = Collections.unmodifiableList(skipTrace.render(cart));
+            skippedReasons = reasons;
+        }
+        return reasons;
     }
 
     public String getReasoning() {
-        return reasoning;
+        String text = reasoning;
+        if (text == null) {
+            text = String.join("\n", reasoningTrace.render(cart));
+            reasoning = text;
+        }
+        return text;
     }
 
     public Money getTotalSavings() {
@@ -50,15 +78,65 @@ public final class DiscountResult {
     }
 
     public static Builder builder() {
-        return new Builder();
+        return new Builder(ReasoningLevel.FULL);
+    }
+
+    public static Builder builder(ReasoningLevel reasoningLevel) {
+        return new Builder(reasoningLevel);
     }
 
     public static class Builder {
+        private final ReasoningLevel reasoningLevel;
         private Money originalTotal = Money.zero();
         private Money finalPrice = Money.zero();
-        private final List<AppliedDiscount> appliedDiscounts = new ArrayList<>();
-        private final List<String> skippedReasons = new ArrayList<>();
-        private final StringBuilder reasoningBuilder = new StringBuilder();
+        private long ruleVersion;
+        private Cart cart;
+        private final List<AppliedDiscount> appliedDiscounts;
+        private final ReasoningTrace reasoningTrace;
+        private final ReasoningTrace skipTrace;
+
+        private Builder(ReasoningLevel reasoningLevel) {
+            this.reasoningLevel = reasoningLevel;
+            this.appliedDiscounts = new ArrayList<>();
+            this.reasoningTrace = new ReasoningTrace();
+            this.skipTrace = new ReasoningTrace();
+        }
+
+        private Builder(Builder source) {
+            this.reasoningLevel = source.reasoningLevel;
+            this.originalTotal = source.originalTotal;
+            this.finalPrice = source.finalPrice;
+            this.ruleVersion = source.ruleVersion;
+            this.cart = source.cart;
+            this.appliedDiscounts = new ArrayList<>(source.appliedDiscounts);
+            this.reasoningTrace = source.reasoningTrace.copy();
+            this.skipTrace = source.skipTrace.copy();
+        }
+
+        /**
+         * Copy everything recorded so far, so a calculation that shares its first stages
+         * with others can record them once and continue each copy separately.
+         */
+        public Builder copy() {
+            return new Builder(this);
+        }
+
+        public ReasoningLevel getReasoningLevel() {
+            return reasoningLevel;
+        }
+
+        public Builder ruleVersion(long ruleVersion) {
+            this.ruleVersion = ruleVersion;
+            return this;
+        }
+
+        /**
+         * Cart the trace events refer to, used when rendering item names.
+         */
+        public Builder cart(Cart cart) {
+            this.cart = cart;
+            return this;
+        }
 
         public Builder originalTotal(Money originalTotal) {
             this.originalTotal = originalTotal;
@@ -76,21 +154,68 @@ public final class DiscountResult {
         }
 
         public Builder addSkippedReason(String reason) {
-            this.skippedReasons.add(reason);
+            if (reasoningLevel.recordsSummary()) {
+                skipTrace.addText(reason);
+            }
             return this;
         }
 
+        /**
+         * Record a skip that the source strategy renders later via describeTrace.
+         */
+        public Builder traceSkip(DiscountStrategy source, int event, long paise) {
+            if (reasoningLevel.recordsSummary()) {
+                skipTrace.add(source, event, -1, paise, 0);
+            }
+            return this;
+        }
+
+        /**
+         * Append preformatted reasoning. Dropped when reasoning is OFF; prefer
+         * traceItem on hot paths so no text is built up front.
+         */
         public Builder appendReasoning(String text) {
-            if (reasoningBuilder.length() > 0) {
-                reasoningBuilder.append("\n");
+            if (reasoningLevel.recordsSummary()) {
+                reasoningTrace.addText(text);
+            }
+            return this;
+        }
+
+        /**
+         * Append a cart-level reasoning line made of a label and an amount.
+         */
+        public Builder appendReasoning(String label, Money amount) {
+            if (reasoningLevel.recordsSummary()) {
+                reasoningTrace.addAmount(label, amount.getPaise());
+            }
+            return this;
+        }
+
+        /**
+         * Record a per-item step that the source strategy renders later via describeTrace.
+         */
+        public Builder traceItem(DiscountStrategy source, int event, int itemIndex,
+                                 long beforePaise, long afterPaise) {
+            if (reasoningLevel.recordsItems()) {
+                reasoningTrace.add(source, event, itemIndex, beforePaise, afterPaise);
+            }
+            return this;
+        }
+
+        /**
+         * Record one summary line for a strategy's total discount. Kept only at SUMMARY,
+         * since FULL already carries the per-item steps.
+         */
+        public Builder traceApplied(DiscountStrategy source, long discountPaise) {
+            if (reasoningLevel == ReasoningLevel.SUMMARY) {
+                reasoningTrace.add(source, ReasoningTrace.APPLIED, -1, discountPaise, 0);
             }
-            reasoningBuilder.append(text);
             return this;
         }
 
         public DiscountResult build() {
             return new DiscountResult(originalTotal, finalPrice, appliedDiscounts,
-                    skippedReasons, reasoningBuilder.toString());
+                    ruleVersion, cart, reasoningTrace, skipTrace);
         }
     }
 
@@ -109,9 +234,9 @@ public final class DiscountResult {
             }
         }
 
-        if (!skippedReasons.isEmpty()) {
+        if (!skipTrace.isEmpty()) {
             sb.append("\nSkipped Discounts:\n");
-            for (String reason : skippedReasons) {
+            for (String reason : getSkippedReasons()) {
                 sb.append("- ").append(reason).append("\n");
             }
         }
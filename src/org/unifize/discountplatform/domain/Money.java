@@ -44,7 +44,14 @@ public final class Money {
     }
 
     public Money percentage(int percent) {
-        return new Money((this.paise * percent) / 100);
+        return new Money(percentageOf(this.paise, percent));
+    }
+
+    /**
+     * Percentage of a raw paise amount, truncated exactly like {@link #percentage(int)}.
+     */
+    public static long percentageOf(long paise, int percent) {
+        return (paise * percent) / 100;
     }
 
     public Money min(Money other) {
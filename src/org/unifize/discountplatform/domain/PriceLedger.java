@@ -0,0 +1,175 @@
+package org.unifize.discountplatform.domain;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Current price of each cart line in paise, addressed by the line's index in the cart.
+ * Backed by a primitive array that is reused across calculations, so item price
+ * bookkeeping does not allocate once the ledger has grown to the largest cart seen.
+ */
+public final class PriceLedger {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] prices;
+    private int size;
+
+    public PriceLedger() {
+        this.prices = new long[DEFAULT_CAPACITY];
+    }
+
+    public PriceLedger(Cart cart) {
+        this();
+        reset(cart);
+    }
+
+    /**
+     * Load the undiscounted line totals of the given cart.
+     */
+    public void reset(Cart cart) {
+        List<CartItem> items = cart.getItems();
+        ensureCapacity(items.size());
+        if (items.size() >= ColumnarCart.MIN_LINES) {
+            cart.getColumns().copyLineTotals(prices);
+        } else {
+            for (int i = 0; i < items.size(); i++) {
+                prices[i] = items.get(i).getTotalPaise();
+            }
+        }
+        size = items.size();
+    }
+
+    /**
+     * Load line prices from a legacy item price map.
+     */
+    public void load(Cart cart, Map<CartItem, Money> itemPrices) {
+        List<CartItem> items = cart.getItems();
+        ensureCapacity(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            prices[i] = itemPrices.get(items.get(i)).getPaise();
+        }
+        size = items.size();
+    }
+
+    /**
+     * Write line prices back into a legacy item price map.
+     */
+    public void writeTo(Cart cart, Map<CartItem, Money> itemPrices) {
+        List<CartItem> items = cart.getItems();
+        for (int i = 0; i < size; i++) {
+            itemPrices.put(items.get(i), Money.ofPaise(prices[i]));
+        }
+    }
+
+    /**
+     * @return A new legacy item price map holding the current line prices
+     */
+    public Map<CartItem, Money> toItemPrices(Cart cart) {
+        Map<CartItem, Money> itemPrices = new HashMap<>();
+        writeTo(cart, itemPrices);
+        return itemPrices;
+    }
+
+    /**
+     * Replace this ledger's contents with a copy of another ledger.
+     */
+    public void copyFrom(PriceLedger other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.prices, 0, prices, 0, other.size);
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        checkIndex(index);
+        return prices[index];
+    }
+
+    public void set(int index, long paise) {
+        checkIndex(index);
+        prices[index] = paise;
+    }
+
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += prices[i];
+        }
+        return total;
+    }
+
+    /**
+     * Take a percentage off every line whose key matches, truncating each line's discount
+     * like {@link Money#percentageOf(long, int)}. The loop body has no branches and touches
+     * only primitive arrays, so the JIT can unroll it and, where the CPU allows, vectorise it.
+     *
+     * @param keys    Key of every line, e.g. {@link ColumnarCart#brandIds()}
+     * @param key     Lines with this key are discounted
+     * @param percent Discount percentage
+     * @return Total taken off, in paise
+     */
+    public long discountMatching(int[] keys, int key, int percent) {
+        checkColumn(keys);
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            long discount = keys[i] == key ? prices[i] * percent / 100 : 0;
+            prices[i] -= discount;
+            total += discount;
+        }
+        return total;
+    }
+
+    /**
+     * Take a percentage off every line except those whose key is in the excluded set,
+     * truncating each line's discount like {@link Money#percentageOf(long, int)}.
+     *
+     * @param keys     Key of every line; negative keys are never excluded
+     * @param excluded Keys of the lines to leave alone
+     * @param percent  Discount percentage
+     * @return Total taken off, in paise
+     */
+    public long discountExcept(int[] keys, BitSet excluded, int percent) {
+        checkColumn(keys);
+        long total = 0;
+        if (excluded.isEmpty()) {
+            for (int i = 0; i < size; i++) {
+                long discount = prices[i] * percent / 100;
+                prices[i] -= discount;
+                total += discount;
+            }
+            return total;
+        }
+        for (int i = 0; i < size; i++) {
+            int key = keys[i];
+            long discount = key >= 0 && excluded.get(key) ? 0 : prices[i] * percent / 100;
+            prices[i] -= discount;
+            total += discount;
+        }
+        return total;
+    }
+
+    private void checkColumn(int[] keys) {
+        if (keys.length < size) {
+            throw new IllegalArgumentException("Column of " + keys.length + " keys for cart of " + size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (prices.length < capacity) {
+            prices = Arrays.copyOf(prices, Math.max(capacity, prices.length * 2));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Line " + index + " out of bounds for cart of " + size);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.unifize.discountplatform.domain;
+
+/**
+ * How much explanation a calculation records alongside the price.
+ */
+public enum ReasoningLevel {
+    OFF,       // Price and applied discounts only, no reasoning or skipped reasons
+    SUMMARY,   // Cart totals, one line per applied discount, and skipped reasons
+    FULL;      // Every per-item step, as before reasoning levels existed
+
+    public boolean recordsSummary() {
+        return this != OFF;
+    }
+
+    public boolean recordsItems() {
+        return this == FULL;
+    }
+}
@@ -0,0 +1,121 @@
+package org.unifize.discountplatform.domain;
+
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact record of reasoning events, kept as parallel primitive arrays.
+ * Events hold only ids, indexes and paise; they are turned into text when the
+ * reasoning is first read, so calculations never pay for formatting.
+ */
+final class ReasoningTrace {
+
+    /** Summary line for a strategy's total discount, rendered generically. */
+    static final int APPLIED = -1;
+
+    private static final int TEXT = -2;
+    private static final int AMOUNT = -3;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private DiscountStrategy[] sources;
+    private String[] notes;
+    private int[] events;
+    private int[] items;
+    private long[] before;
+    private long[] after;
+    private int size;
+
+    /**
+     * Record preformatted text.
+     */
+    void addText(String text) {
+        append(null, text, TEXT, -1, 0, 0);
+    }
+
+    /**
+     * Record a label followed by an amount, e.g. "Final price: " and the final paise.
+     */
+    void addAmount(String label, long paise) {
+        append(null, label, AMOUNT, -1, paise, 0);
+    }
+
+    /**
+     * Record an event that the source strategy knows how to describe.
+     */
+    void add(DiscountStrategy source, int event, int itemIndex, long beforePaise, long afterPaise) {
+        append(source, null, event, itemIndex, beforePaise, afterPaise);
+    }
+
+    /**
+     * @return An independent trace holding the same events
+     */
+    ReasoningTrace copy() {
+        ReasoningTrace copy = new ReasoningTrace();
+        if (events != null) {
+            int capacity = Math.max(size, INITIAL_CAPACITY);
+            copy.sources = Arrays.copyOf(sources, capacity);
+            copy.notes = Arrays.copyOf(notes, capacity);
+            copy.events = Arrays.copyOf(events, capacity);
+            copy.items = Arrays.copyOf(items, capacity);
+            copy.before = Arrays.copyOf(before, capacity);
+            copy.after = Arrays.copyOf(after, capacity);
+            copy.size = size;
+        }
+        return copy;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    List<String> render(Cart cart) {
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(renderEvent(cart, i));
+        }
+        return lines;
+    }
+
+    private String renderEvent(Cart cart, int i) {
+        switch (events[i]) {
+            case TEXT:
+                return notes[i];
+            case AMOUNT:
+                return notes[i] + Money.ofPaise(before[i]);
+            case APPLIED:
+                return "  " + sources[i].getId() + ": -" + Money.ofPaise(before[i]);
+            default:
+                return sources[i].describeTrace(events[i], cart, items[i], before[i], after[i]);
+        }
+    }
+
+    private void append(DiscountStrategy source, String note, int event, int itemIndex,
+                        long beforePaise, long afterPaise) {
+        if (events == null) {
+            sources = new DiscountStrategy[INITIAL_CAPACITY];
+            notes = new String[INITIAL_CAPACITY];
+            events = new int[INITIAL_CAPACITY];
+            items = new int[INITIAL_CAPACITY];
+            before = new long[INITIAL_CAPACITY];
+            after = new long[INITIAL_CAPACITY];
+        } else if (size == events.length) {
+            int capacity = size * 2;
+            sources = Arrays.copyOf(sources, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+            events = Arrays.copyOf(events, capacity);
+            items = Arrays.copyOf(items, capacity);
+            before = Arrays.copyOf(before, capacity);
+            after = Arrays.copyOf(after, capacity);
+        }
+        sources[size] = source;
+        notes[size] = note;
+        events[size] = event;
+        items[size] = itemIndex;
+        before[size] = beforePaise;
+        after[size] = afterPaise;
+        size++;
+    }
+}
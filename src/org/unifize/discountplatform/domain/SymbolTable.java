@@ -0,0 +1,137 @@
+package org.unifize.discountplatform.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of brands, categories and payment attributes, each folded the way
+ * {@link String#equalsIgnoreCase} compares them and numbered densely from 0.
+ * Two values get the same id exactly when equalsIgnoreCase would match them, so matching
+ * a cart against a rule becomes int equality and sets of values become bitsets.
+ *
+ * Rules intern their values when they are built. Carts and payment methods only look
+ * values up, since a value no rule mentions cannot match anything, and untrusted input
+ * must not grow the table; see {@link #resolve(String, int)}. Ids are never reused.
+ */
+public final class SymbolTable {
+
+    /**
+     * Id of a null value on the rule side; no cart value ever resolves to it.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Initial value for a cached id that has not been resolved yet.
+     */
+    public static final int UNRESOLVED = -1;
+
+    private static final SymbolTable GLOBAL = new SymbolTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> byFolded = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[16];
+    private volatile int size;
+
+    /**
+     * @return The table shared by all rules and carts
+     */
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Fold a value the same way {@link String#equalsIgnoreCase} compares characters,
+     * so that two values fold equally exactly when equalsIgnoreCase would match them.
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return Id of the value, assigning one if it is new; {@link #NONE} for null
+     */
+    public int intern(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        String folded = normalize(value);
+        synchronized (this) {
+            id = byFolded.get(folded);
+            if (id == null) {
+                id = size;
+                if (id == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, id * 2);
+                }
+                symbols[id] = folded;
+                byFolded.put(folded, id);
+                size = id + 1;
+            }
+        }
+        ids.putIfAbsent(value, id);
+        return id;
+    }
+
+    /**
+     * @return Id of the value, or {@link #NONE} if it is null or was never interned
+     */
+    public int find(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = byFolded.get(normalize(value));
+        }
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * Look a value up for a holder that caches the answer, skipping the lookup when the
+     * cached answer is still current: ids never change, and a value that was missing stays
+     * missing until something new is interned.
+     *
+     * @param previous What this method last returned for the value, or {@link #UNRESOLVED}
+     * @return The id, or a negative marker for a missing value to pass back next time;
+     *         the marker never equals an interned id or {@link #NONE}
+     */
+    public int resolve(String value, int previous) {
+        if (previous >= 0) {
+            return previous;
+        }
+        int known = size;
+        if (previous == -known - 2) {
+            return previous;
+        }
+        int id = find(value);
+        return id >= 0 ? id : -known - 2;
+    }
+
+    /**
+     * @return The folded value for an id
+     * @throws IndexOutOfBoundsException if the id was never assigned
+     */
+    public String symbol(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No symbol " + id);
+        }
+        return symbols[id];
+    }
+
+    /**
+     * @return Number of interned values; every id is below it
+     */
+    public int size() {
+        return size;
+    }
+}
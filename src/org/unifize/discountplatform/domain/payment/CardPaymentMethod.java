@@ -1,6 +1,7 @@
 package org.unifize.discountplatform.domain.payment;
 
 import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.SymbolTable;
 
 /**
  * Payment method for credit/debit cards.
@@ -9,6 +10,8 @@ public final class CardPaymentMethod implements PaymentMethod {
     private final PaymentMode mode;
     private final String bank;
     private final String cardType;
+    private int bankId = SymbolTable.UNRESOLVED;
+    private int cardTypeId = SymbolTable.UNRESOLVED;
 
     private CardPaymentMethod(Builder builder) {
         this.mode = builder.mode;
@@ -23,17 +26,41 @@ public final class CardPaymentMethod implements PaymentMethod {
 
     public String getCardType() { return cardType; }
 
+    /**
+     * @return Bank id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getBankId() {
+        int id = bankId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(bank, id);
+            bankId = id;
+        }
+        return id;
+    }
+
+    /**
+     * @return Card type id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getCardTypeId() {
+        int id = cardTypeId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(cardType, id);
+            cardTypeId = id;
+        }
+        return id;
+    }
+
     @Override
     public boolean matches(PaymentMethodCriteria criteria) {
         if (criteria.getRequiredMode() != null && criteria.getRequiredMode() != mode) {
             return false;
         }
         if (criteria.getRequiredBank() != null &&
-            !criteria.getRequiredBank().equalsIgnoreCase(bank)) {
+            criteria.getRequiredBankId() != getBankId()) {
             return false;
         }
         if (criteria.getRequiredCardType() != null &&
-            !criteria.getRequiredCardType().equalsIgnoreCase(cardType)) {
+            criteria.getRequiredCardTypeId() != getCardTypeId()) {
             return false;
         }
         return true;
@@ -1,6 +1,7 @@
 package org.unifize.discountplatform.domain.payment;
 
 import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.SymbolTable;
 
 /**
  * Criteria for matching payment methods in discount rules.
@@ -11,6 +12,10 @@ public final class PaymentMethodCriteria {
     private final String requiredCardType;
     private final String requiredWalletProvider;
     private final String requiredUpiApp;
+    private final int requiredBankId;
+    private final int requiredCardTypeId;
+    private final int requiredWalletProviderId;
+    private final int requiredUpiAppId;
 
     private PaymentMethodCriteria(Builder builder) {
         this.requiredMode = builder.requiredMode;
@@ -18,6 +23,11 @@ public final class PaymentMethodCriteria {
         this.requiredCardType = builder.requiredCardType;
         this.requiredWalletProvider = builder.requiredWalletProvider;
         this.requiredUpiApp = builder.requiredUpiApp;
+        SymbolTable symbols = SymbolTable.global();
+        this.requiredBankId = symbols.intern(requiredBank);
+        this.requiredCardTypeId = symbols.intern(requiredCardType);
+        this.requiredWalletProviderId = symbols.intern(requiredWalletProvider);
+        this.requiredUpiAppId = symbols.intern(requiredUpiApp);
     }
 
     public PaymentMode getRequiredMode() { return requiredMode; }
@@ -26,6 +36,12 @@ public final class PaymentMethodCriteria {
     public String getRequiredWalletProvider() { return requiredWalletProvider; }
     public String getRequiredUpiApp() { return requiredUpiApp; }
 
+    // Symbol ids of the required values, SymbolTable.NONE where a value is not required
+    int getRequiredBankId() { return requiredBankId; }
+    int getRequiredCardTypeId() { return requiredCardTypeId; }
+    int getRequiredWalletProviderId() { return requiredWalletProviderId; }
+    int getRequiredUpiAppId() { return requiredUpiAppId; }
+
     public static Builder builder() { return new Builder(); }
 
     public static class Builder {
@@ -1,6 +1,7 @@
 package org.unifize.discountplatform.domain.payment;
 
 import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.SymbolTable;
 
 /**
  * Payment method for UPI payments.
@@ -8,6 +9,7 @@ import org.unifize.discountplatform.domain.PaymentMode;
 public final class UpiPaymentMethod implements PaymentMethod {
     private final String upiId;
     private final String app;
+    private int appId = SymbolTable.UNRESOLVED;
 
     private UpiPaymentMethod(Builder builder) {
         this.upiId = builder.upiId;
@@ -21,13 +23,25 @@ public final class UpiPaymentMethod implements PaymentMethod {
 
     public String getApp() { return app; }
 
+    /**
+     * @return UPI app id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getAppId() {
+        int id = appId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(app, id);
+            appId = id;
+        }
+        return id;
+    }
+
     @Override
     public boolean matches(PaymentMethodCriteria criteria) {
         if (criteria.getRequiredMode() != null && criteria.getRequiredMode() != PaymentMode.UPI) {
             return false;
         }
         if (criteria.getRequiredUpiApp() != null &&
-            !criteria.getRequiredUpiApp().equalsIgnoreCase(app)) {
+            criteria.getRequiredUpiAppId() != getAppId()) {
             return false;
         }
         return true;
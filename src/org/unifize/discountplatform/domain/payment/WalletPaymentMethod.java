@@ -1,12 +1,14 @@
 package org.unifize.discountplatform.domain.payment;
 
 import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.SymbolTable;
 
 /**
  * Payment method for digital wallets.
  */
 public final class WalletPaymentMethod implements PaymentMethod {
     private final String provider;
+    private int providerId = SymbolTable.UNRESOLVED;
 
     private WalletPaymentMethod(Builder builder) {
         this.provider = builder.provider;
@@ -17,13 +19,25 @@ public final class WalletPaymentMethod implements PaymentMethod {
 
     public String getProvider() { return provider; }
 
+    /**
+     * @return Wallet provider id in the global {@link SymbolTable}, or a negative value no rule matches
+     */
+    public int getProviderId() {
+        int id = providerId;
+        if (id < 0) {
+            id = SymbolTable.global().resolve(provider, id);
+            providerId = id;
+        }
+        return id;
+    }
+
     @Override
     public boolean matches(PaymentMethodCriteria criteria) {
         if (criteria.getRequiredMode() != null && criteria.getRequiredMode() != PaymentMode.WALLET) {
             return false;
         }
         if (criteria.getRequiredWalletProvider() != null &&
-            !criteria.getRequiredWalletProvider().equalsIgnoreCase(provider)) {
+            criteria.getRequiredWalletProviderId() != getProviderId()) {
             return false;
         }
         return true;
@@ -2,6 +2,7 @@ package org.unifize.discountplatform.domain.strategy;
 
 import org.unifize.discountplatform.domain.*;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Base class providing common functionality for all discount strategies.
@@ -15,6 +16,10 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
     protected final Money maxDiscountCap;
     protected final LocalDateTime createdDateTime;
     protected final LocalDateTime lastUpdatedDateTime;
+    protected final LocalDateTime validFrom;
+    protected final LocalDateTime validTo;
+    protected final boolean stackable;
+    protected final String exclusiveGroup;
 
     protected AbstractDiscountStrategy(AbstractBuilder<?> builder) {
         this.id = builder.id;
@@ -26,6 +31,10 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
                 ? builder.createdDateTime : LocalDateTime.now();
         this.lastUpdatedDateTime = builder.lastUpdatedDateTime != null
                 ? builder.lastUpdatedDateTime : LocalDateTime.now();
+        this.validFrom = builder.validFrom;
+        this.validTo = builder.validTo;
+        this.stackable = builder.stackable;
+        this.exclusiveGroup = builder.exclusiveGroup;
     }
 
     @Override
@@ -52,6 +61,40 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
     @Override
     public LocalDateTime getLastUpdatedDateTime() { return lastUpdatedDateTime; }
 
+    @Override
+    public LocalDateTime getValidFrom() { return validFrom; }
+
+    @Override
+    public LocalDateTime getValidTo() { return validTo; }
+
+    @Override
+    public boolean isStackable() { return stackable; }
+
+    @Override
+    public String getExclusiveGroup() { return exclusiveGroup; }
+
+    /**
+     * Run the ledger-based apply against a legacy item price map.
+     */
+    protected Money applyToItemPrices(Cart cart, Map<CartItem, Money> itemPrices,
+                                      DiscountResult.Builder resultBuilder) {
+        PriceLedger ledger = new PriceLedger();
+        ledger.load(cart, itemPrices);
+        resultBuilder.cart(cart);
+        long discount = apply(cart, ledger, resultBuilder);
+        ledger.writeTo(cart, itemPrices);
+        return Money.ofPaise(discount);
+    }
+
+    /**
+     * @return true if the cart is large enough for the columnar kernels and no per-item
+     *         reasoning is wanted, which only the item-by-item loop records
+     */
+    protected static boolean usesColumns(Cart cart, DiscountResult.Builder resultBuilder) {
+        return cart.getItems().size() >= ColumnarCart.MIN_LINES
+                && !resultBuilder.getReasoningLevel().recordsItems();
+    }
+
     @Override
     public String toString() {
         return String.format("%s (%s): %d%% off", id, type, discountPercent);
@@ -60,7 +103,7 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
     /**
      * Base builder for all discount strategies.
      */
-    protected abstract static class AbstractBuilder<T extends AbstractBuilder<T>> {
+    public abstract static class AbstractBuilder<T extends AbstractBuilder<T>> {
         protected String id;
         protected DiscountType type;
         protected String description;
@@ -68,6 +111,10 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
         protected Money maxDiscountCap;
         protected LocalDateTime createdDateTime;
         protected LocalDateTime lastUpdatedDateTime;
+        protected LocalDateTime validFrom;
+        protected LocalDateTime validTo;
+        protected boolean stackable = true;
+        protected String exclusiveGroup;
 
         protected abstract T self();
 
@@ -77,5 +124,9 @@ public abstract class AbstractDiscountStrategy implements DiscountStrategy {
         public T maxDiscountCap(Money maxDiscountCap) { this.maxDiscountCap = maxDiscountCap; return self(); }
         public T createdDateTime(LocalDateTime createdDateTime) { this.createdDateTime = createdDateTime; return self(); }
         public T lastUpdatedDateTime(LocalDateTime lastUpdatedDateTime) { this.lastUpdatedDateTime = lastUpdatedDateTime; return self(); }
+        public T validFrom(LocalDateTime validFrom) { this.validFrom = validFrom; return self(); }
+        public T validTo(LocalDateTime validTo) { this.validTo = validTo; return self(); }
+        public T stackable(boolean stackable) { this.stackable = stackable; return self(); }
+        public T exclusiveGroup(String exclusiveGroup) { this.exclusiveGroup = exclusiveGroup; return self(); }
     }
 }
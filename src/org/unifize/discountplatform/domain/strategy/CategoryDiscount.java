@@ -1,50 +1,80 @@
 package org.unifize.discountplatform.domain.strategy;
 
 import org.unifize.discountplatform.domain.*;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Strategy for category-specific discounts.
  * Applies discount to all items in a specific category.
  */
-public final class CategoryDiscount extends AbstractDiscountStrategy {
+public final class CategoryDiscount extends AbstractDiscountStrategy implements ItemLevelDiscount {
 
     private final String targetCategory;
+    private final int targetCategoryId;
 
     private CategoryDiscount(Builder builder) {
         super(builder);
         this.targetCategory = builder.targetCategory;
+        this.targetCategoryId = SymbolTable.global().intern(targetCategory);
     }
 
     public String getTargetCategory() { return targetCategory; }
 
+    @Override
+    public boolean appliesTo(CartItem item) {
+        return item.getCategoryId() == targetCategoryId;
+    }
+
     @Override
     public Money apply(Cart cart, Map<CartItem, Money> itemPrices,
                        DiscountResult.Builder resultBuilder) {
-        Money totalDiscount = Money.zero();
+        return applyToItemPrices(cart, itemPrices, resultBuilder);
+    }
 
-        for (CartItem item : cart.getItems()) {
-            if (item.getCategory().equalsIgnoreCase(targetCategory)) {
-                Money currentPrice = itemPrices.get(item);
-                Money itemDiscount = currentPrice.percentage(discountPercent);
+    @Override
+    public long apply(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
+        if (usesColumns(cart, resultBuilder)) {
+            long totalDiscount = ledger.discountMatching(cart.getColumns().categoryIds(), targetCategoryId, discountPercent);
+            if (totalDiscount == 0) {
+                resultBuilder.traceSkip(this, NO_MATCHING_ITEMS, 0);
+            }
+            return totalDiscount;
+        }
 
-                Money newPrice = currentPrice.subtract(itemDiscount);
-                itemPrices.put(item, newPrice);
-                totalDiscount = totalDiscount.add(itemDiscount);
+        List<CartItem> items = cart.getItems();
+        long totalDiscount = 0;
 
-                resultBuilder.appendReasoning(String.format(
-                        "  %s: %s -> %s (%d%% off %s)",
-                        id, currentPrice, newPrice, discountPercent, targetCategory));
+        for (int i = 0; i < items.size(); i++) {
+            if (appliesTo(items.get(i))) {
+                long currentPrice = ledger.get(i);
+                long itemDiscount = discountFor(currentPrice);
+
+                long newPrice = currentPrice - itemDiscount;
+                ledger.set(i, newPrice);
+                totalDiscount += itemDiscount;
+
+                resultBuilder.traceItem(this, ITEM_DISCOUNTED, i, currentPrice, newPrice);
             }
         }
 
-        if (totalDiscount.equals(Money.zero())) {
-            resultBuilder.addSkippedReason(id + ": No " + targetCategory + " items in cart");
+        if (totalDiscount == 0) {
+            resultBuilder.traceSkip(this, NO_MATCHING_ITEMS, 0);
         }
 
         return totalDiscount;
     }
 
+    @Override
+    public String describeTrace(int event, Cart cart, int itemIndex,
+                                long beforePaise, long afterPaise) {
+        if (event == NO_MATCHING_ITEMS) {
+            return id + ": No " + targetCategory + " items in cart";
+        }
+        return String.format("  %s: %s -> %s (%d%% off %s)",
+                id, Money.ofPaise(beforePaise), Money.ofPaise(afterPaise), discountPercent, targetCategory);
+    }
+
     public static Builder builder() { return new Builder(); }
 
     public static class Builder extends AbstractBuilder<Builder> {
@@ -50,6 +50,62 @@ public interface DiscountStrategy {
      */
     LocalDateTime getLastUpdatedDateTime();
 
+    /**
+     * @return Start of the validity window, inclusive, or null if valid from the start
+     */
+    default LocalDateTime getValidFrom() {
+        return null;
+    }
+
+    /**
+     * @return End of the validity window, exclusive, or null if valid with no end
+     */
+    default LocalDateTime getValidTo() {
+        return null;
+    }
+
+    /**
+     * @return Lowest customer tier eligible for this discount, or null if any customer is;
+     *         enforced when rules are compiled per tier, see {@code TieredPlan}
+     */
+    default String getMinCustomerTier() {
+        return null;
+    }
+
+    /**
+     * @return false if this discount must not be combined with other non-stackable
+     *         discounts at the same priority level; only the combination saving the
+     *         most is applied
+     */
+    default boolean isStackable() {
+        return true;
+    }
+
+    /**
+     * @return Name of the group of mutually exclusive discounts this one belongs to,
+     *         or null if none; at most one discount of a group is applied
+     */
+    default String getExclusiveGroup() {
+        return null;
+    }
+
+    /**
+     * Render a trace event this strategy recorded through the result builder.
+     * Called only when the reasoning is read, never while calculating.
+     *
+     * @param event Strategy-specific event code
+     * @param cart The cart the event refers to
+     * @param itemIndex Index of the cart line, or -1 for cart-level events
+     * @param beforePaise Price or amount before the step
+     * @param afterPaise Price or amount after the step
+     * @return One line of reasoning text
+     */
+    default String describeTrace(int event, Cart cart, int itemIndex,
+                                 long beforePaise, long afterPaise) {
+        return String.format("  %s: %s -> %s", getId(),
+                Money.ofPaise(beforePaise), Money.ofPaise(afterPaise));
+    }
+
     /**
      * Calculate and apply the discount to applicable items.
      *
@@ -60,4 +116,21 @@ public interface DiscountStrategy {
      */
     Money apply(Cart cart, Map<CartItem, Money> itemPrices,
                 DiscountResult.Builder resultBuilder);
+
+    /**
+     * Calculate and apply the discount against an index-addressed price ledger.
+     * The default adapts to the item price map so existing strategies keep working;
+     * built-in strategies override it to avoid per-item allocation.
+     *
+     * @param cart The shopping cart
+     * @param ledger Current line prices in paise (mutable, updated in place)
+     * @param resultBuilder Builder for recording reasoning
+     * @return Total discount applied, in paise
+     */
+    default long apply(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
+        Map<CartItem, Money> itemPrices = ledger.toItemPrices(cart);
+        Money discount = apply(cart, itemPrices, resultBuilder);
+        ledger.load(cart, itemPrices);
+        return discount.getPaise();
+    }
 }
@@ -0,0 +1,34 @@
+package org.unifize.discountplatform.domain.strategy;
+
+import org.unifize.discountplatform.domain.CartItem;
+import org.unifize.discountplatform.domain.Money;
+
+/**
+ * A discount whose effect on a line depends only on the product, not on the rest of the cart.
+ * Engines may therefore precompute or cache its effect per product.
+ */
+public interface ItemLevelDiscount extends DiscountStrategy {
+
+    /**
+     * Trace event code for a line this discount reduced; rendered by describeTrace.
+     */
+    int ITEM_DISCOUNTED = 0;
+
+    /**
+     * Trace event code for a discount that took nothing off the cart; rendered by describeTrace.
+     */
+    int NO_MATCHING_ITEMS = 1;
+
+    /**
+     * @return true if this discount applies to the given item
+     */
+    boolean appliesTo(CartItem item);
+
+    /**
+     * @param linePaise Current price of a matching line
+     * @return Discount taken off that line, truncated like {@link Money#percentage(int)}
+     */
+    default long discountFor(long linePaise) {
+        return Money.percentageOf(linePaise, getDiscountPercent());
+    }
+}
@@ -10,12 +10,18 @@ import java.util.*;
  */
 public final class PaymentDiscount extends AbstractDiscountStrategy {
 
+    private static final int DISCOUNT_APPLIED = 0;
+    private static final int NO_PAYMENT_METHOD = 1;
+    private static final int PAYMENT_MISMATCH = 2;
+    private static final int BELOW_MIN_CART_VALUE = 3;
+
     private final PaymentMode paymentMode;
     private final String requiredBank;
     private final String requiredCardType;
     private final String requiredUpiApp;
     private final String requiredWalletProvider;
     private final Money minCartValue;
+    private final PaymentMethodCriteria criteria;
 
     private PaymentDiscount(Builder builder) {
         super(builder);
@@ -25,6 +31,13 @@ public final class PaymentDiscount extends AbstractDiscountStrategy {
         this.requiredUpiApp = builder.requiredUpiApp;
         this.requiredWalletProvider = builder.requiredWalletProvider;
         this.minCartValue = builder.minCartValue;
+        this.criteria = PaymentMethodCriteria.builder()
+                .requiredMode(paymentMode)
+                .requiredBank(requiredBank)
+                .requiredCardType(requiredCardType)
+                .requiredUpiApp(requiredUpiApp)
+                .requiredWalletProvider(requiredWalletProvider)
+                .build();
     }
 
     public PaymentMode getPaymentMode() { return paymentMode; }
@@ -33,86 +46,93 @@ public final class PaymentDiscount extends AbstractDiscountStrategy {
     public String getRequiredUpiApp() { return requiredUpiApp; }
     public String getRequiredWalletProvider() { return requiredWalletProvider; }
     public Money getMinCartValue() { return minCartValue; }
+    public PaymentMethodCriteria getCriteria() { return criteria; }
 
     @Override
     public Money apply(Cart cart, Map<CartItem, Money> itemPrices,
                        DiscountResult.Builder resultBuilder) {
+        return applyToItemPrices(cart, itemPrices, resultBuilder);
+    }
+
+    @Override
+    public long apply(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
         PaymentMethod payment = cart.getPaymentMethod();
 
         // Check payment method exists
         if (payment == null) {
-            resultBuilder.addSkippedReason(id + ": No payment method specified");
-            return Money.zero();
+            resultBuilder.traceSkip(this, NO_PAYMENT_METHOD, 0);
+            return 0;
         }
 
-        // Build criteria and check match
-        PaymentMethodCriteria criteria = PaymentMethodCriteria.builder()
-                .requiredMode(paymentMode)
-                .requiredBank(requiredBank)
-                .requiredCardType(requiredCardType)
-                .requiredUpiApp(requiredUpiApp)
-                .requiredWalletProvider(requiredWalletProvider)
-                .build();
-
+        // Check match against criteria built once with the rule
         if (!payment.matches(criteria)) {
-            resultBuilder.addSkippedReason(String.format(
-                    "%s: Payment method %s doesn't match required criteria",
-                    id, payment));
-            return Money.zero();
+            resultBuilder.traceSkip(this, PAYMENT_MISMATCH, 0);
+            return 0;
         }
 
         // Calculate current cart total
-        Money currentTotal = itemPrices.values().stream()
-                .reduce(Money.zero(), Money::add);
+        long currentTotal = ledger.total();
 
         // Check minimum cart value
-        if (minCartValue != null && currentTotal.isLessThan(minCartValue)) {
-            resultBuilder.addSkippedReason(String.format(
-                    "%s: Cart total %s below minimum %s",
-                    id, currentTotal, minCartValue));
-            return Money.zero();
+        if (minCartValue != null && currentTotal < minCartValue.getPaise()) {
+            resultBuilder.traceSkip(this, BELOW_MIN_CART_VALUE, currentTotal);
+            return 0;
         }
 
         // Calculate discount on total
-        Money paymentDiscount = currentTotal.percentage(discountPercent);
+        long paymentDiscount = Money.percentageOf(currentTotal, discountPercent);
 
         // Apply cap
         if (maxDiscountCap != null) {
-            paymentDiscount = paymentDiscount.min(maxDiscountCap);
+            paymentDiscount = Math.min(paymentDiscount, maxDiscountCap.getPaise());
         }
 
         // Distribute discount proportionally across items
-        if (paymentDiscount.isGreaterThan(Money.zero())) {
-            distributeDiscountProportionally(itemPrices, currentTotal, paymentDiscount);
-            resultBuilder.appendReasoning(String.format(
-                    "  %s: %d%% payment discount (%s) = %s (capped at %s)",
-                    id, discountPercent, paymentMode, paymentDiscount, maxDiscountCap));
+        if (paymentDiscount > 0) {
+            distributeDiscountProportionally(ledger, currentTotal, paymentDiscount);
+            resultBuilder.traceItem(this, DISCOUNT_APPLIED, -1, paymentDiscount, 0);
         }
 
         return paymentDiscount;
     }
 
-    private void distributeDiscountProportionally(Map<CartItem, Money> itemPrices,
-                                                  Money currentTotal,
-                                                  Money discountAmount) {
-        Money remaining = discountAmount;
-        List<CartItem> items = new ArrayList<>(itemPrices.keySet());
+    @Override
+    public String describeTrace(int event, Cart cart, int itemIndex,
+                                long beforePaise, long afterPaise) {
+        switch (event) {
+            case NO_PAYMENT_METHOD:
+                return id + ": No payment method specified";
+            case PAYMENT_MISMATCH:
+                return String.format("%s: Payment method %s doesn't match required criteria",
+                        id, cart.getPaymentMethod());
+            case BELOW_MIN_CART_VALUE:
+                return String.format("%s: Cart total %s below minimum %s",
+                        id, Money.ofPaise(beforePaise), minCartValue);
+            default:
+                return String.format("  %s: %d%% payment discount (%s) = %s (capped at %s)",
+                        id, discountPercent, paymentMode, Money.ofPaise(beforePaise), maxDiscountCap);
+        }
+    }
+
+    private void distributeDiscountProportionally(PriceLedger ledger, long currentTotal,
+                                                  long discountAmount) {
+        long remaining = discountAmount;
+        int last = ledger.size() - 1;
 
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = items.get(i);
-            Money itemPrice = itemPrices.get(item);
+        for (int i = 0; i <= last; i++) {
+            long itemPrice = ledger.get(i);
 
-            Money itemShare;
-            if (i == items.size() - 1) {
+            long itemShare;
+            if (i == last) {
                 itemShare = remaining;
             } else {
-                double ratio = (double) itemPrice.getPaise() / currentTotal.getPaise();
-                itemShare = Money.ofPaise(Math.round(discountAmount.getPaise() * ratio));
+                double ratio = (double) itemPrice / currentTotal;
+                itemShare = Math.round(discountAmount * ratio);
             }
 
-            itemShare = itemShare.min(itemPrice);
-            itemPrices.put(item, itemPrice.subtract(itemShare));
-            remaining = remaining.subtract(itemShare);
+            itemShare = Math.min(itemShare, itemPrice);
+            ledger.set(i, itemPrice - itemShare);
+            remaining -= itemShare;
         }
     }
 
@@ -9,8 +9,14 @@ import java.util.*;
  */
 public final class VoucherDiscount extends AbstractDiscountStrategy {
 
+    private static final int ITEM_DISCOUNTED = 0;
+    private static final int BRAND_EXCLUDED = 1;
+    private static final int CAP_REACHED = 2;
+    private static final int CAPPED_TOTAL = 3;
+
     private final String voucherCode;
     private final Set<String> excludedBrands;
+    private final BitSet excludedBrandIds = new BitSet();
     private final String minCustomerTier;
 
     private VoucherDiscount(Builder builder) {
@@ -19,68 +25,102 @@ public final class VoucherDiscount extends AbstractDiscountStrategy {
         this.excludedBrands = builder.excludedBrands != null
                 ? Collections.unmodifiableSet(new HashSet<>(builder.excludedBrands))
                 : Collections.emptySet();
+        for (String brand : excludedBrands) {
+            if (brand != null) {
+                excludedBrandIds.set(SymbolTable.global().intern(brand));
+            }
+        }
         this.minCustomerTier = builder.minCustomerTier;
     }
 
     public String getVoucherCode() { return voucherCode; }
     public Set<String> getExcludedBrands() { return excludedBrands; }
+
+    @Override
     public String getMinCustomerTier() { return minCustomerTier; }
 
     public boolean isBrandExcluded(String brand) {
-        return excludedBrands.stream()
-                .anyMatch(excluded -> excluded.equalsIgnoreCase(brand));
+        return isBrandExcluded(SymbolTable.global().find(brand));
+    }
+
+    private boolean isBrandExcluded(int brandId) {
+        return brandId >= 0 && excludedBrandIds.get(brandId);
     }
 
     @Override
     public Money apply(Cart cart, Map<CartItem, Money> itemPrices,
                        DiscountResult.Builder resultBuilder) {
-        Money totalDiscount = Money.zero();
+        return applyToItemPrices(cart, itemPrices, resultBuilder);
+    }
+
+    @Override
+    public long apply(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
+        if (maxDiscountCap == null && usesColumns(cart, resultBuilder)) {
+            return ledger.discountExcept(cart.getColumns().brandIds(), excludedBrandIds, discountPercent);
+        }
+
+        List<CartItem> items = cart.getItems();
+        long totalDiscount = 0;
+
+        for (int i = 0; i < items.size(); i++) {
+            CartItem item = items.get(i);
 
-        for (CartItem item : cart.getItems()) {
             // Check brand exclusions
-            if (isBrandExcluded(item.getBrand())) {
-                resultBuilder.appendReasoning(String.format(
-                        "  %s: Skipping %s (brand %s excluded)",
-                        id, item.getName(), item.getBrand()));
+            if (isBrandExcluded(item.getBrandId())) {
+                resultBuilder.traceItem(this, BRAND_EXCLUDED, i, 0, 0);
                 continue;
             }
 
-            Money currentPrice = itemPrices.get(item);
-            Money itemDiscount = currentPrice.percentage(discountPercent);
+            long currentPrice = ledger.get(i);
+            long itemDiscount = Money.percentageOf(currentPrice, discountPercent);
 
             // Check if we'd exceed the cap
             if (maxDiscountCap != null) {
-                Money remaining = maxDiscountCap.subtract(totalDiscount);
-                if (remaining.isLessThan(itemDiscount) || remaining.equals(Money.zero())) {
-                    if (remaining.isGreaterThan(Money.zero())) {
+                long remaining = maxDiscountCap.getPaise() - totalDiscount;
+                if (remaining < itemDiscount || remaining == 0) {
+                    if (remaining > 0) {
                         itemDiscount = remaining;
                     } else {
-                        resultBuilder.appendReasoning(String.format(
-                                "  %s: Cap reached, skipping %s",
-                                id, item.getName()));
+                        resultBuilder.traceItem(this, CAP_REACHED, i, 0, 0);
                         continue;
                     }
                 }
             }
 
-            Money newPrice = currentPrice.subtract(itemDiscount);
-            itemPrices.put(item, newPrice);
-            totalDiscount = totalDiscount.add(itemDiscount);
+            long newPrice = currentPrice - itemDiscount;
+            ledger.set(i, newPrice);
+            totalDiscount += itemDiscount;
 
-            resultBuilder.appendReasoning(String.format(
-                    "  %s: %s -> %s (%d%% voucher %s)",
-                    id, currentPrice, newPrice, discountPercent, voucherCode));
+            resultBuilder.traceItem(this, ITEM_DISCOUNTED, i, currentPrice, newPrice);
         }
 
-        if (maxDiscountCap != null && totalDiscount.isGreaterThan(Money.zero())) {
-            resultBuilder.appendReasoning(String.format(
-                    "  %s: Total voucher discount: %s (cap: %s)",
-                    id, totalDiscount, maxDiscountCap));
+        if (maxDiscountCap != null && totalDiscount > 0) {
+            resultBuilder.traceItem(this, CAPPED_TOTAL, -1, totalDiscount, 0);
         }
 
         return totalDiscount;
     }
 
+    @Override
+    public String describeTrace(int event, Cart cart, int itemIndex,
+                                long beforePaise, long afterPaise) {
+        switch (event) {
+            case BRAND_EXCLUDED:
+                CartItem excluded = cart.getItems().get(itemIndex);
+                return String.format("  %s: Skipping %s (brand %s excluded)",
+                        id, excluded.getName(), excluded.getBrand());
+            case CAP_REACHED:
+                return String.format("  %s: Cap reached, skipping %s",
+                        id, cart.getItems().get(itemIndex).getName());
+            case CAPPED_TOTAL:
+                return String.format("  %s: Total voucher discount: %s (cap: %s)",
+                        id, Money.ofPaise(beforePaise), maxDiscountCap);
+            default:
+                return String.format("  %s: %s -> %s (%d%% voucher %s)",
+                        id, Money.ofPaise(beforePaise), Money.ofPaise(afterPaise), discountPercent, voucherCode);
+        }
+    }
+
     public static Builder builder() { return new Builder(); }
 
     public static class Builder extends AbstractBuilder<Builder> {
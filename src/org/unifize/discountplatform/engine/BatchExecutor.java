@@ -0,0 +1,104 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs index ranges of a batch in parallel, one chunk per task.
+ * Callers write each chunk's results into their own slots, so output order
+ * never depends on scheduling.
+ */
+final class BatchExecutor {
+
+    /**
+     * Work for the half-open index range [from, to).
+     */
+    interface ChunkTask {
+        void run(int from, int to);
+    }
+
+    private BatchExecutor() {}
+
+    static void forEachChunk(int count, BatchOptions options, ChunkTask task) {
+        if (count == 0) {
+            return;
+        }
+        if (count <= options.getChunkSize()) {
+            task.run(0, count);
+            return;
+        }
+        switch (options.getMode()) {
+            case VIRTUAL_THREADS:
+                runOnVirtualThreads(count, options, task);
+                break;
+            case FORK_JOIN:
+            default:
+                options.getPool().invoke(new ChunkAction(task, 0, count, options.getChunkSize()));
+                break;
+        }
+    }
+
+    private static void runOnVirtualThreads(int count, BatchOptions options, ChunkTask task) {
+        int chunkSize = options.getChunkSize();
+        ExecutorService executor = options.newVirtualThreadExecutor();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < count; from += chunkSize) {
+                int start = from;
+                int end = Math.min(count, from + chunkSize);
+                futures.add(executor.submit(() -> task.run(start, end)));
+            }
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Batch interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    private static final class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ChunkTask task;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ChunkAction(ChunkTask task, int from, int to, int chunkSize) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkAction(task, from, mid, chunkSize),
+                    new ChunkAction(task, mid, to, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.unifize.discountplatform.engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * How a batch of carts is spread across threads.
+ */
+public final class BatchOptions {
+
+    /**
+     * Thread model used to run batch chunks.
+     */
+    public enum Mode {
+        FORK_JOIN,        // Work-stealing pool, the common pool unless the caller gives one
+        VIRTUAL_THREADS   // One virtual thread per chunk (needs Java 21 or later)
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 256;
+    // Looked up once, and reflectively so the engine still builds and runs without virtual threads
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final Mode mode;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    private BatchOptions(Builder builder) {
+        this.mode = builder.mode;
+        this.chunkSize = builder.chunkSize;
+        this.pool = builder.pool;
+    }
+
+    public static BatchOptions defaults() {
+        return builder().build();
+    }
+
+    public Mode getMode() { return mode; }
+
+    /**
+     * @return Number of consecutive carts priced by one task
+     */
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * @return Pool running FORK_JOIN batches; ignored for VIRTUAL_THREADS
+     */
+    public ForkJoinPool getPool() { return pool != null ? pool : ForkJoinPool.commonPool(); }
+
+    /**
+     * @return An executor starting one virtual thread per task; only for options built with VIRTUAL_THREADS
+     */
+    ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Cannot start virtual threads", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot start virtual threads", e);
+        }
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public static class Builder {
+        private Mode mode = Mode.FORK_JOIN;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private ForkJoinPool pool;
+
+        public Builder mode(Mode mode) { this.mode = mode; return this; }
+        public Builder chunkSize(int chunkSize) { this.chunkSize = chunkSize; return this; }
+
+        /**
+         * Run FORK_JOIN batches on this pool rather than the common pool, e.g. to give them
+         * a different number of workers. The caller owns the pool and shuts it down.
+         */
+        public Builder pool(ForkJoinPool pool) { this.pool = pool; return this; }
+
+        public BatchOptions build() {
+            if (mode == null) {
+                throw new IllegalArgumentException("Batch mode is required");
+            }
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+            }
+            if (mode == Mode.VIRTUAL_THREADS && VIRTUAL_THREAD_EXECUTOR == null) {
+                throw new IllegalArgumentException("Virtual threads need Java 21 or later, running on Java "
+                        + Runtime.version().feature() + "; use FORK_JOIN");
+            }
+            return new BatchOptions(this);
+        }
+    }
+}
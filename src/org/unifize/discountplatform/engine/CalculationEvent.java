@@ -0,0 +1,53 @@
+package org.unifize.discountplatform.engine;
+
+import jdk.jfr.*;
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.DiscountResult;
+
+/**
+ * Flight recorder event for one calculation, so CPU samples and slow checkouts can be tied
+ * to a cart. Enabled by default for calculations of 1 ms or more; change the threshold with
+ * the recording settings for {@code org.unifize.discountplatform.Calculation}.
+ */
+@Name("org.unifize.discountplatform.Calculation")
+@Label("Discount Calculation")
+@Category({"Discount Platform"})
+@Description("Pricing of one cart against a rule set")
+@Threshold("1 ms")
+@StackTrace(false)
+final class CalculationEvent extends Event {
+
+    @Label("Cart Id")
+    String cartId;
+
+    @Label("Items")
+    int itemCount;
+
+    @Label("Strategies")
+    @Description("Strategies the cart was priced against")
+    int strategyCount;
+
+    @Label("Applied")
+    @Description("Strategies that took something off; for payment options, in the cheapest option")
+    int appliedCount;
+
+    @Label("Discount (paise)")
+    long discountPaise;
+
+    @Label("Rule Version")
+    long ruleVersion;
+
+    @Label("Payment Options")
+    @Description("Payment methods compared, or 0 for a single calculation")
+    int paymentOptions;
+
+    void set(Cart cart, int strategyCount, DiscountResult result, int paymentOptions) {
+        this.cartId = cart.getCartId();
+        this.itemCount = cart.getItems().size();
+        this.strategyCount = strategyCount;
+        this.appliedCount = result.getAppliedDiscounts().size();
+        this.discountPaise = result.getOriginalTotal().getPaise() - result.getFinalPrice().getPaise();
+        this.ruleVersion = result.getRuleVersion();
+        this.paymentOptions = paymentOptions;
+    }
+}
@@ -0,0 +1,243 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.AppliedDiscount;
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.DiscountResult;
+import org.unifize.discountplatform.domain.PriceLedger;
+import org.unifize.discountplatform.domain.ReasoningLevel;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+
+/**
+ * What-if pricing of a candidate rule set against the baseline it would replace, e.g. a
+ * changed voucher cap or a new bank offer, over a corpus of past carts.
+ *
+ * Each cart is priced against both rule sets in one parallel pass, as
+ * {@link DiscountCalculator#calculate(Cart, DiscountPlan)} would. Work is shared where the
+ * rule sets agree. When both sets apply the rules they share in the same order, a cart none
+ * of the changed rules can apply to is priced once, and the result counts for both sets.
+ * Equal-priority rules listed in a different order make the sets apply them differently, so
+ * then every cart is priced with both. For other carts, the leading rules both sets share run
+ * once, up to the first exclusive one, and each set's remaining rules then run on a copy of those
+ * prices. A rule counts as unchanged when both lists hold the same object, as when the
+ * candidate is the baseline list with some rules replaced, added or removed. Nothing is
+ * recorded in a calculator's metrics or as flight recorder calculation events.
+ */
+public final class CampaignSimulator {
+
+    // Carts copied from a corpus that is not a random-access list before each parallel pass
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final DiscountPlan baseline;
+    private final DiscountPlan candidate;
+    // Rules only one of the sets holds; a changed voucher is a candidate for every cart
+    private final DiscountRuleIndex changes;
+    // Whether carts no changed rule can apply to price the same with both sets
+    private final boolean sameOrder;
+    private final BatchOptions options;
+    // Leading rules both plans apply in the same order, up to the first exclusive one
+    private final int sharedPrefix;
+    private final DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.OFF);
+    private final ThreadLocal<PriceLedger> ledgers = ThreadLocal.withInitial(PriceLedger::new);
+    // Prices after the shared leading rules, while each plan's own rules run
+    private final ThreadLocal<PriceLedger> sharedLedgers = ThreadLocal.withInitial(PriceLedger::new);
+
+    public CampaignSimulator(List<DiscountStrategy> baseline, List<DiscountStrategy> candidate) {
+        this(baseline, candidate, BatchOptions.defaults());
+    }
+
+    /**
+     * @param options Thread model, chunk size and pool of the replay
+     * @throws IllegalArgumentException if a rule of either set is invalid
+     */
+    public CampaignSimulator(List<DiscountStrategy> baseline, List<DiscountStrategy> candidate,
+                             BatchOptions options) {
+        this.baseline = DiscountPlan.compile(baseline);
+        this.candidate = DiscountPlan.compile(candidate);
+        this.options = Objects.requireNonNull(options, "options");
+
+        List<DiscountStrategy> changed = new ArrayList<>(onlyIn(baseline, candidate));
+        changed.addAll(onlyIn(candidate, baseline));
+        this.changes = new DiscountRuleIndex(changed);
+
+        List<DiscountStrategy> first = this.baseline.getStrategies();
+        List<DiscountStrategy> second = this.candidate.getStrategies();
+        int prefix = 0;
+        while (prefix < Math.min(first.size(), second.size()) && first.get(prefix) == second.get(prefix)
+                && !CombinationResolver.isExclusive(first.get(prefix))) {
+            prefix++;
+        }
+        this.sharedPrefix = prefix;
+        this.sameOrder = sameSharedOrder(first, second);
+    }
+
+    private static List<DiscountStrategy> onlyIn(List<DiscountStrategy> rules, List<DiscountStrategy> others) {
+        Set<DiscountStrategy> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        shared.addAll(others);
+        List<DiscountStrategy> only = new ArrayList<>();
+        for (DiscountStrategy rule : rules) {
+            if (!shared.contains(rule)) {
+                only.add(rule);
+            }
+        }
+        return only;
+    }
+
+    /**
+     * @return true if the rules both lists hold come in the same order in each; compared by identity
+     */
+    private static boolean sameSharedOrder(List<DiscountStrategy> first, List<DiscountStrategy> second) {
+        List<DiscountStrategy> firstShared = onlyIn(first, onlyIn(first, second));
+        List<DiscountStrategy> secondShared = onlyIn(second, onlyIn(second, first));
+        if (firstShared.size() != secondShared.size()) {
+            return false;
+        }
+        for (int i = 0; i < firstShared.size(); i++) {
+            if (firstShared.get(i) != secondShared.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replay the carts against both rule sets. A random-access list is priced in place;
+     * other corpora are read a block at a time, so they need not fit in memory.
+     */
+    public SimulationReport simulate(Iterable<Cart> carts) {
+        Tally total = new Tally();
+        if (carts instanceof List && carts instanceof RandomAccess) {
+            replay((List<Cart>) carts, total);
+        } else {
+            List<Cart> block = new ArrayList<>(BLOCK_SIZE);
+            for (Cart cart : carts) {
+                block.add(cart);
+                if (block.size() == BLOCK_SIZE) {
+                    replay(block, total);
+                    block.clear();
+                }
+            }
+            replay(block, total);
+        }
+        for (DiscountStrategy rule : baseline.getStrategies()) {
+            total.impact(rule.getId());
+        }
+        for (DiscountStrategy rule : candidate.getStrategies()) {
+            total.impact(rule.getId());
+        }
+        return total.report();
+    }
+
+    private void replay(List<Cart> carts, Tally total) {
+        BatchExecutor.forEachChunk(carts.size(), options, (from, to) -> {
+            Tally chunk = new Tally();
+            for (int i = from; i < to; i++) {
+                Cart cart = carts.get(i);
+                if (!sameOrder || !changes.candidatesFor(cart).isEmpty()) {
+                    chunk.record(priceBoth(cart));
+                } else {
+                    DiscountResult result = calculator.calculate(cart, baseline);
+                    chunk.record(new DiscountResult[]{result, result});
+                }
+            }
+            synchronized (total) {
+                total.add(chunk);
+            }
+        });
+    }
+
+    /**
+     * Price a cart against both plans, running the shared leading rules once. Each result is
+     * identical to pricing with that plan on its own.
+     *
+     * @return The results for the baseline and the candidate
+     */
+    private DiscountResult[] priceBoth(Cart cart) {
+        if (cart.isEmpty()) {
+            return new DiscountResult[]{calculator.emptyResult(0), calculator.emptyResult(0)};
+        }
+        List<DiscountStrategy> first = baseline.getStrategies();
+        List<DiscountStrategy> second = candidate.getStrategies();
+        PriceLedger ledger = ledgers.get();
+        ledger.reset(cart);
+
+        DiscountResult.Builder candidateBuilder = calculator.startResult(cart, 0);
+        calculator.applyStrategies(cart, first.subList(0, sharedPrefix), false, ledger, candidateBuilder, null);
+        PriceLedger sharedPrices = sharedLedgers.get();
+        sharedPrices.copyFrom(ledger);
+
+        DiscountResult.Builder baselineBuilder = candidateBuilder.copy();
+        // Every exclusive rule of a plan is past the prefix, so the plans' flags hold for the rest
+        calculator.applyStrategies(cart, first.subList(sharedPrefix, first.size()), baseline.hasExclusiveRules(),
+                ledger, baselineBuilder, null);
+        DiscountResult baselineResult = DiscountCalculator.finishResult(ledger, baselineBuilder);
+        ledger.copyFrom(sharedPrices);
+        calculator.applyStrategies(cart, second.subList(sharedPrefix, second.size()),
+                candidate.hasExclusiveRules(), ledger, candidateBuilder, null);
+        return new DiscountResult[]{baselineResult, DiscountCalculator.finishResult(ledger, candidateBuilder)};
+    }
+
+    /**
+     * Totals of some of the carts; each chunk fills its own, then adds it to the run's.
+     */
+    private static final class Tally {
+        private final Map<String, SimulationReport.StrategyImpact> strategies = new HashMap<>();
+        private final PriceDeltaHistogram priceDeltas = new PriceDeltaHistogram();
+        private long carts;
+        private long affected;
+        private long shared;
+        private long baselineDiscount;
+        private long candidateDiscount;
+
+        void record(DiscountResult[] results) {
+            DiscountResult before = results[0];
+            DiscountResult after = results[1];
+            carts++;
+            if (before == after) {
+                shared++;
+            }
+            long beforePrice = before.getFinalPrice().getPaise();
+            long afterPrice = after.getFinalPrice().getPaise();
+            if (beforePrice != afterPrice) {
+                affected++;
+            }
+            priceDeltas.record(afterPrice - beforePrice);
+            baselineDiscount += before.getOriginalTotal().getPaise() - beforePrice;
+            candidateDiscount += after.getOriginalTotal().getPaise() - afterPrice;
+            for (AppliedDiscount applied : before.getAppliedDiscounts()) {
+                SimulationReport.StrategyImpact impact = impact(applied.getDiscountId());
+                impact.recordBaseline(applied.getAmount().getPaise());
+                if (before == after) {
+                    impact.recordCandidate(applied.getAmount().getPaise());
+                }
+            }
+            if (before != after) {
+                for (AppliedDiscount applied : after.getAppliedDiscounts()) {
+                    impact(applied.getDiscountId()).recordCandidate(applied.getAmount().getPaise());
+                }
+            }
+        }
+
+        void add(Tally other) {
+            for (SimulationReport.StrategyImpact impact : other.strategies.values()) {
+                impact(impact.getId()).add(impact);
+            }
+            priceDeltas.add(other.priceDeltas);
+            carts += other.carts;
+            affected += other.affected;
+            shared += other.shared;
+            baselineDiscount += other.baselineDiscount;
+            candidateDiscount += other.candidateDiscount;
+        }
+
+        SimulationReport.StrategyImpact impact(String id) {
+            return strategies.computeIfAbsent(id, SimulationReport.StrategyImpact::new);
+        }
+
+        SimulationReport report() {
+            return new SimulationReport(carts, affected, shared, baselineDiscount, candidateDiscount,
+                    new TreeMap<>(strategies), priceDeltas);
+        }
+    }
+}
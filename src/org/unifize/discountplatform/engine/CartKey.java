@@ -0,0 +1,139 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.CartItem;
+import org.unifize.discountplatform.domain.ReasoningLevel;
+import org.unifize.discountplatform.domain.payment.*;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies a calculation by everything that can change its result: the cart lines,
+ * the payment method attributes, customer tier, voucher code, rule version and reasoning level.
+ * Cart and customer ids are deliberately left out, so identical contents in different
+ * carts share a key.
+ *
+ * The hash is a cheap fingerprint over product ids, unit prices and quantities;
+ * equality compares every field that pricing or reasoning reads.
+ */
+final class CartKey {
+
+    private final Cart cart;
+    private final long ruleVersion;
+    private final ReasoningLevel reasoningLevel;
+    private final int hash;
+
+    CartKey(Cart cart, long ruleVersion, ReasoningLevel reasoningLevel) {
+        this.cart = cart;
+        this.ruleVersion = ruleVersion;
+        this.reasoningLevel = reasoningLevel;
+        this.hash = fingerprint(cart, ruleVersion, reasoningLevel);
+    }
+
+    long getRuleVersion() {
+        return ruleVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CartKey)) return false;
+        CartKey other = (CartKey) o;
+        return hash == other.hash
+                && ruleVersion == other.ruleVersion
+                && reasoningLevel == other.reasoningLevel
+                && Objects.equals(cart.getCustomerTier(), other.cart.getCustomerTier())
+                && Objects.equals(cart.getVoucherCode(), other.cart.getVoucherCode())
+                && samePayment(cart.getPaymentMethod(), other.cart.getPaymentMethod())
+                && sameItems(cart.getItems(), other.cart.getItems());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    private static int fingerprint(Cart cart, long ruleVersion, ReasoningLevel reasoningLevel) {
+        long h = ruleVersion * 31 + reasoningLevel.ordinal();
+        List<CartItem> items = cart.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            CartItem item = items.get(i);
+            h = h * 31 + item.getProductId().hashCode();
+            h = h * 31 + item.getUnitPrice().getPaise();
+            h = h * 31 + item.getQuantity();
+        }
+        h = h * 31 + Objects.hashCode(cart.getCustomerTier());
+        h = h * 31 + Objects.hashCode(cart.getVoucherCode());
+        h = h * 31 + paymentHash(cart.getPaymentMethod());
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    private static boolean sameItems(List<CartItem> a, List<CartItem> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            CartItem x = a.get(i);
+            CartItem y = b.get(i);
+            if (x != y && !(x.getQuantity() == y.getQuantity()
+                    && x.getUnitPrice().getPaise() == y.getUnitPrice().getPaise()
+                    && x.getProductId().equals(y.getProductId())
+                    && Objects.equals(x.getBrand(), y.getBrand())
+                    && Objects.equals(x.getCategory(), y.getCategory())
+                    && Objects.equals(x.getName(), y.getName()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int paymentHash(PaymentMethod method) {
+        if (method == null) {
+            return 0;
+        }
+        if (method instanceof CardPaymentMethod) {
+            CardPaymentMethod card = (CardPaymentMethod) method;
+            return Objects.hash(card.getMode(), card.getBank(), card.getCardType());
+        }
+        if (method instanceof UpiPaymentMethod) {
+            return Objects.hash(method.getMode(), ((UpiPaymentMethod) method).getApp());
+        }
+        if (method instanceof WalletPaymentMethod) {
+            return Objects.hash(method.getMode(), ((WalletPaymentMethod) method).getProvider());
+        }
+        return System.identityHashCode(method);
+    }
+
+    /**
+     * Payment methods have no value equality of their own; compare their attributes.
+     * Other implementations only match themselves.
+     */
+    private static boolean samePayment(PaymentMethod a, PaymentMethod b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof CardPaymentMethod) {
+            CardPaymentMethod x = (CardPaymentMethod) a;
+            CardPaymentMethod y = (CardPaymentMethod) b;
+            return x.getMode() == y.getMode()
+                    && Objects.equals(x.getBank(), y.getBank())
+                    && Objects.equals(x.getCardType(), y.getCardType());
+        }
+        if (a instanceof UpiPaymentMethod) {
+            // The UPI id shows in skip reasons, so it has to match as well
+            UpiPaymentMethod x = (UpiPaymentMethod) a;
+            UpiPaymentMethod y = (UpiPaymentMethod) b;
+            return Objects.equals(x.getApp(), y.getApp()) && Objects.equals(x.getUpiId(), y.getUpiId());
+        }
+        if (a instanceof WalletPaymentMethod) {
+            return Objects.equals(((WalletPaymentMethod) a).getProvider(),
+                    ((WalletPaymentMethod) b).getProvider());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,235 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.DiscountResult;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares one calculation between concurrent callers pricing the same cart against the same
+ * rule snapshot, e.g. the page, mini-cart and checkout prefetch of one storefront request.
+ * The first caller computes; callers arriving while it runs wait for the same result instead
+ * of pricing the cart again. Carts match as for {@link DiscountResultCache}: by contents,
+ * payment method, customer tier and voucher code, not by cart id.
+ *
+ * Only calculations in flight are shared; a finished result is not kept. The table of
+ * calculations in flight is a concurrent map bounded by {@code maxInFlight}: when it is full,
+ * further distinct carts are priced directly without being shared, so a burst never blocks
+ * on the table. Callers of a failed calculation all see its exception.
+ */
+public final class CoalescingCalculator {
+
+    private final DiscountCalculator calculator;
+    private final int maxInFlight;
+    private final Executor executor;
+    private final ConcurrentHashMap<CartKey, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder computed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param calculator  Calculator doing the actual pricing
+     * @param maxInFlight Most distinct calculations shared at once
+     */
+    public CoalescingCalculator(DiscountCalculator calculator, int maxInFlight) {
+        this(calculator, maxInFlight, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param calculator  Calculator doing the actual pricing
+     * @param maxInFlight Most distinct calculations shared at once
+     * @param executor    Runs the calculations started by {@link #calculateAsync}
+     * @throws IllegalArgumentException if maxInFlight is not positive
+     */
+    public CoalescingCalculator(DiscountCalculator calculator, int maxInFlight, Executor executor) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.calculator = Objects.requireNonNull(calculator, "calculator");
+        this.maxInFlight = maxInFlight;
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    /**
+     * Price the cart on the calling thread, or wait for an identical calculation already running.
+     */
+    public DiscountResult calculate(Cart cart, RuleSnapshot snapshot) {
+        CartKey key = keyFor(cart, snapshot);
+        Flight running = flights.get(key);
+        if (running != null && running.snapshot == snapshot) {
+            coalesced.increment();
+            return await(running.result);
+        }
+
+        Flight flight = register(key, snapshot);
+        if (flight == null) {
+            running = flights.get(key);
+            if (running != null && running.snapshot == snapshot) {
+                coalesced.increment();
+                return await(running.result);
+            }
+            computed.increment();
+            return calculator.calculate(cart, snapshot);
+        }
+        run(flight, key, cart);
+        return await(flight.result);
+    }
+
+    /**
+     * Price the cart against the repository's current snapshot, read once.
+     */
+    public DiscountResult calculate(Cart cart, RuleRepository repository) {
+        return calculate(cart, repository.current());
+    }
+
+    /**
+     * Price the cart on the executor, or share an identical calculation already running.
+     *
+     * @return A future of the result; completing or cancelling it does not affect other callers
+     */
+    public CompletableFuture<DiscountResult> calculateAsync(Cart cart, RuleSnapshot snapshot) {
+        CartKey key = keyFor(cart, snapshot);
+        Flight running = flights.get(key);
+        if (running != null && running.snapshot == snapshot) {
+            coalesced.increment();
+            return running.result.copy();
+        }
+
+        Flight flight = register(key, snapshot);
+        if (flight == null) {
+            running = flights.get(key);
+            if (running != null && running.snapshot == snapshot) {
+                coalesced.increment();
+                return running.result.copy();
+            }
+            computed.increment();
+            return CompletableFuture.supplyAsync(() -> calculator.calculate(cart, snapshot), executor);
+        }
+        try {
+            executor.execute(() -> run(flight, key, cart));
+        } catch (RuntimeException e) {
+            finish(flight, key, null, e);
+        }
+        return flight.result.copy();
+    }
+
+    /**
+     * Price the cart against the repository's current snapshot on the executor.
+     */
+    public CompletableFuture<DiscountResult> calculateAsync(Cart cart, RuleRepository repository) {
+        return calculateAsync(cart, repository.current());
+    }
+
+    public DiscountCalculator getCalculator() {
+        return calculator;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return Distinct calculations currently running and shareable
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Calculations actually run, shared or not
+     */
+    public long getComputedCount() {
+        return computed.sum();
+    }
+
+    /**
+     * @return Callers served by a calculation another caller started
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CoalescingCalculator[inFlight=%d/%d, computed=%d, coalesced=%d]",
+                getInFlightCount(), maxInFlight, getComputedCount(), getCoalescedCount());
+    }
+
+    private CartKey keyFor(Cart cart, RuleSnapshot snapshot) {
+        return new CartKey(cart, snapshot.getVersion(), calculator.getReasoningLevel());
+    }
+
+    /**
+     * Claim a slot and publish a new flight for the key.
+     *
+     * @return The flight this caller now leads, or null if the table is full or another
+     *         caller registered the key first
+     */
+    private Flight register(CartKey key, RuleSnapshot snapshot) {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        Flight flight = new Flight(snapshot);
+        if (flights.putIfAbsent(key, flight) != null) {
+            inFlight.decrementAndGet();
+            return null;
+        }
+        return flight;
+    }
+
+    private void run(Flight flight, CartKey key, Cart cart) {
+        computed.increment();
+        DiscountResult result = null;
+        Throwable failure = null;
+        try {
+            result = calculator.calculate(cart, flight.snapshot);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        finish(flight, key, result, failure);
+    }
+
+    private void finish(Flight flight, CartKey key, DiscountResult result, Throwable failure) {
+        // Leave the table before completing, so no caller joins a finished flight
+        flights.remove(key, flight);
+        inFlight.decrementAndGet();
+        if (failure == null) {
+            flight.result.complete(result);
+        } else {
+            flight.result.completeExceptionally(failure);
+        }
+    }
+
+    private static DiscountResult await(CompletableFuture<DiscountResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Flight {
+        final RuleSnapshot snapshot;
+        final CompletableFuture<DiscountResult> result = new CompletableFuture<>();
+
+        Flight(RuleSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+/**
+ * Chooses which exclusive discounts to apply so that the cart saves the most.
+ *
+ * A discount with an exclusive group competes with the rest of its group; a non-stackable
+ * discount without one competes with the other non-stackable discounts of its priority
+ * level. At most one discount per group is applied (possibly none, when e.g. a smaller
+ * total would miss a payment offer's minimum). Stackable discounts outside any group
+ * always apply.
+ *
+ * The search is branch-and-bound over the groups. Discounts only lower prices and never take
+ * more from a higher price, so what a discount takes after only the always-applied discounts
+ * before it bounds what it takes in any combination. Most discounts also take at most what
+ * prices fell by, so choosing one never saves more than its bound on the final total.
+ * Thresholds break that: choosing a rule can push the cart below a payment offer's minimum
+ * and let later rules take more. Rules with thresholds are therefore left out of the priced
+ * run that the cut starts from, and counted by their bounds instead. Groups with the largest
+ * bounds are decided first and members are tried best bound first, so most branches are cut
+ * without being priced.
+ *
+ * Custom strategies placed in groups must not take more from lower prices for the choice to
+ * be optimal.
+ */
+final class CombinationResolver {
+
+    private final Cart cart;
+    private final List<DiscountStrategy> strategies;
+    private final PriceLedger start;
+    private final PriceLedger scratch = new PriceLedger();
+    private final DiscountResult.Builder silent = DiscountResult.builder(ReasoningLevel.OFF);
+    private final boolean[] selected;
+    private final long[] bounds;
+    private final boolean[] threshold;
+    private Group[] groups;
+    private long[] remainingBound;
+    private long freeThresholdBound;
+    private int[] choice;
+    private int[] bestChoice;
+    private long bestTotal;
+
+    private CombinationResolver(Cart cart, List<DiscountStrategy> strategies, PriceLedger start) {
+        this.cart = cart;
+        this.strategies = strategies;
+        this.start = start;
+        this.selected = new boolean[strategies.size()];
+        this.bounds = new long[strategies.size()];
+        this.threshold = new boolean[strategies.size()];
+    }
+
+    /**
+     * @return true if any strategy is non-stackable or in an exclusive group
+     */
+    static boolean hasExclusiveRules(List<DiscountStrategy> strategies) {
+        for (int i = 0; i < strategies.size(); i++) {
+            if (isExclusive(strategies.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isExclusive(DiscountStrategy strategy) {
+        return !strategy.isStackable() || strategy.getExclusiveGroup() != null;
+    }
+
+    /**
+     * Choose the combination of exclusive strategies that leaves the lowest total.
+     *
+     * @param strategies Strategies still to apply, in order
+     * @param start      Line prices before the first of them; not modified
+     */
+    static Resolution resolve(Cart cart, List<DiscountStrategy> strategies, PriceLedger start) {
+        CombinationResolver resolver = new CombinationResolver(cart, strategies, start);
+        return resolver.search();
+    }
+
+    private Resolution search() {
+        Map<String, Group> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < strategies.size(); i++) {
+            DiscountStrategy strategy = strategies.get(i);
+            threshold[i] = hasThreshold(strategy);
+            if (!isExclusive(strategy)) {
+                selected[i] = true;
+                continue;
+            }
+            byKey.computeIfAbsent(groupName(strategy), Group::new).members.add(i);
+        }
+
+        computeBounds();
+        groups = byKey.values().toArray(new Group[0]);
+        for (Group group : groups) {
+            group.prepare(bounds);
+        }
+        Arrays.sort(groups, Comparator.comparingLong((Group group) -> group.maxBound).reversed());
+
+        remainingBound = new long[groups.length + 1];
+        for (int d = groups.length - 1; d >= 0; d--) {
+            remainingBound[d] = remainingBound[d + 1] + groups[d].maxBound;
+        }
+
+        choice = new int[groups.length];
+        Arrays.fill(choice, -1);
+        bestChoice = choice.clone();
+        bestTotal = evaluate(false);
+        branch(0, bestTotal, evaluate(true), 0);
+
+        for (int d = 0; d < groups.length; d++) {
+            if (bestChoice[d] >= 0) {
+                selected[bestChoice[d]] = true;
+            }
+        }
+        return new Resolution(strategies, selected, groups, bestChoice);
+    }
+
+    /**
+     * Bound every strategy by what it takes after the always-applied strategies before it,
+     * other than those with a threshold.
+     */
+    private void computeBounds() {
+        PriceLedger probe = new PriceLedger();
+        scratch.copyFrom(start);
+        for (int i = 0; i < strategies.size(); i++) {
+            DiscountStrategy strategy = strategies.get(i);
+            if (selected[i] && !threshold[i]) {
+                bounds[i] = strategy.apply(cart, scratch, silent);
+            } else {
+                probe.copyFrom(scratch);
+                bounds[i] = Math.max(0, strategy.apply(cart, probe, silent));
+            }
+            if (selected[i] && threshold[i]) {
+                freeThresholdBound += bounds[i];
+            }
+        }
+    }
+
+    /**
+     * @param total          Cart total with the members chosen so far
+     * @param relaxedTotal   The same without the rules that have thresholds
+     * @param thresholdBound Sum of the bounds of chosen members with thresholds
+     */
+    private void branch(int depth, long total, long relaxedTotal, long thresholdBound) {
+        if (depth == groups.length) {
+            if (total < bestTotal) {
+                bestTotal = total;
+                System.arraycopy(choice, 0, bestChoice, 0, choice.length);
+            }
+            return;
+        }
+        long floor = relaxedTotal - freeThresholdBound - thresholdBound;
+        if (floor - remainingBound[depth] >= bestTotal) {
+            return;
+        }
+
+        for (int member : groups[depth].members) {
+            if (floor - bounds[member] - remainingBound[depth + 1] >= bestTotal) {
+                break; // members are sorted by bound, so none of the rest can do better
+            }
+            selected[member] = true;
+            choice[depth] = member;
+            branch(depth + 1, evaluate(false), evaluate(true),
+                    threshold[member] ? thresholdBound + bounds[member] : thresholdBound);
+            selected[member] = false;
+        }
+        choice[depth] = -1;
+        branch(depth + 1, total, relaxedTotal, thresholdBound);
+    }
+
+    /**
+     * @param relaxed true to leave out the rules that have thresholds
+     * @return Cart total after the currently selected strategies
+     */
+    private long evaluate(boolean relaxed) {
+        scratch.copyFrom(start);
+        for (int i = 0; i < strategies.size(); i++) {
+            if (selected[i] && !(relaxed && threshold[i])) {
+                strategies.get(i).apply(cart, scratch, silent);
+            }
+        }
+        return scratch.total();
+    }
+
+    /**
+     * @return Explicit group name, or the implicit group of non-stackable rules at the strategy's priority
+     */
+    private static String groupName(DiscountStrategy strategy) {
+        String explicit = strategy.getExclusiveGroup();
+        return explicit != null ? explicit : "non-stackable at priority " + strategy.getPriority();
+    }
+    /**
+     * A strategy with a threshold can stop applying when prices fall; unknown strategies might.
+     */
+    private static boolean hasThreshold(DiscountStrategy strategy) {
+        if (strategy instanceof PaymentDiscount) {
+            return ((PaymentDiscount) strategy).getMinCartValue() != null;
+        }
+        return !(strategy instanceof BrandDiscount
+                || strategy instanceof CategoryDiscount
+                || strategy instanceof VoucherDiscount);
+    }
+
+    private static final class Group {
+        final String name;
+        final List<Integer> members = new ArrayList<>();
+        long maxBound;
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Order members best bound first and drop those that cannot save anything.
+         */
+        void prepare(long[] bounds) {
+            members.removeIf(member -> bounds[member] <= 0);
+            members.sort(Comparator.comparingLong((Integer member) -> bounds[member]).reversed());
+            maxBound = members.isEmpty() ? 0 : bounds[members.get(0)];
+        }
+    }
+
+    /**
+     * The chosen combination: which strategies to apply, and why the others are left out.
+     */
+    static final class Resolution {
+        private final List<DiscountStrategy> strategies;
+        private final Map<Integer, String> groupOf = new HashMap<>();
+        private final Map<String, DiscountStrategy> winners = new HashMap<>();
+
+        private Resolution(List<DiscountStrategy> strategies, boolean[] applied, Group[] groups,
+                           int[] choice) {
+            this.strategies = strategies;
+            for (int d = 0; d < groups.length; d++) {
+                if (choice[d] >= 0) {
+                    winners.put(groups[d].name, strategies.get(choice[d]));
+                }
+            }
+            for (int i = 0; i < strategies.size(); i++) {
+                DiscountStrategy strategy = strategies.get(i);
+                if (!applied[i] && isExclusive(strategy)) {
+                    groupOf.put(i, groupName(strategy));
+                }
+            }
+        }
+
+        /**
+         * @return true if the strategy at this position lost to a better combination
+         */
+        boolean excludes(int position) {
+            return groupOf.containsKey(position);
+        }
+
+        String reason(int position) {
+            String group = groupOf.get(position);
+            DiscountStrategy winner = winners.get(group);
+            String id = strategies.get(position).getId();
+            return winner != null
+                    ? String.format("%s: Not combined, %s saves more (exclusive group %s)", id, winner.getId(), group)
+                    : String.format("%s: Not applied, the cart saves more without it (exclusive group %s)", id, group);
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package org.unifize.discountplatform.engine;
 
 import org.unifize.discountplatform.domain.*;
-import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.domain.payment.PaymentMethod;
+import org.unifize.discountplatform.domain.strategy.*;
 
 import java.util.*;
 
@@ -11,6 +12,63 @@ import java.util.*;
  */
 public final class DiscountCalculator {
 
+    // Line prices are reused per thread so steady-state calculations don't allocate them
+    private final ThreadLocal<PriceLedger> ledgers = ThreadLocal.withInitial(PriceLedger::new);
+    // Prices before each strategy, kept only while flight recorder strategy events are on
+    private final ThreadLocal<PriceLedger> eventLedgers = ThreadLocal.withInitial(PriceLedger::new);
+    private final ReasoningLevel reasoningLevel;
+    private final DiscountResultCache resultCache;
+    private final DiscountMetrics metrics;
+
+    public DiscountCalculator() {
+        this(ReasoningLevel.FULL);
+    }
+
+    /**
+     * @param reasoningLevel How much reasoning to record; OFF skips all reasoning work
+     */
+    public DiscountCalculator(ReasoningLevel reasoningLevel) {
+        this(reasoningLevel, null);
+    }
+
+    /**
+     * @param reasoningLevel How much reasoning to record; OFF skips all reasoning work
+     * @param resultCache    Cache for snapshot-based calculations, or null for none
+     */
+    public DiscountCalculator(ReasoningLevel reasoningLevel, DiscountResultCache resultCache) {
+        this(reasoningLevel, resultCache, null);
+    }
+
+    /**
+     * @param reasoningLevel How much reasoning to record; OFF skips all reasoning work
+     * @param resultCache    Cache for snapshot-based calculations, or null for none
+     * @param metrics        Where to record per-strategy latency and outcomes, or null for none
+     */
+    public DiscountCalculator(ReasoningLevel reasoningLevel, DiscountResultCache resultCache,
+                              DiscountMetrics metrics) {
+        this.reasoningLevel = reasoningLevel;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+    }
+
+    public ReasoningLevel getReasoningLevel() {
+        return reasoningLevel;
+    }
+
+    /**
+     * @return The result cache, or null if results are not cached
+     */
+    public DiscountResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return The metrics this calculator records, or null if it records none
+     */
+    public DiscountMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Calculate final price after applying all eligible discounts.
      * Uses Strategy pattern - each DiscountStrategy handles its own application logic.
@@ -20,52 +78,550 @@ public final class DiscountCalculator {
      * @return Result containing final price, applied discounts, and reasoning
      */
     public DiscountResult calculateDiscounts(Cart cart, List<DiscountStrategy> strategies) {
-        if (cart.isEmpty()) {
-            return DiscountResult.builder()
-                    .originalTotal(Money.zero())
-                    .finalPrice(Money.zero())
-                    .appendReasoning("Cart is empty, no discounts applied.")
-                    .build();
+        // Sort strategies by priority
+        List<DiscountStrategy> sortedStrategies = new ArrayList<>(strategies);
+        sortedStrategies.sort(Comparator.comparingInt(DiscountStrategy::getPriority));
+
+        return applyInOrder(cart, sortedStrategies);
+    }
+
+    /**
+     * Calculate final price using a precompiled plan.
+     * The plan is already validated and sorted, so nothing is copied or re-sorted per call.
+     *
+     * @param cart The shopping cart with items
+     * @param plan Compiled rule set
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, DiscountPlan plan) {
+        return applyInOrder(cart, plan);
+    }
+
+    /**
+     * Calculate final price using a precompiled plan and the voucher the cart's code redeems.
+     * The plan's own vouchers apply to every cart, whatever its code, exactly as in
+     * {@link #calculate(Cart, DiscountPlan)}; the registry only adds the voucher the code
+     * redeems, unless the plan already holds it. That voucher runs at its priority, after the
+     * plan's rules of equal priority; carts without a registered code are priced with the
+     * plan alone.
+     *
+     * @param cart     The shopping cart with items
+     * @param plan     Compiled rule set
+     * @param vouchers Registry of voucher codes
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, DiscountPlan plan, VoucherRegistry vouchers) {
+        return applyWithVoucher(cart, plan, vouchers.lookup(cart.getVoucherCode()));
+    }
+
+    /**
+     * Calculate final price with the rules the cart's customer tier is eligible for.
+     * The plan is picked with one lookup; rules for higher tiers are never evaluated.
+     *
+     * @param cart The shopping cart with items
+     * @param plan Rule set compiled per customer tier
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, TieredPlan plan) {
+        return applyInOrder(cart, plan.planFor(cart));
+    }
+
+    /**
+     * Calculate final price with the rules the cart's customer tier is eligible for, and the
+     * voucher the cart's code redeems if the tier is eligible for it too. Vouchers are
+     * combined as in {@link #calculate(Cart, DiscountPlan, VoucherRegistry)}. A registry built
+     * with the plan's tiers rejects vouchers naming other tiers when they are registered; with
+     * any other registry, such a voucher is never applied.
+     *
+     * @param cart     The shopping cart with items
+     * @param plan     Rule set compiled per customer tier
+     * @param vouchers Registry of voucher codes
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, TieredPlan plan, VoucherRegistry vouchers) {
+        VoucherDiscount voucher = vouchers.lookup(cart.getVoucherCode());
+        if (voucher != null && !plan.isEligible(cart, voucher)) {
+            voucher = null;
         }
+        return applyWithVoucher(cart, plan.planFor(cart), voucher);
+    }
 
-        Money originalTotal = cart.getOriginalTotal();
-        DiscountResult.Builder resultBuilder = DiscountResult.builder()
-                .originalTotal(originalTotal);
+    private DiscountResult applyWithVoucher(Cart cart, DiscountPlan plan, VoucherDiscount voucher) {
+        if (voucher == null || plan.holdsVoucher(voucher)) {
+            return applyInOrder(cart, plan);
+        }
+        List<DiscountStrategy> strategies = plan.getStrategies();
+        int position = 0;
+        while (position < strategies.size() && strategies.get(position).getPriority() <= voucher.getPriority()) {
+            position++;
+        }
+        List<DiscountStrategy> withVoucher = new ArrayList<>(strategies.size() + 1);
+        withVoucher.addAll(strategies.subList(0, position));
+        withVoucher.add(voucher);
+        withVoucher.addAll(strategies.subList(position, strategies.size()));
+        return applyInOrder(cart, null, withVoucher, 0, null,
+                plan.hasExclusiveRules() || CombinationResolver.isExclusive(voucher));
+    }
 
-        // Track current price per item (after discounts applied so far)
-        Map<CartItem, Money> itemPrices = new HashMap<>();
-        for (CartItem item : cart.getItems()) {
-            itemPrices.put(item, item.getTotalPrice());
+    /**
+     * Calculate final price against a published rule snapshot.
+     * The result records the snapshot version it was priced with, and is served from
+     * the result cache when one is configured. If the repository has a tier model, only the
+     * rules the cart's customer tier is eligible for are applied.
+     *
+     * @param cart     The shopping cart with items
+     * @param snapshot Immutable rule set, typically from {@link RuleRepository#current()}
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, RuleSnapshot snapshot) {
+        if (resultCache != null) {
+            return resultCache.get(cart, snapshot, reasoningLevel, () -> applySnapshot(cart, snapshot));
         }
+        return applySnapshot(cart, snapshot);
+    }
 
-        // Sort strategies by priority
+    /**
+     * Calculate final price using a precompiled plan, within the rules' redemption limits.
+     * Rules out of redemptions, budget or the customer's allowance are skipped, as are
+     * budget-limited rules whose discount would exceed what is left of their budget.
+     * Nothing is reserved; see {@link #reserve(Cart, DiscountPlan, RedemptionLedger)}.
+     *
+     * @param cart        The shopping cart with items
+     * @param plan        Compiled rule set
+     * @param redemptions Redemption limits of the rules
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, DiscountPlan plan, RedemptionLedger redemptions) {
+        return applyInOrder(cart, null, plan.getStrategies(), 0, redemptions, plan.hasExclusiveRules());
+    }
+
+    /**
+     * Calculate final price against a published rule snapshot, within the rules' redemption
+     * limits. Results depend on the ledger's state, so they bypass the result cache.
+     *
+     * @param cart        The shopping cart with items
+     * @param snapshot    Immutable rule set, typically from {@link RuleRepository#current()}
+     * @param redemptions Redemption limits of the rules
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, RuleSnapshot snapshot, RedemptionLedger redemptions) {
+        DiscountPlan plan = snapshot.planFor(cart);
+        return applyInOrder(cart, null, plan.getStrategies(), snapshot.getVersion(), redemptions,
+                plan.hasExclusiveRules());
+    }
+
+    /**
+     * Price the cart within the rules' redemption limits and reserve the limited discounts
+     * it gets, e.g. when checkout starts. If another checkout takes the last of a limit
+     * between pricing and reserving, the cart is priced again without that rule.
+     *
+     * @param cart        The shopping cart with items
+     * @param plan        Compiled rule set
+     * @param redemptions Redemption limits of the rules
+     * @return Reservation holding the result; commit it once paid, or release it
+     */
+    public RedemptionLedger.Reservation reserve(Cart cart, DiscountPlan plan, RedemptionLedger redemptions) {
+        while (true) {
+            RedemptionLedger.Reservation reservation = redemptions.reserve(cart, calculate(cart, plan, redemptions));
+            if (reservation != null) {
+                return reservation;
+            }
+        }
+    }
+
+    /**
+     * Price the cart against a published rule snapshot within the rules' redemption limits,
+     * and reserve the limited discounts it gets.
+     *
+     * @param cart        The shopping cart with items
+     * @param snapshot    Immutable rule set, typically from {@link RuleRepository#current()}
+     * @param redemptions Redemption limits of the rules
+     * @return Reservation holding the result; commit it once paid, or release it
+     */
+    public RedemptionLedger.Reservation reserve(Cart cart, RuleSnapshot snapshot, RedemptionLedger redemptions) {
+        while (true) {
+            RedemptionLedger.Reservation reservation =
+                    redemptions.reserve(cart, calculate(cart, snapshot, redemptions));
+            if (reservation != null) {
+                return reservation;
+            }
+        }
+    }
+
+    /**
+     * Calculate final price against the repository's current snapshot, read once.
+     *
+     * @param cart       The shopping cart with items
+     * @param repository Source of the active rules
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, RuleRepository repository) {
+        return calculate(cart, repository.current());
+    }
+
+    /**
+     * Calculate final price starting from materialised item-level prices.
+     * The plan's leading brand and category rules are priced from the book, as long as the
+     * book holds each of them and applies them in the plan's order; the rest of the plan then
+     * runs on those prices in order. Book rules the plan does not contain are never applied,
+     * so the result is the same as {@link #calculate(Cart, DiscountPlan)}.
+     *
+     * @param cart      The shopping cart with items
+     * @param priceBook Item-level prices per product
+     * @param plan      Compiled rule set to price the cart with
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculate(Cart cart, PriceBook priceBook, DiscountPlan plan) {
+        PriceBook.Block block = priceBook.stageFor(plan);
+        List<DiscountStrategy> strategies = plan.getStrategies();
+        return applyInOrder(cart, block, strategies.subList(block.size(), strategies.size()), 0, null,
+                plan.hasExclusiveRules());
+    }
+
+    /**
+     * Calculate final price using an inverted rule index.
+     * Only the strategies that can match the cart's brands, categories and payment mode,
+     * plus every voucher and custom strategy, are evaluated, still in priority order. The final
+     * price, applied discounts and reasoning are the same as a scan of the whole rule set; the
+     * skipped reasons leave out the rules the index pruned, such as "No X items in cart" for a
+     * brand none of the lines carry.
+     *
+     * @param cart  The shopping cart with items
+     * @param index Index built over the active rule set
+     * @return Result containing final price, applied discounts, and reasoning
+     */
+    public DiscountResult calculateDiscounts(Cart cart, DiscountRuleIndex index) {
+        return applyInOrder(cart, index.candidatesFor(cart));
+    }
+
+    /**
+     * Price one cart with each of the customer's payment methods, e.g. to show what they
+     * would pay with each saved card, UPI app or wallet.
+     * The brand, category and voucher stages don't depend on the payment method, so they
+     * run once; only the payment offers and any later rules run per option. Each result is
+     * identical to calculating the cart with that payment method on its own.
+     *
+     * @param cart           The shopping cart; its own payment method is ignored
+     * @param paymentOptions Payment methods to compare
+     * @param plan           Compiled rule set
+     * @return One result per option, cheapest first; equal prices keep the given order
+     */
+    public List<PaymentOptionResult> calculateForPaymentOptions(Cart cart, List<PaymentMethod> paymentOptions,
+                                                                DiscountPlan plan) {
+        return applyForPaymentOptions(cart, paymentOptions, plan, 0);
+    }
+
+    /**
+     * Price one cart with each payment method against a published rule snapshot.
+     *
+     * @param cart           The shopping cart; its own payment method is ignored
+     * @param paymentOptions Payment methods to compare
+     * @param snapshot       Immutable rule set, typically from {@link RuleRepository#current()}
+     * @return One result per option, cheapest first; equal prices keep the given order
+     */
+    public List<PaymentOptionResult> calculateForPaymentOptions(Cart cart, List<PaymentMethod> paymentOptions,
+                                                                RuleSnapshot snapshot) {
+        return applyForPaymentOptions(cart, paymentOptions, snapshot.planFor(cart), snapshot.getVersion());
+    }
+
+    /**
+     * Price many carts in parallel with default batch options.
+     *
+     * @param carts Carts to price
+     * @param plan  Compiled rule set shared by all carts
+     * @return One result per cart, in input order
+     */
+    public List<DiscountResult> calculateBatch(List<Cart> carts, DiscountPlan plan) {
+        return calculateBatch(carts, plan, BatchOptions.defaults());
+    }
+
+    /**
+     * Price many carts in parallel.
+     * Carts are split into chunks of consecutive carts that run on the chosen thread model;
+     * each result is identical to pricing that cart on its own.
+     *
+     * @param carts   Carts to price
+     * @param plan    Compiled rule set shared by all carts
+     * @param options Thread model, chunk size and pool
+     * @return One result per cart, in input order
+     */
+    public List<DiscountResult> calculateBatch(List<Cart> carts, DiscountPlan plan, BatchOptions options) {
+        return applyBatch(carts, plan.getStrategies(), plan.hasExclusiveRules(), options);
+    }
+
+    /**
+     * Price many carts in parallel against an uncompiled rule list, sorted once for the batch.
+     *
+     * @param carts      Carts to price
+     * @param strategies Available discount strategies
+     * @param options    Thread model, chunk size and pool
+     * @return One result per cart, in input order
+     */
+    public List<DiscountResult> calculateBatch(List<Cart> carts, List<DiscountStrategy> strategies,
+                                               BatchOptions options) {
         List<DiscountStrategy> sortedStrategies = new ArrayList<>(strategies);
         sortedStrategies.sort(Comparator.comparingInt(DiscountStrategy::getPriority));
+        return applyBatch(carts, sortedStrategies, CombinationResolver.hasExclusiveRules(sortedStrategies), options);
+    }
+
+    private List<DiscountResult> applyBatch(List<Cart> carts, List<DiscountStrategy> sortedStrategies,
+                                            boolean exclusive, BatchOptions options) {
+        List<Cart> input = carts instanceof RandomAccess ? carts : new ArrayList<>(carts);
+        DiscountResult[] results = new DiscountResult[input.size()];
+        BatchExecutor.forEachChunk(results.length, options, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                results[i] = applyInOrder(input.get(i), null, sortedStrategies, 0, null, exclusive);
+            }
+        });
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private DiscountResult applySnapshot(Cart cart, RuleSnapshot snapshot) {
+        DiscountPlan plan = snapshot.planFor(cart);
+        return applyInOrder(cart, null, plan.getStrategies(), snapshot.getVersion(), null, plan.hasExclusiveRules());
+    }
+
+    private DiscountResult applyInOrder(Cart cart, DiscountPlan plan) {
+        return applyInOrder(cart, null, plan.getStrategies(), 0, null, plan.hasExclusiveRules());
+    }
 
-        resultBuilder.appendReasoning("Starting calculation with cart total: " + originalTotal);
+    /**
+     * Apply a rule list that was not compiled into a plan, looking for exclusive rules in it.
+     */
+    private DiscountResult applyInOrder(Cart cart, List<DiscountStrategy> sortedStrategies) {
+        return applyInOrder(cart, null, sortedStrategies, 0, null, CombinationResolver.hasExclusiveRules(sortedStrategies));
+    }
+
+    /**
+     * Calculate with the item-level stage priced up front, then the remaining strategies in order.
+     *
+     * @param exclusive Whether any of the strategies is exclusive
+     */
+    DiscountResult calculate(Cart cart, ItemStage itemStage, List<DiscountStrategy> sortedStrategies,
+                             long ruleVersion, boolean exclusive) {
+        return applyInOrder(cart, itemStage, sortedStrategies, ruleVersion, null, exclusive);
+    }
+
+    private DiscountResult applyInOrder(Cart cart, ItemStage itemStage, List<DiscountStrategy> sortedStrategies,
+                                        long ruleVersion, RedemptionLedger redemptions, boolean exclusive) {
+        CalculationEvent event = new CalculationEvent();
+        if (metrics == null && !event.isEnabled()) {
+            return price(cart, itemStage, sortedStrategies, ruleVersion, redemptions, exclusive);
+        }
+        event.begin();
+        long start = System.nanoTime();
+        DiscountResult result = price(cart, itemStage, sortedStrategies, ruleVersion, redemptions, exclusive);
+        if (metrics != null) {
+            metrics.recordCalculation(System.nanoTime() - start, savingsOf(result));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(cart, sortedStrategies.size(), result, 0);
+            event.commit();
+        }
+        return result;
+    }
+
+    private DiscountResult price(Cart cart, ItemStage itemStage, List<DiscountStrategy> sortedStrategies,
+                                 long ruleVersion, RedemptionLedger redemptions, boolean exclusive) {
+        if (cart.isEmpty()) {
+            return emptyResult(ruleVersion);
+        }
+
+        DiscountResult.Builder resultBuilder = startResult(cart, ruleVersion);
+
+        // Track current price per item (after discounts applied so far)
+        PriceLedger ledger = ledgers.get();
+        ledger.reset(cart);
+
+        if (itemStage != null) {
+            itemStage.applyTo(cart, ledger, resultBuilder);
+        }
+        if (redemptions != null) {
+            List<DiscountStrategy> limited = redemptions.redeemable(cart, sortedStrategies, exclusive, ledger,
+                    resultBuilder);
+            if (limited != sortedStrategies) {
+                sortedStrategies = limited;
+                exclusive = CombinationResolver.hasExclusiveRules(limited);
+            }
+        }
+        applyStrategies(cart, sortedStrategies, exclusive, ledger, resultBuilder, metrics);
+
+        return finishResult(ledger, resultBuilder);
+    }
+
+    private List<PaymentOptionResult> applyForPaymentOptions(Cart cart, List<PaymentMethod> paymentOptions,
+                                                             DiscountPlan plan, long ruleVersion) {
+        CalculationEvent event = new CalculationEvent();
+        if (metrics == null && !event.isEnabled()) {
+            return priceOptions(cart, paymentOptions, plan, ruleVersion);
+        }
+        event.begin();
+        long start = System.nanoTime();
+        List<PaymentOptionResult> results = priceOptions(cart, paymentOptions, plan, ruleVersion);
+        DiscountResult cheapest = results.isEmpty() ? null : results.get(0).getResult();
+        if (metrics != null) {
+            metrics.recordCalculation(System.nanoTime() - start, cheapest == null ? 0 : savingsOf(cheapest));
+        }
+        event.end();
+        if (cheapest != null && event.shouldCommit()) {
+            event.set(cart, plan.size(), cheapest, paymentOptions.size());
+            event.commit();
+        }
+        return results;
+    }
+
+    private List<PaymentOptionResult> priceOptions(Cart cart, List<PaymentMethod> paymentOptions,
+                                                   DiscountPlan plan, long ruleVersion) {
+        List<DiscountStrategy> sortedStrategies = plan.getStrategies();
+        List<PaymentOptionResult> results = new ArrayList<>(paymentOptions.size());
+        if (cart.isEmpty()) {
+            for (PaymentMethod option : paymentOptions) {
+                results.add(new PaymentOptionResult(option, emptyResult(ruleVersion)));
+            }
+            return Collections.unmodifiableList(results);
+        }
+
+        int shared = 0;
+        while (shared < sortedStrategies.size() && isPaymentIndependent(sortedStrategies.get(shared))) {
+            shared++;
+        }
+        List<DiscountStrategy> perOption = sortedStrategies.subList(shared, sortedStrategies.size());
+
+        DiscountResult.Builder sharedBuilder = startResult(cart, ruleVersion);
+        PriceLedger ledger = ledgers.get();
+        ledger.reset(cart);
+        applyStrategies(cart, sortedStrategies.subList(0, shared), false, ledger, sharedBuilder, metrics);
+        PriceLedger sharedPrices = new PriceLedger();
+        sharedPrices.copyFrom(ledger);
+
+        for (PaymentMethod option : paymentOptions) {
+            Cart optionCart = new Cart(cart.getCartId(), cart.getItems(), option,
+                    cart.getCustomerId(), cart.getCustomerTier(), cart.getVoucherCode());
+            DiscountResult.Builder resultBuilder = sharedBuilder.copy().cart(optionCart);
+            ledger.copyFrom(sharedPrices);
+            // The shared rules are never exclusive, so any exclusive rule of the plan is in perOption
+            applyStrategies(optionCart, perOption, plan.hasExclusiveRules(), ledger, resultBuilder, metrics);
+            results.add(new PaymentOptionResult(option, finishResult(ledger, resultBuilder)));
+        }
+
+        // Stable, so options with equal prices keep the caller's order
+        results.sort(Comparator.comparingLong(option -> option.getResult().getFinalPrice().getPaise()));
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Built-in brand, category and voucher rules never look at the payment method;
+     * payment offers and custom strategies might. Exclusive rules are chosen against
+     * everything after them, so they are resolved per option.
+     */
+    private static boolean isPaymentIndependent(DiscountStrategy strategy) {
+        return (strategy instanceof BrandDiscount
+                || strategy instanceof CategoryDiscount
+                || strategy instanceof VoucherDiscount)
+                && !CombinationResolver.isExclusive(strategy);
+    }
+
+    DiscountResult emptyResult(long ruleVersion) {
+        return DiscountResult.builder(reasoningLevel)
+                .ruleVersion(ruleVersion)
+                .originalTotal(Money.zero())
+                .finalPrice(Money.zero())
+                .appendReasoning("Cart is empty, no discounts applied.")
+                .build();
+    }
+
+    DiscountResult.Builder startResult(Cart cart, long ruleVersion) {
+        Money originalTotal = cart.getOriginalTotal();
+        return DiscountResult.builder(reasoningLevel)
+                .ruleVersion(ruleVersion)
+                .originalTotal(originalTotal)
+                .cart(cart)
+                .appendReasoning("Starting calculation with cart total: ", originalTotal);
+    }
+
+    /**
+     * Apply the strategies in order to the ledger, recording each outcome on the builder.
+     *
+     * @param exclusive       Whether any of the strategies is exclusive; plans know this from compile time
+     * @param strategyMetrics Where to record each strategy's outcome, or null for nowhere
+     */
+    void applyStrategies(Cart cart, List<DiscountStrategy> sortedStrategies,
+                                 boolean exclusive, PriceLedger ledger, DiscountResult.Builder resultBuilder,
+                                 DiscountMetrics strategyMetrics) {
+        // Non-stackable and grouped rules compete; settle which of them apply before running any
+        CombinationResolver.Resolution resolution = null;
+        if (exclusive) {
+            resolution = CombinationResolver.resolve(cart, sortedStrategies, ledger);
+        }
+        boolean timed = strategyMetrics != null && strategyMetrics.sampleLatency();
+        PriceLedger before = new StrategyEvent().isEnabled() ? eventLedgers.get() : null;
 
         // Apply each strategy in order (no more switch statement!)
-        for (DiscountStrategy strategy : sortedStrategies) {
-            Money discountAmount = strategy.apply(cart, itemPrices, resultBuilder);
-
-            if (discountAmount.isGreaterThan(Money.zero())) {
-                AppliedDiscount applied = new AppliedDiscount(
-                        strategy.getId(),
-                        strategy.getType(),
-                        discountAmount,
-                        strategy.getDescription()
-                );
-                resultBuilder.addAppliedDiscount(applied);
+        for (int i = 0; i < sortedStrategies.size(); i++) {
+            DiscountStrategy strategy = sortedStrategies.get(i);
+            if (resolution != null && resolution.excludes(i)) {
+                if (resultBuilder.getReasoningLevel().recordsSummary()) {
+                    resultBuilder.addSkippedReason(resolution.reason(i));
+                }
+                if (strategyMetrics != null) {
+                    strategyMetrics.recordExcluded(strategy);
+                }
+                continue;
+            }
+            StrategyEvent event = null;
+            if (before != null) {
+                event = new StrategyEvent();
+                before.copyFrom(ledger);
+                event.begin();
+            }
+            long discountAmount;
+            if (timed) {
+                long start = System.nanoTime();
+                discountAmount = strategy.apply(cart, ledger, resultBuilder);
+                strategyMetrics.recordStrategy(strategy, System.nanoTime() - start, discountAmount);
+            } else {
+                discountAmount = strategy.apply(cart, ledger, resultBuilder);
+                if (strategyMetrics != null) {
+                    strategyMetrics.recordStrategy(strategy, discountAmount);
+                }
+            }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.set(strategy, before, ledger, discountAmount);
+                    event.commit();
+                }
             }
+            recordApplied(resultBuilder, strategy, discountAmount);
         }
+    }
+
+    private static long savingsOf(DiscountResult result) {
+        return result.getOriginalTotal().getPaise() - result.getFinalPrice().getPaise();
+    }
 
+    static DiscountResult finishResult(PriceLedger ledger, DiscountResult.Builder resultBuilder) {
         // Calculate final price
-        Money finalPrice = itemPrices.values().stream()
-                .reduce(Money.zero(), Money::add);
+        Money finalPrice = Money.ofPaise(ledger.total());
 
         resultBuilder.finalPrice(finalPrice);
-        resultBuilder.appendReasoning("Final price after all discounts: " + finalPrice);
+        resultBuilder.appendReasoning("Final price after all discounts: ", finalPrice);
 
         return resultBuilder.build();
     }
+
+    static void recordApplied(DiscountResult.Builder resultBuilder, DiscountStrategy strategy,
+                              long discountAmount) {
+        if (discountAmount > 0) {
+            AppliedDiscount applied = new AppliedDiscount(
+                    strategy.getId(),
+                    strategy.getType(),
+                    Money.ofPaise(discountAmount),
+                    strategy.getDescription()
+            );
+            resultBuilder.addAppliedDiscount(applied);
+            resultBuilder.traceApplied(strategy, discountAmount);
+        }
+    }
 }
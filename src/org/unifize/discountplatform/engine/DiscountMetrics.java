@@ -0,0 +1,240 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.DiscountType;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome metrics per strategy id, per discount type and per calculation,
+ * recorded by a {@link DiscountCalculator} built with them.
+ *
+ * Every strategy run is counted as applied (it took something off) or skipped, and rules
+ * that lose to a better combination as excluded. Timing a run costs more than most runs,
+ * so strategy latencies are sampled: all strategies of one calculation in
+ * {@code latencySampling} are timed. Whole calculations are always timed. Rules priced by an
+ * item stage (a price book or pricing session) are only counted in the calculation.
+ * Counters are {@link LongAdder}s and histograms are striped, so threads do not contend.
+ * A calculator without metrics does no counting or timing at all.
+ *
+ * Read the metrics with {@link #snapshot()}, or over JMX after {@link #registerMBean(String)}.
+ */
+public final class DiscountMetrics {
+
+    private static final String DOMAIN = "org.unifize.discountplatform";
+
+    /**
+     * Strategy latencies are sampled from one calculation in this many by default.
+     */
+    public static final int DEFAULT_LATENCY_SAMPLING = 16;
+
+    private final int latencySampling;
+    private final Recorder calculations = new Recorder(null);
+    private final ConcurrentHashMap<String, Recorder> byStrategy = new ConcurrentHashMap<>();
+
+    public DiscountMetrics() {
+        this(DEFAULT_LATENCY_SAMPLING);
+    }
+
+    /**
+     * @param latencySampling Time the strategies of one calculation in this many; 1 times all
+     */
+    public DiscountMetrics(int latencySampling) {
+        if (latencySampling < 1) {
+            throw new IllegalArgumentException("Latency sampling must be at least 1: " + latencySampling);
+        }
+        this.latencySampling = latencySampling;
+    }
+
+    public int getLatencySampling() {
+        return latencySampling;
+    }
+
+    /**
+     * @return true if the strategies of the calculation about to run should be timed
+     */
+    boolean sampleLatency() {
+        return latencySampling == 1 || ThreadLocalRandom.current().nextInt(latencySampling) == 0;
+    }
+
+    void recordStrategy(DiscountStrategy strategy, long discountPaise) {
+        recorderFor(strategy).count(discountPaise);
+    }
+
+    void recordStrategy(DiscountStrategy strategy, long nanos, long discountPaise) {
+        Recorder recorder = recorderFor(strategy);
+        recorder.count(discountPaise);
+        recorder.latency.record(nanos);
+    }
+
+    void recordExcluded(DiscountStrategy strategy) {
+        recorderFor(strategy).excluded.increment();
+    }
+
+    void recordCalculation(long nanos, long discountPaise) {
+        calculations.count(discountPaise);
+        calculations.latency.record(nanos);
+    }
+
+    private Recorder recorderFor(DiscountStrategy strategy) {
+        Recorder recorder = byStrategy.get(strategy.getId());
+        if (recorder == null) {
+            recorder = byStrategy.computeIfAbsent(strategy.getId(), id -> new Recorder(strategy.getType()));
+        }
+        return recorder;
+    }
+
+    /**
+     * @return Copy of the current counters and histograms
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, StrategyMetrics> strategies = new TreeMap<>();
+        Map<DiscountType, Recorder> merged = new EnumMap<>(DiscountType.class);
+        for (DiscountType type : DiscountType.values()) {
+            merged.put(type, new Recorder(type));
+        }
+        byStrategy.forEach((id, recorder) -> {
+            StrategyMetrics metrics = recorder.snapshot(id);
+            strategies.put(id, metrics);
+            if (recorder.type != null) {
+                merged.get(recorder.type).add(metrics);
+            }
+        });
+
+        // Types are summed from their strategies here rather than recorded separately per run
+        Map<DiscountType, StrategyMetrics> types = new EnumMap<>(DiscountType.class);
+        merged.forEach((type, recorder) -> types.put(type, recorder.snapshot(type.name())));
+        return new MetricsSnapshot(calculations.snapshot("calculation"),
+                Collections.unmodifiableMap(strategies), Collections.unmodifiableMap(types));
+    }
+
+    /**
+     * Clear all counters and histograms, and forget the strategies seen so far.
+     */
+    public void reset() {
+        calculations.reset();
+        byStrategy.clear();
+    }
+
+    /**
+     * Publish these metrics on the platform MBean server as
+     * {@code org.unifize.discountplatform:type=DiscountMetrics,name=<name>}.
+     *
+     * @return The registered object name
+     * @throws IllegalStateException if the name is taken or registration fails
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(this), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register discount metrics " + name, e);
+        }
+    }
+
+    /**
+     * Remove the MBean registered under the given name, if any.
+     */
+    public static void unregisterMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister discount metrics " + name, e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=DiscountMetrics,name=" + ObjectName.quote(name));
+    }
+
+    private static final class Recorder {
+        final DiscountType type;
+        final LongAdder applied = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder excluded = new LongAdder();
+        final LongAdder discountPaise = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Recorder(DiscountType type) {
+            this.type = type;
+        }
+
+        void count(long discount) {
+            if (discount > 0) {
+                applied.increment();
+                discountPaise.add(discount);
+            } else {
+                skipped.increment();
+            }
+        }
+
+        /**
+         * Fold another recorder's snapshot into this one.
+         */
+        void add(StrategyMetrics other) {
+            applied.add(other.getApplied());
+            skipped.add(other.getSkipped());
+            excluded.add(other.getExcluded());
+            discountPaise.add(other.getDiscountPaise());
+            latency.add(other);
+        }
+
+        StrategyMetrics snapshot(String name) {
+            return new StrategyMetrics(name, applied.sum(), skipped.sum(), excluded.sum(),
+                    discountPaise.sum(), latency.bucketCounts(), latency.totalNanos());
+        }
+
+        void reset() {
+            applied.reset();
+            skipped.reset();
+            excluded.reset();
+            discountPaise.reset();
+            latency.reset();
+        }
+    }
+
+    /**
+     * Adapter so the JMX interface does not widen the metrics' own API.
+     */
+    private static final class MBean implements DiscountMetricsMXBean {
+        private final DiscountMetrics metrics;
+
+        MBean(DiscountMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public StrategyMetrics getCalculations() {
+            return metrics.snapshot().getCalculations();
+        }
+
+        @Override
+        public Map<String, StrategyMetrics> getStrategies() {
+            return metrics.snapshot().getStrategies();
+        }
+
+        @Override
+        public Map<String, StrategyMetrics> getTypes() {
+            Map<String, StrategyMetrics> types = new LinkedHashMap<>();
+            metrics.snapshot().getTypes().forEach((type, stats) -> types.put(type.name(), stats));
+            return types;
+        }
+
+        @Override
+        public void reset() {
+            metrics.reset();
+        }
+    }
+}
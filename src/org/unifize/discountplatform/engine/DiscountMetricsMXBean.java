@@ -0,0 +1,29 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link DiscountMetrics}. Every attribute read takes a fresh snapshot.
+ */
+public interface DiscountMetricsMXBean {
+
+    /**
+     * @return Totals over whole calculations
+     */
+    StrategyMetrics getCalculations();
+
+    /**
+     * @return Metrics per strategy id
+     */
+    Map<String, StrategyMetrics> getStrategies();
+
+    /**
+     * @return Metrics per discount type name
+     */
+    Map<String, StrategyMetrics> getTypes();
+
+    /**
+     * Clear all counters and histograms.
+     */
+    void reset();
+}
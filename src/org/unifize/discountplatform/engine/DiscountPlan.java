@@ -0,0 +1,112 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Money;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.domain.strategy.PaymentDiscount;
+import org.unifize.discountplatform.domain.strategy.VoucherDiscount;
+
+import java.util.*;
+
+/**
+ * Immutable, precompiled rule set.
+ * Rules are validated and sorted into priority order once, when the rule set
+ * changes, so each calculation can walk them without copying or re-sorting.
+ */
+public final class DiscountPlan {
+
+    private final List<DiscountStrategy> strategies;
+    // The plan's vouchers by identity, so a registry voucher is checked against them in O(1)
+    private final Set<VoucherDiscount> vouchers;
+    private final boolean exclusive;
+
+    private DiscountPlan(List<DiscountStrategy> strategies, Set<VoucherDiscount> vouchers) {
+        this.strategies = strategies;
+        this.vouchers = vouchers;
+        this.exclusive = CombinationResolver.hasExclusiveRules(strategies);
+    }
+
+    /**
+     * Validate and compile a rule set.
+     *
+     * @param strategies Rule set to compile (any order)
+     * @return Plan with rules in application order; rules of equal priority keep their given order
+     * @throws IllegalArgumentException if a rule has an invalid percent, cap, threshold or validity window
+     */
+    public static DiscountPlan compile(List<DiscountStrategy> strategies) {
+        List<DiscountStrategy> sorted = new ArrayList<>(strategies);
+        for (DiscountStrategy strategy : sorted) {
+            validate(strategy);
+        }
+        sorted.sort(Comparator.comparingInt(DiscountStrategy::getPriority));
+        return ofSorted(sorted);
+    }
+
+    /**
+     * Compile rules that are already validated and in application order, e.g. a subset of
+     * a compiled plan's rules.
+     */
+    static DiscountPlan ofSorted(List<DiscountStrategy> sorted) {
+        Set<VoucherDiscount> vouchers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DiscountStrategy strategy : sorted) {
+            if (strategy instanceof VoucherDiscount) {
+                vouchers.add((VoucherDiscount) strategy);
+            }
+        }
+        return new DiscountPlan(Collections.unmodifiableList(sorted), vouchers);
+    }
+
+    /**
+     * @return All rules in application order
+     */
+    public List<DiscountStrategy> getStrategies() {
+        return strategies;
+    }
+
+    public int size() {
+        return strategies.size();
+    }
+
+    /**
+     * @return true if some rule is non-stackable or in an exclusive group, so the rules
+     *         competing for a cart must be resolved before any is applied
+     */
+    boolean hasExclusiveRules() {
+        return exclusive;
+    }
+
+    /**
+     * @return true if this voucher object is one of the plan's rules
+     */
+    boolean holdsVoucher(VoucherDiscount voucher) {
+        return vouchers.contains(voucher);
+    }
+
+    private static void validate(DiscountStrategy strategy) {
+        if (strategy.getId() == null) {
+            throw new IllegalArgumentException("Discount id is required: " + strategy);
+        }
+        if (strategy.getDiscountPercent() < 0 || strategy.getDiscountPercent() > 100) {
+            throw new IllegalArgumentException(strategy.getId()
+                    + ": discount percent must be between 0 and 100, was " + strategy.getDiscountPercent());
+        }
+        if (isNegative(strategy.getMaxDiscountCap())) {
+            throw new IllegalArgumentException(strategy.getId()
+                    + ": max discount cap must not be negative, was " + strategy.getMaxDiscountCap());
+        }
+        if (strategy instanceof PaymentDiscount
+                && isNegative(((PaymentDiscount) strategy).getMinCartValue())) {
+            throw new IllegalArgumentException(strategy.getId()
+                    + ": min cart value must not be negative, was "
+                    + ((PaymentDiscount) strategy).getMinCartValue());
+        }
+        if (strategy.getValidFrom() != null && strategy.getValidTo() != null
+                && !strategy.getValidFrom().isBefore(strategy.getValidTo())) {
+            throw new IllegalArgumentException(strategy.getId() + ": valid from " + strategy.getValidFrom()
+                    + " must be before valid to " + strategy.getValidTo());
+        }
+    }
+
+    private static boolean isNegative(Money amount) {
+        return amount != null && amount.isLessThan(Money.zero());
+    }
+}
@@ -0,0 +1,195 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.DiscountResult;
+import org.unifize.discountplatform.domain.ReasoningLevel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of calculation results, for carts that are re-priced without changes.
+ * Entries are keyed by cart contents, payment method, customer tier, voucher code,
+ * rule version and reasoning level, and evicted least-recently-used.
+ *
+ * Only snapshot-based calculations are cached, since only they carry a rule version.
+ * Results are served only for the most recent snapshot seen: moving to a newer snapshot
+ * drops every entry, and calculations against any other snapshot bypass the cache.
+ * A rule change therefore never returns a price from the previous rules.
+ *
+ * The cache is split into independently locked LRU segments so concurrent callers rarely contend.
+ */
+public final class DiscountResultCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_ENTRIES_PER_SEGMENT = 64;
+
+    private final int maximumSize;
+    private final Segment[] segments;
+    private final AtomicReference<RuleSnapshot> latest = new AtomicReference<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize Upper bound on cached results
+     * @throws IllegalArgumentException if maximumSize is not positive
+     */
+    public DiscountResultCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maximumSize / (segmentCount * 2) >= MIN_ENTRIES_PER_SEGMENT) {
+            segmentCount *= 2;
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread the remainder so the segment capacities add up to maximumSize exactly
+            int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Return the cached result for this cart under the snapshot, or compute and cache it.
+     */
+    DiscountResult get(Cart cart, RuleSnapshot snapshot, ReasoningLevel reasoningLevel,
+                       Supplier<DiscountResult> calculation) {
+        if (!admit(snapshot)) {
+            return calculation.get();
+        }
+        CartKey key = new CartKey(cart, snapshot.getVersion(), reasoningLevel);
+        Segment segment = segmentFor(key);
+
+        DiscountResult cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        // Computed outside the lock; a concurrent miss on the same key computes the same result
+        DiscountResult result = calculation.get();
+        if (latest.get() == snapshot) {
+            segment.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drop every cached result.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return Number of cached results
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Entries removed to stay within the size bound; invalidations are not counted
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Share of lookups served from the cache, or 0 before any lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DiscountResultCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maximumSize, getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+    /**
+     * @return true if results for this snapshot may be served and stored
+     */
+    private boolean admit(RuleSnapshot snapshot) {
+        while (true) {
+            RuleSnapshot current = latest.get();
+            if (current == snapshot) {
+                return true;
+            }
+            if (current != null && snapshot.getVersion() <= current.getVersion()) {
+                // An older snapshot, or one from another repository
+                return false;
+            }
+            if (latest.compareAndSet(current, snapshot)) {
+                invalidateAll();
+                return true;
+            }
+        }
+    }
+
+    private Segment segmentFor(CartKey key) {
+        return segments[key.hashCode() & (segments.length - 1)];
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<CartKey, DiscountResult> entries;
+
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CartKey, DiscountResult> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized DiscountResult get(CartKey key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(CartKey key, DiscountResult result) {
+            entries.put(key, result);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
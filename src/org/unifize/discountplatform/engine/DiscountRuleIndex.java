@@ -0,0 +1,220 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+/**
+ * Inverted index over a rule set, keyed by brand, category and payment method.
+ * Looking up a cart returns only the strategies that can match it, in priority order,
+ * so the cost of a calculation follows the number of matching rules rather than the
+ * size of the rule set.
+ *
+ * Keys are compared case-insensitively, exactly like the strategies match them: brands and
+ * categories by their {@link SymbolTable} ids, which index the lookup tables directly,
+ * and payment offers through a {@link PaymentOfferIndex}. Vouchers and custom strategies
+ * are always candidates: a plan applies every voucher it holds whatever code the cart
+ * carries, so keying them by code would price differently from a linear scan.
+ */
+public final class DiscountRuleIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final List<DiscountStrategy> ordered;
+    private final int[][] byBrand;
+    private final int[][] byCategory;
+    private final PaymentOfferIndex paymentOffers;
+    private final int[] paymentOfferRanks;
+    private final int[] always;
+
+    /**
+     * Build an index over the given strategies.
+     *
+     * @param strategies Rule set to index (any order)
+     */
+    public DiscountRuleIndex(List<DiscountStrategy> strategies) {
+        this(sortByPriority(strategies));
+    }
+
+    /**
+     * Build an index over a compiled plan, reusing its validated priority order.
+     *
+     * @param plan Compiled rule set
+     */
+    public DiscountRuleIndex(DiscountPlan plan) {
+        this(plan.getStrategies().toArray(new DiscountStrategy[0]));
+    }
+
+    private DiscountRuleIndex(DiscountStrategy[] sortedStrategies) {
+        List<DiscountStrategy> sorted = Arrays.asList(sortedStrategies);
+        this.ordered = Collections.unmodifiableList(sorted);
+
+        Map<Integer, List<Integer>> brands = new HashMap<>();
+        Map<Integer, List<Integer>> categories = new HashMap<>();
+        List<PaymentDiscount> offers = new ArrayList<>();
+        List<Integer> offerRanks = new ArrayList<>();
+        List<Integer> unkeyed = new ArrayList<>();
+
+        for (int rank = 0; rank < sorted.size(); rank++) {
+            DiscountStrategy strategy = sorted.get(rank);
+            if (strategy instanceof BrandDiscount) {
+                String brand = ((BrandDiscount) strategy).getTargetBrand();
+                if (brand != null) {
+                    brands.computeIfAbsent(SymbolTable.global().intern(brand), k -> new ArrayList<>()).add(rank);
+                }
+            } else if (strategy instanceof CategoryDiscount) {
+                String category = ((CategoryDiscount) strategy).getTargetCategory();
+                if (category != null) {
+                    categories.computeIfAbsent(SymbolTable.global().intern(category), k -> new ArrayList<>()).add(rank);
+                }
+            } else if (strategy instanceof PaymentDiscount) {
+                offers.add((PaymentDiscount) strategy);
+                offerRanks.add(rank);
+            } else {
+                unkeyed.add(rank);
+            }
+        }
+
+        this.byBrand = bySymbol(brands);
+        this.byCategory = bySymbol(categories);
+        this.paymentOffers = new PaymentOfferIndex(offers);
+        this.paymentOfferRanks = toArray(offerRanks);
+        this.always = toArray(unkeyed);
+    }
+
+    /**
+     * @return All indexed strategies in priority order
+     */
+    public List<DiscountStrategy> getStrategies() {
+        return ordered;
+    }
+
+    public int size() {
+        return ordered.size();
+    }
+
+    /**
+     * Find the strategies that can apply to the given cart.
+     *
+     * @param cart The shopping cart
+     * @return Candidate strategies in the same relative order as a priority-sorted scan;
+     *         the others could only be skipped
+     */
+    public List<DiscountStrategy> candidatesFor(Cart cart) {
+        List<int[]> buckets = new ArrayList<>();
+        int count = addBucket(buckets, always, 0);
+
+        BitSet seenBrands = new BitSet();
+        BitSet seenCategories = new BitSet();
+        for (CartItem item : cart.getItems()) {
+            int brand = item.getBrandId();
+            if (brand >= 0 && !seenBrands.get(brand)) {
+                seenBrands.set(brand);
+                count = addBucket(buckets, ranksOf(byBrand, brand), count);
+            }
+            int category = item.getCategoryId();
+            if (category >= 0 && !seenCategories.get(category)) {
+                seenCategories.set(category);
+                count = addBucket(buckets, ranksOf(byCategory, category), count);
+            }
+        }
+
+        int[] offerPositions = paymentOffers.positionsFor(cart.getPaymentMethod());
+        if (offerPositions.length > 0) {
+            int[] ranks = new int[offerPositions.length];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = paymentOfferRanks[offerPositions[i]];
+            }
+            count = addBucket(buckets, ranks, count);
+        }
+
+        // Ranks are positions in the sorted rule set, so sorting them restores priority order
+        int[] ranks = new int[count];
+        int offset = 0;
+        for (int[] bucket : buckets) {
+            System.arraycopy(bucket, 0, ranks, offset, bucket.length);
+            offset += bucket.length;
+        }
+        Arrays.sort(ranks);
+
+        List<DiscountStrategy> candidates = new ArrayList<>(count);
+        for (int rank : ranks) {
+            candidates.add(ordered.get(rank));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return The payment offers of the rule set, indexed by the attributes they require
+     */
+    public PaymentOfferIndex getPaymentOffers() {
+        return paymentOffers;
+    }
+
+    /**
+     * @param brandId Symbol id of a cart item's brand
+     * @return Ranks of the brand discounts targeting this brand, ascending
+     */
+    int[] brandRanks(int brandId) {
+        return ranksOf(byBrand, brandId);
+    }
+
+    /**
+     * @param categoryId Symbol id of a cart item's category
+     * @return Ranks of the category discounts targeting this category, ascending
+     */
+    int[] categoryRanks(int categoryId) {
+        return ranksOf(byCategory, categoryId);
+    }
+
+    /**
+     * Fold a key the same way {@link String#equalsIgnoreCase} compares characters.
+     */
+    static String normalize(String value) {
+        return SymbolTable.normalize(value);
+    }
+
+    private static int[] ranksOf(int[][] bySymbol, int id) {
+        return id >= 0 && id < bySymbol.length ? bySymbol[id] : NONE;
+    }
+
+    /**
+     * @return Ranks per symbol id, {@link #NONE} for ids no rule targets
+     */
+    private static int[][] bySymbol(Map<Integer, List<Integer>> source) {
+        int length = 0;
+        for (int id : source.keySet()) {
+            length = Math.max(length, id + 1);
+        }
+        int[][] table = new int[length][];
+        Arrays.fill(table, NONE);
+        source.forEach((id, ranks) -> table[id] = toArray(ranks));
+        return table;
+    }
+
+    private static DiscountStrategy[] sortByPriority(List<DiscountStrategy> strategies) {
+        DiscountStrategy[] sorted = strategies.toArray(new DiscountStrategy[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(DiscountStrategy::getPriority));
+        return sorted;
+    }
+
+    private static int addBucket(List<int[]> buckets, int[] bucket, int count) {
+        if (bucket == null || bucket.length == 0) {
+            return count;
+        }
+        buckets.add(bucket);
+        return count + bucket.length;
+    }
+
+    private static int[] toArray(List<Integer> ranks) {
+        if (ranks.isEmpty()) {
+            return NONE;
+        }
+        int[] result = new int[ranks.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranks.get(i);
+        }
+        return result;
+    }
+}
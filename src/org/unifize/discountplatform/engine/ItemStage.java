@@ -0,0 +1,15 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.DiscountResult;
+import org.unifize.discountplatform.domain.PriceLedger;
+
+/**
+ * Prices the leading item-level rules of a rule list for a whole cart in one step; the
+ * per-strategy loop in {@link DiscountCalculator} then runs only the rules after them. It must
+ * leave the ledger and the result builder exactly as applying those rules one after another would.
+ */
+interface ItemStage {
+
+    void applyTo(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder);
+}
@@ -0,0 +1,88 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ * Values are grouped by power of two, and each power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a reported value is within 1/8 of the recorded
+ * one; values below 8 ns are exact. Latencies of 2^37 ns (about 137 s) or more are clamped.
+ *
+ * Recording is one increment on a bucket. Threads are spread over up to four copies of
+ * the buckets by thread id, so threads timing the same rule rarely share a cache line.
+ */
+final class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int MAX_MAGNITUDE = 36;
+    static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int STRIPES = Math.min(4,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucketOf(value));
+        totalNanos.add(value);
+    }
+
+    /**
+     * @return Recorded counts per bucket, summed over all stripes
+     */
+    long[] bucketCounts() {
+        long[] merged = new long[BUCKETS];
+        for (int i = 0; i < counts.length(); i++) {
+            merged[i % BUCKETS] += counts.get(i);
+        }
+        return merged;
+    }
+
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Add the latencies of a snapshot to this histogram.
+     */
+    void add(StrategyMetrics other) {
+        long[] otherCounts = other.latencyCounts();
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.addAndGet(i, otherCounts[i]);
+        }
+        totalNanos.add(other.totalNanos());
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return Largest value that falls in the bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,44 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.DiscountType;
+
+import java.util.Map;
+
+/**
+ * Point-in-time copy of {@link DiscountMetrics}. Counters are read one after another
+ * while calculations may still be running, so totals can be a few runs apart.
+ */
+public final class MetricsSnapshot {
+
+    private final StrategyMetrics calculations;
+    private final Map<String, StrategyMetrics> strategies;
+    private final Map<DiscountType, StrategyMetrics> types;
+
+    MetricsSnapshot(StrategyMetrics calculations, Map<String, StrategyMetrics> strategies,
+                    Map<DiscountType, StrategyMetrics> types) {
+        this.calculations = calculations;
+        this.strategies = strategies;
+        this.types = types;
+    }
+
+    /**
+     * @return Totals over whole calculations; applied counts results with any discount
+     */
+    public StrategyMetrics getCalculations() {
+        return calculations;
+    }
+
+    /**
+     * @return Metrics per strategy id, for strategies that ran since the last reset
+     */
+    public Map<String, StrategyMetrics> getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * @return Metrics per discount type
+     */
+    public Map<DiscountType, StrategyMetrics> getTypes() {
+        return types;
+    }
+}
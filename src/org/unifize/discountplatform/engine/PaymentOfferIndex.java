@@ -0,0 +1,208 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.SymbolTable;
+import org.unifize.discountplatform.domain.payment.*;
+import org.unifize.discountplatform.domain.strategy.PaymentDiscount;
+
+import java.util.*;
+
+/**
+ * Index of payment offers by the payment method attributes they require.
+ * Looking up a payment method costs a fixed handful of hash probes, however many offers
+ * there are, and returns exactly the offers whose criteria the method matches.
+ *
+ * Each offer is filed under its mode and the {@link SymbolTable} ids of its bank and card
+ * type for cards, its UPI app for UPI and its provider for wallets; a field the offer
+ * leaves null is a wildcard, filed under {@link SymbolTable#NONE}.
+ * As in the payment methods' own matching, a card only checks bank and card type, a UPI
+ * payment only the app, and a wallet only the provider. Payment method types the index
+ * does not know are matched by checking every offer.
+ */
+public final class PaymentOfferIndex {
+
+    private static final int[] NONE = new int[0];
+    private static final int[] WILDCARD_ONLY = {SymbolTable.NONE};
+
+    private final List<PaymentDiscount> offers;
+    private final Map<CardKey, int[]> cardOffers;
+    private final Map<Integer, int[]> upiOffers;
+    private final Map<Integer, int[]> walletOffers;
+
+    /**
+     * @param offers Payment offers; lookups return them in this order
+     */
+    public PaymentOfferIndex(List<PaymentDiscount> offers) {
+        this.offers = Collections.unmodifiableList(new ArrayList<>(offers));
+
+        SymbolTable symbols = SymbolTable.global();
+        Map<CardKey, List<Integer>> cards = new HashMap<>();
+        Map<Integer, List<Integer>> upi = new HashMap<>();
+        Map<Integer, List<Integer>> wallets = new HashMap<>();
+        for (int position = 0; position < this.offers.size(); position++) {
+            PaymentDiscount offer = this.offers.get(position);
+            PaymentMode mode = offer.getPaymentMode();
+
+            CardKey cardKey = new CardKey(mode, symbols.intern(offer.getRequiredBank()),
+                    symbols.intern(offer.getRequiredCardType()));
+            cards.computeIfAbsent(cardKey, k -> new ArrayList<>()).add(position);
+            if (mode == null || mode == PaymentMode.UPI) {
+                upi.computeIfAbsent(symbols.intern(offer.getRequiredUpiApp()),
+                        k -> new ArrayList<>()).add(position);
+            }
+            if (mode == null || mode == PaymentMode.WALLET) {
+                wallets.computeIfAbsent(symbols.intern(offer.getRequiredWalletProvider()),
+                        k -> new ArrayList<>()).add(position);
+            }
+        }
+        this.cardOffers = freeze(cards);
+        this.upiOffers = freeze(upi);
+        this.walletOffers = freeze(wallets);
+    }
+
+    /**
+     * @return All indexed offers, in index order
+     */
+    public List<PaymentDiscount> getOffers() {
+        return offers;
+    }
+
+    public int size() {
+        return offers.size();
+    }
+
+    /**
+     * @param method The customer's payment method, or null
+     * @return Offers matching the method, in index order; none for a null method
+     */
+    public List<PaymentDiscount> offersFor(PaymentMethod method) {
+        int[] positions = positionsFor(method);
+        List<PaymentDiscount> matching = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            matching.add(offers.get(position));
+        }
+        return matching;
+    }
+
+    /**
+     * @return Ascending positions of the offers matching the method; may be shared, do not modify
+     */
+    int[] positionsFor(PaymentMethod method) {
+        if (method == null) {
+            return NONE;
+        }
+        List<int[]> buckets = new ArrayList<>(8);
+        if (method instanceof CardPaymentMethod) {
+            CardPaymentMethod card = (CardPaymentMethod) method;
+            for (PaymentMode mode : wildcards(card.getMode())) {
+                for (int bank : wildcards(card.getBankId())) {
+                    for (int cardType : wildcards(card.getCardTypeId())) {
+                        add(buckets, cardOffers.get(new CardKey(mode, bank, cardType)));
+                    }
+                }
+            }
+        } else if (method instanceof UpiPaymentMethod) {
+            for (int app : wildcards(((UpiPaymentMethod) method).getAppId())) {
+                add(buckets, upiOffers.get(app));
+            }
+        } else if (method instanceof WalletPaymentMethod) {
+            for (int provider : wildcards(((WalletPaymentMethod) method).getProviderId())) {
+                add(buckets, walletOffers.get(provider));
+            }
+        } else {
+            return scan(method);
+        }
+        return merge(buckets);
+    }
+
+    private int[] scan(PaymentMethod method) {
+        int[] matching = new int[offers.size()];
+        int count = 0;
+        for (int position = 0; position < offers.size(); position++) {
+            if (method.matches(offers.get(position).getCriteria())) {
+                matching[count++] = position;
+            }
+        }
+        return Arrays.copyOf(matching, count);
+    }
+
+    /**
+     * Keys to probe for one attribute: its value and the wildcard, or only the wildcard
+     * when the method leaves it null, since a required value never matches null.
+     */
+    private static <T> List<T> wildcards(T value) {
+        return value == null ? Collections.singletonList(null) : Arrays.asList(value, null);
+    }
+
+    private static int[] wildcards(int symbol) {
+        return symbol >= 0 ? new int[] {symbol, SymbolTable.NONE} : WILDCARD_ONLY;
+    }
+
+    private static void add(List<int[]> buckets, int[] bucket) {
+        if (bucket != null) {
+            buckets.add(bucket);
+        }
+    }
+
+    private static int[] merge(List<int[]> buckets) {
+        if (buckets.isEmpty()) {
+            return NONE;
+        }
+        if (buckets.size() == 1) {
+            return buckets.get(0);
+        }
+        int count = 0;
+        for (int[] bucket : buckets) {
+            count += bucket.length;
+        }
+        int[] positions = new int[count];
+        int offset = 0;
+        for (int[] bucket : buckets) {
+            System.arraycopy(bucket, 0, positions, offset, bucket.length);
+            offset += bucket.length;
+        }
+        // Each offer sits in one bucket per family, so there are no duplicates to drop
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private static <K> Map<K, int[]> freeze(Map<K, List<Integer>> source) {
+        Map<K, int[]> frozen = new HashMap<>(source.size() * 2);
+        source.forEach((key, positions) -> {
+            int[] array = new int[positions.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = positions.get(i);
+            }
+            frozen.put(key, array);
+        });
+        return frozen;
+    }
+
+    /**
+     * Card offer key; {@link SymbolTable#NONE} fields are wildcards.
+     */
+    private static final class CardKey {
+        private final PaymentMode mode;
+        private final int bank;
+        private final int cardType;
+
+        CardKey(PaymentMode mode, int bank, int cardType) {
+            this.mode = mode;
+            this.bank = bank;
+            this.cardType = cardType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CardKey)) return false;
+            CardKey other = (CardKey) o;
+            return mode == other.mode && bank == other.bank && cardType == other.cardType;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Objects.hashCode(mode) * 31 + bank) * 31 + cardType;
+        }
+    }
+}
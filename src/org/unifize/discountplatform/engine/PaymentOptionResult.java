@@ -0,0 +1,31 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.DiscountResult;
+import org.unifize.discountplatform.domain.payment.PaymentMethod;
+
+/**
+ * Price of a cart when paid with one particular payment method.
+ */
+public final class PaymentOptionResult {
+
+    private final PaymentMethod paymentMethod;
+    private final DiscountResult result;
+
+    PaymentOptionResult(PaymentMethod paymentMethod, DiscountResult result) {
+        this.paymentMethod = paymentMethod;
+        this.result = result;
+    }
+
+    public PaymentMethod getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public DiscountResult getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return paymentMethod + ": " + result.getFinalPrice();
+    }
+}
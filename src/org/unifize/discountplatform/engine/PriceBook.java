@@ -0,0 +1,466 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialised item-level pricing per product.
+ * For every productId seen, the book keeps the brand and category discounts that match
+ * it (in application order) and its line price after each of them, for quantities up to
+ * {@value #CACHED_QUANTITIES}. Larger quantities run the chain over the line total, so
+ * rounding is always identical to applying the rules one after another.
+ *
+ * Every rule change publishes a new version of the book in one step: the products with the
+ * changed rule's brand or category are recomputed into it, the rest are shared with the
+ * previous version. A calculation reads one version, so it never sees some lines repriced
+ * and others not. Lookups are lock-free; rule changes are serialised on the book.
+ */
+public final class PriceBook {
+
+    /**
+     * Line prices are kept for quantities 1 up to this; larger lines are priced on the fly.
+     */
+    static final int CACHED_QUANTITIES = 8;
+
+    private static final BookRule[] NO_RULES = new BookRule[0];
+
+    private volatile Version version;
+    // Stage of the last plan priced, reused while the plan and version stay the same
+    private volatile Block lastBlock;
+    private long nextSequence;
+
+    public PriceBook() {
+        this.version = new Version(0, Collections.emptyMap());
+    }
+
+    /**
+     * Create a book holding the brand and category rules of the given rule set;
+     * other rules are ignored.
+     */
+    public PriceBook(List<DiscountStrategy> strategies) {
+        Map<String, BookRule> rules = new HashMap<>();
+        for (DiscountStrategy strategy : strategies) {
+            if (holds(strategy)) {
+                BookRule previous = rules.get(strategy.getId());
+                long sequence = previous != null ? previous.sequence : nextSequence++;
+                rules.put(strategy.getId(), new BookRule((ItemLevelDiscount) strategy, sequence));
+            }
+        }
+        this.version = new Version(0, rules);
+    }
+
+    /**
+     * @return true if the book prices this rule, i.e. it is a brand or category discount
+     *         that always applies; exclusive rules depend on the whole cart
+     */
+    public static boolean holds(DiscountStrategy strategy) {
+        return (strategy instanceof BrandDiscount || strategy instanceof CategoryDiscount)
+                && !CombinationResolver.isExclusive(strategy);
+    }
+
+    /**
+     * Add a brand or category rule, or replace the rule with the same id.
+     * A replaced rule keeps its position among rules of equal priority.
+     *
+     * @return Number of products recomputed
+     * @throws IllegalArgumentException if the rule is not a brand or category discount,
+     *         or is exclusive
+     */
+    public synchronized int putRule(ItemLevelDiscount rule) {
+        if (!holds(rule)) {
+            throw new IllegalArgumentException(rule.getId()
+                    + ": price book only holds non-exclusive brand and category discounts");
+        }
+        Version current = version;
+        BookRule previous = current.rulesById.get(rule.getId());
+        long sequence = previous != null ? previous.sequence : nextSequence++;
+        BookRule added = new BookRule(rule, sequence);
+
+        Map<String, BookRule> rules = new HashMap<>(current.rulesById);
+        rules.put(rule.getId(), added);
+        return publish(current, rules, previous, added);
+    }
+
+    /**
+     * Remove the rule with the given id.
+     *
+     * @return Number of products recomputed
+     */
+    public synchronized int removeRule(String ruleId) {
+        Version current = version;
+        BookRule previous = current.rulesById.get(ruleId);
+        if (previous == null) {
+            return 0;
+        }
+        Map<String, BookRule> rules = new HashMap<>(current.rulesById);
+        rules.remove(ruleId);
+        return publish(current, rules, previous, null);
+    }
+
+    /**
+     * @return Unit price of a known product after all item-level rules, or null if unseen
+     */
+    public Money getUnitPrice(String productId) {
+        Entry entry = version.entries.get(productId);
+        return entry != null ? Money.ofPaise(entry.finalPaise(1)) : null;
+    }
+
+    /**
+     * @return Number of rule changes published so far
+     */
+    public long getVersion() {
+        return version.number;
+    }
+
+    /**
+     * @return Number of products materialised so far
+     */
+    public int size() {
+        return version.entries.size();
+    }
+
+    public int ruleCount() {
+        return version.rulesById.size();
+    }
+
+    /**
+     * The book as the item-level stage of a calculation with the given plan. The stage
+     * applies the plan's leading rules that the book holds, in the plan's order, and no
+     * others; the caller runs the plan's remaining rules after it. The stage reads the
+     * book's current version, and keeps reading it if rules change meanwhile.
+     */
+    Block stageFor(DiscountPlan plan) {
+        Version current = version;
+        Block block = lastBlock;
+        if (block == null || block.plan != plan || block.version != current) {
+            block = new Block(plan, current);
+            lastBlock = block;
+        }
+        return block;
+    }
+
+    private int publish(Version current, Map<String, BookRule> rules, BookRule previous, BookRule changed) {
+        Version next = new Version(current.number + 1, rules);
+        int recomputed = 0;
+        for (Entry entry : current.entries.values()) {
+            if ((previous != null && previous.matches(entry)) || (changed != null && changed.matches(entry))) {
+                next.entries.put(entry.productId, next.buildEntry(entry.productId, entry.brand,
+                        entry.category, entry.unitPaise));
+                recomputed++;
+            } else {
+                next.entries.put(entry.productId, entry);
+            }
+        }
+        version = next;
+        return recomputed;
+    }
+
+    private static Entry buildEntry(String productId, String brand, String category, long unitPaise,
+                                    BookRule[] chain) {
+        long[][] prices = new long[CACHED_QUANTITIES][];
+        for (int quantity = 1; quantity <= CACHED_QUANTITIES; quantity++) {
+            prices[quantity - 1] = priceChain(chain, unitPaise * quantity);
+        }
+        return new Entry(productId, brand, category, unitPaise, chain, prices);
+    }
+
+    /**
+     * @return The line price before the first rule of the chain and after each of them
+     */
+    private static long[] priceChain(BookRule[] chain, long linePaise) {
+        long[] prices = new long[chain.length + 1];
+        prices[0] = linePaise;
+        for (int j = 0; j < chain.length; j++) {
+            prices[j + 1] = prices[j] - chain[j].rule.discountFor(prices[j]);
+        }
+        return prices;
+    }
+
+    private static BookRule[] merge(BookRule[] brandBucket, BookRule[] categoryBucket) {
+        if (categoryBucket == null || categoryBucket.length == 0) {
+            return brandBucket != null ? brandBucket : NO_RULES;
+        }
+        if (brandBucket == null || brandBucket.length == 0) {
+            return categoryBucket;
+        }
+        BookRule[] chain = new BookRule[brandBucket.length + categoryBucket.length];
+        int b = 0;
+        int c = 0;
+        for (int j = 0; j < chain.length; j++) {
+            if (c == categoryBucket.length
+                    || (b < brandBucket.length && BookRule.ORDER.compare(brandBucket[b], categoryBucket[c]) < 0)) {
+                chain[j] = brandBucket[b++];
+            } else {
+                chain[j] = categoryBucket[c++];
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * A rule with its insertion sequence, so equal priorities keep rule-set order.
+     */
+    private static final class BookRule {
+        static final Comparator<BookRule> ORDER = Comparator
+                .comparingInt((BookRule r) -> r.rule.getPriority())
+                .thenComparingLong(r -> r.sequence);
+
+        final ItemLevelDiscount rule;
+        final long sequence;
+        final String key;
+
+        BookRule(ItemLevelDiscount rule, long sequence) {
+            this.rule = rule;
+            this.sequence = sequence;
+            if (rule instanceof BrandDiscount) {
+                this.key = DiscountRuleIndex.normalize(((BrandDiscount) rule).getTargetBrand());
+            } else {
+                this.key = DiscountRuleIndex.normalize(((CategoryDiscount) rule).getTargetCategory());
+            }
+        }
+
+        boolean isBrandRule() {
+            return rule instanceof BrandDiscount;
+        }
+
+        boolean matches(Entry entry) {
+            return key != null && key.equals(DiscountRuleIndex.normalize(isBrandRule() ? entry.brand : entry.category));
+        }
+    }
+
+    /**
+     * The rules of the book at one point in time and the products priced with them.
+     * Only the entries map grows after publication, as new products are seen.
+     */
+    private static final class Version {
+        final long number;
+        final Map<String, BookRule> rulesById;
+        final Map<DiscountStrategy, BookRule> members = new IdentityHashMap<>();
+        final Map<String, BookRule[]> brandRules = new HashMap<>();
+        final Map<String, BookRule[]> categoryRules = new HashMap<>();
+        final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+        Version(long number, Map<String, BookRule> rulesById) {
+            this.number = number;
+            this.rulesById = rulesById;
+            BookRule[] ordered = rulesById.values().toArray(NO_RULES);
+            Arrays.sort(ordered, BookRule.ORDER);
+            Map<String, List<BookRule>> brands = new HashMap<>();
+            Map<String, List<BookRule>> categories = new HashMap<>();
+            for (BookRule bookRule : ordered) {
+                members.put(bookRule.rule, bookRule);
+                if (bookRule.key != null) {
+                    (bookRule.isBrandRule() ? brands : categories)
+                            .computeIfAbsent(bookRule.key, k -> new ArrayList<>()).add(bookRule);
+                }
+            }
+            brands.forEach((key, bucket) -> brandRules.put(key, bucket.toArray(NO_RULES)));
+            categories.forEach((key, bucket) -> categoryRules.put(key, bucket.toArray(NO_RULES)));
+        }
+
+        Entry entryFor(CartItem item) {
+            Entry entry = entries.get(item.getProductId());
+            if (entry == null || !entry.describes(item)) {
+                entry = buildEntry(item.getProductId(), item.getBrand(), item.getCategory(),
+                        item.getUnitPrice().getPaise());
+                entries.put(entry.productId, entry);
+            }
+            return entry;
+        }
+
+        Entry buildEntry(String productId, String brand, String category, long unitPaise) {
+            BookRule[] chain = merge(brandRules.get(DiscountRuleIndex.normalize(brand)),
+                    categoryRules.get(DiscountRuleIndex.normalize(category)));
+            return PriceBook.buildEntry(productId, brand, category, unitPaise, chain);
+        }
+    }
+
+    /**
+     * Prices the leading run of a plan's rules that the book holds. When that run is every
+     * rule of the book, lines are priced from the version's entries; otherwise from entries
+     * whose chains keep only the run's rules, built on first use.
+     */
+    final class Block implements ItemStage {
+        private final DiscountPlan plan;
+        private final Version version;
+        private final BookRule[] ordered;
+        private final Set<BookRule> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final boolean whole;
+        private final ConcurrentHashMap<String, Entry> entries;
+
+        Block(DiscountPlan plan, Version version) {
+            this.plan = plan;
+            this.version = version;
+            List<DiscountStrategy> strategies = plan.getStrategies();
+            List<BookRule> run = new ArrayList<>();
+            // The book applies a line's rules in its own order, so the run ends where the plan's order differs
+            for (DiscountStrategy strategy : strategies) {
+                BookRule bookRule = version.members.get(strategy);
+                if (bookRule == null
+                        || (!run.isEmpty() && BookRule.ORDER.compare(run.get(run.size() - 1), bookRule) >= 0)) {
+                    break;
+                }
+                run.add(bookRule);
+            }
+            this.ordered = run.toArray(NO_RULES);
+            members.addAll(run);
+            this.whole = ordered.length == version.rulesById.size();
+            this.entries = whole ? null : new ConcurrentHashMap<>();
+        }
+
+        /**
+         * @return Number of leading plan rules this stage applies
+         */
+        int size() {
+            return ordered.length;
+        }
+
+        @Override
+        public void applyTo(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
+            List<CartItem> items = cart.getItems();
+            boolean tracing = resultBuilder.getReasoningLevel().recordsItems();
+            BookRule[] touched = new BookRule[Math.min(ordered.length, 8)];
+            long[] totals = new long[touched.length];
+            int touchedCount = 0;
+            List<Step> steps = tracing ? new ArrayList<>() : null;
+
+            for (int i = 0; i < items.size(); i++) {
+                CartItem item = items.get(i);
+                Entry entry = entryFor(item);
+                long[] prices = entry.pricesFor(item.getQuantity());
+                BookRule[] chain = entry.chain;
+                for (int j = 0; j < chain.length; j++) {
+                    int t = 0;
+                    while (t < touchedCount && touched[t] != chain[j]) {
+                        t++;
+                    }
+                    if (t == touchedCount) {
+                        if (t == touched.length) {
+                            touched = Arrays.copyOf(touched, t * 2);
+                            totals = Arrays.copyOf(totals, t * 2);
+                        }
+                        touched[touchedCount++] = chain[j];
+                    }
+                    totals[t] += prices[j] - prices[j + 1];
+                    if (tracing) {
+                        steps.add(new Step(chain[j], i, prices[j], prices[j + 1]));
+                    }
+                }
+                ledger.set(i, prices[chain.length]);
+            }
+
+            if (tracing) {
+                steps.sort(Comparator.comparing((Step step) -> step.rule, BookRule.ORDER)
+                        .thenComparingInt(step -> step.itemIndex));
+                for (Step step : steps) {
+                    resultBuilder.traceItem(step.rule.rule, ItemLevelDiscount.ITEM_DISCOUNTED,
+                            step.itemIndex, step.before, step.after);
+                }
+            }
+
+            // Few rules match one cart; put them in application order by insertion
+            for (int t = 1; t < touchedCount; t++) {
+                BookRule rule = touched[t];
+                long total = totals[t];
+                int s = t - 1;
+                while (s >= 0 && BookRule.ORDER.compare(touched[s], rule) > 0) {
+                    touched[s + 1] = touched[s];
+                    totals[s + 1] = totals[s];
+                    s--;
+                }
+                touched[s + 1] = rule;
+                totals[s + 1] = total;
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                DiscountCalculator.recordApplied(resultBuilder, touched[t].rule, totals[t]);
+            }
+
+            if (resultBuilder.getReasoningLevel().recordsSummary()) {
+                int t = 0;
+                for (BookRule bookRule : ordered) {
+                    boolean applied = t < touchedCount && touched[t] == bookRule;
+                    if (applied) {
+                        t++;
+                    }
+                    if (!applied || totals[t - 1] == 0) {
+                        resultBuilder.traceSkip(bookRule.rule, ItemLevelDiscount.NO_MATCHING_ITEMS, 0);
+                    }
+                }
+            }
+        }
+
+        private Entry entryFor(CartItem item) {
+            Entry entry = version.entryFor(item);
+            if (whole) {
+                return entry;
+            }
+            Entry own = entries.get(item.getProductId());
+            if (own == null || !own.describes(item)) {
+                List<BookRule> chain = new ArrayList<>(entry.chain.length);
+                for (BookRule bookRule : entry.chain) {
+                    if (members.contains(bookRule)) {
+                        chain.add(bookRule);
+                    }
+                }
+                own = buildEntry(entry.productId, entry.brand, entry.category, entry.unitPaise,
+                        chain.toArray(NO_RULES));
+                entries.put(own.productId, own);
+            }
+            return own;
+        }
+    }
+
+    private static final class Entry {
+        final String productId;
+        final String brand;
+        final String category;
+        final long unitPaise;
+        final BookRule[] chain;
+        // Per quantity, the line price before the first rule and after each rule of the chain
+        final long[][] prices;
+
+        Entry(String productId, String brand, String category, long unitPaise,
+              BookRule[] chain, long[][] prices) {
+            this.productId = productId;
+            this.brand = brand;
+            this.category = category;
+            this.unitPaise = unitPaise;
+            this.chain = chain;
+            this.prices = prices;
+        }
+
+        long[] pricesFor(int quantity) {
+            if (quantity >= 1 && quantity <= prices.length) {
+                return prices[quantity - 1];
+            }
+            return priceChain(chain, unitPaise * quantity);
+        }
+
+        long finalPaise(int quantity) {
+            return pricesFor(quantity)[chain.length];
+        }
+
+        boolean describes(CartItem item) {
+            return unitPaise == item.getUnitPrice().getPaise()
+                    && Objects.equals(brand, item.getBrand())
+                    && Objects.equals(category, item.getCategory());
+        }
+    }
+
+    private static final class Step {
+        final BookRule rule;
+        final int itemIndex;
+        final long before;
+        final long after;
+
+        Step(BookRule rule, int itemIndex, long before, long after) {
+            this.rule = rule;
+            this.itemIndex = itemIndex;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Log-linear histogram of per-cart price changes in paise, negative when a cart got
+ * cheaper. Buckets follow {@link LatencyHistogram} on each side of zero, so a reported
+ * change is within 1/8 of the recorded one; changes below 8 paise are exact. Changes of
+ * 2^37 paise or more either way are clamped.
+ */
+public final class PriceDeltaHistogram {
+
+    private static final int BUCKETS = LatencyHistogram.BUCKETS;
+    private static final long MAX_MAGNITUDE = LatencyHistogram.highestValueIn(BUCKETS - 1);
+
+    // Cheaper carts below index BUCKETS, largest drop first; unchanged and dearer carts from BUCKETS
+    private final long[] counts = new long[2 * BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    PriceDeltaHistogram() {}
+
+    void record(long deltaPaise) {
+        long value = Math.max(-MAX_MAGNITUDE, Math.min(MAX_MAGNITUDE, deltaPaise));
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    void add(PriceDeltaHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return Carts recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Carts whose price did not change
+     */
+    public long getUnchangedCount() {
+        return counts[BUCKETS];
+    }
+
+    public long getMinPaise() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMaxPaise() {
+        return count == 0 ? 0 : max;
+    }
+
+    public double getMeanPaise() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Upper end of the bucket holding the change at that percentile
+     */
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return Non-empty buckets, from the largest drop to the largest rise
+     */
+    public List<Bucket> getBuckets() {
+        List<Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.add(new Bucket(lowestValueAt(i), highestValueAt(i), counts[i]));
+            }
+        }
+        return Collections.unmodifiableList(buckets);
+    }
+
+    private static int indexOf(long value) {
+        return value >= 0
+                ? BUCKETS + LatencyHistogram.bucketOf(value)
+                : BUCKETS - 1 - LatencyHistogram.bucketOf(-value);
+    }
+
+    private static long lowestValueAt(int index) {
+        if (index >= BUCKETS) {
+            int bucket = index - BUCKETS;
+            return bucket == 0 ? 0 : LatencyHistogram.highestValueIn(bucket - 1) + 1;
+        }
+        return -LatencyHistogram.highestValueIn(BUCKETS - 1 - index);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index >= BUCKETS) {
+            return LatencyHistogram.highestValueIn(index - BUCKETS);
+        }
+        int bucket = BUCKETS - 1 - index;
+        return -LatencyHistogram.highestValueIn(bucket - 1) - 1;
+    }
+
+    /**
+     * Carts whose price changed by between lowest and highest paise, inclusive.
+     */
+    public static final class Bucket {
+        private final long lowestPaise;
+        private final long highestPaise;
+        private final long count;
+
+        Bucket(long lowestPaise, long highestPaise, long count) {
+            this.lowestPaise = lowestPaise;
+            this.highestPaise = highestPaise;
+            this.count = count;
+        }
+
+        public long getLowestPaise() { return lowestPaise; }
+
+        public long getHighestPaise() { return highestPaise; }
+
+        public long getCount() { return count; }
+
+        @Override
+        public String toString() {
+            return "[" + lowestPaise + ", " + highestPaise + "]: " + count;
+        }
+    }
+}
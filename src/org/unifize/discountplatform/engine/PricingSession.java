@@ -0,0 +1,278 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.domain.strategy.ItemLevelDiscount;
+
+import java.util.*;
+
+/**
+ * Keeps a cart priced while it is edited line by line.
+ *
+ * The leading brand and category rules of the plan only look at one line at a time, so
+ * their effect is kept per line and recomputed only for the line a delta touches. The
+ * remaining stages (vouchers, payment offers, custom rules) depend on the whole cart and
+ * run again after every delta. Every result is identical, reasoning included, to a full
+ * calculation of the edited cart against the same rules.
+ *
+ * A session belongs to one cart and is not thread-safe; results it returns stay valid
+ * after later edits.
+ */
+public final class PricingSession {
+
+    private final DiscountCalculator calculator;
+    private final List<DiscountStrategy> strategies;
+    private final DiscountRuleIndex index;
+    private final long ruleVersion;
+    private final int itemRuleCount;
+    private final List<DiscountStrategy> cartLevelStrategies;
+    private final boolean exclusive;
+    private final long[] ruleTotals;
+    private final List<Line> lines = new ArrayList<>();
+    private final ItemStage stage = new LineStage();
+    private Cart cart;
+    private DiscountResult result;
+
+    /**
+     * Start a session priced against a published rule snapshot, with the rules the cart's
+     * customer tier is eligible for.
+     */
+    public PricingSession(DiscountCalculator calculator, RuleSnapshot snapshot, Cart cart) {
+        this(calculator, snapshot.planFor(cart).getStrategies(), snapshot.indexFor(cart), snapshot.getVersion(), cart);
+    }
+
+    /**
+     * Start a session priced against a compiled plan.
+     */
+    public PricingSession(DiscountCalculator calculator, DiscountPlan plan, Cart cart) {
+        this(calculator, plan.getStrategies(), new DiscountRuleIndex(plan), 0, cart);
+    }
+
+    private PricingSession(DiscountCalculator calculator, List<DiscountStrategy> strategies,
+                           DiscountRuleIndex index, long ruleVersion, Cart cart) {
+        this.calculator = calculator;
+        this.strategies = strategies;
+        this.index = index;
+        this.ruleVersion = ruleVersion;
+
+        // Only a leading run of brand and category rules can be priced per line; a custom
+        // rule in between would see prices mid-stage, so everything from it on runs in full
+        int count = 0;
+        while (count < strategies.size() && PriceBook.holds(strategies.get(count))) {
+            count++;
+        }
+        this.itemRuleCount = count;
+        this.cartLevelStrategies = strategies.subList(count, strategies.size());
+        this.exclusive = CombinationResolver.hasExclusiveRules(cartLevelStrategies);
+        this.ruleTotals = new long[count];
+
+        for (CartItem item : cart.getItems()) {
+            Line line = priceLine(item);
+            lines.add(line);
+            addTotals(line, 1);
+        }
+        this.cart = cart;
+        reprice();
+    }
+
+    /**
+     * Apply an edit and re-price the cart.
+     *
+     * @return Result for the edited cart
+     * @throws IllegalArgumentException if the delta refers to a product not in the cart
+     */
+    public DiscountResult apply(CartDelta delta) {
+        edit(delta);
+        return reprice();
+    }
+
+    /**
+     * Apply several edits in order, pricing the cart once at the end.
+     * If a delta is rejected, the edits before it stay applied and are priced.
+     *
+     * @return Result for the edited cart
+     * @throws IllegalArgumentException if a delta refers to a product not in the cart
+     */
+    public DiscountResult applyAll(List<CartDelta> deltas) {
+        try {
+            for (CartDelta delta : deltas) {
+                edit(delta);
+            }
+        } finally {
+            reprice();
+        }
+        return result;
+    }
+
+    /**
+     * @return The cart after all edits so far
+     */
+    public Cart getCart() {
+        return cart;
+    }
+
+    /**
+     * @return Result for the current cart
+     */
+    public DiscountResult getResult() {
+        return result;
+    }
+
+    public long getRuleVersion() {
+        return ruleVersion;
+    }
+
+    private void edit(CartDelta delta) {
+        List<CartItem> items = new ArrayList<>(cart.getItems());
+        switch (delta.getKind()) {
+            case ADD: {
+                Line line = priceLine(delta.getItem());
+                items.add(delta.getItem());
+                lines.add(line);
+                addTotals(line, 1);
+                break;
+            }
+            case REMOVE: {
+                int position = positionOf(items, delta.getProductId());
+                items.remove(position);
+                addTotals(lines.remove(position), -1);
+                break;
+            }
+            case UPDATE_QUANTITY: {
+                int position = positionOf(items, delta.getProductId());
+                CartItem old = items.get(position);
+                CartItem updated = new CartItem(old.getProductId(), old.getName(), old.getBrand(),
+                        old.getCategory(), old.getUnitPrice(), delta.getQuantity());
+                Line line = priceLine(updated);
+                items.set(position, updated);
+                addTotals(lines.set(position, line), -1);
+                addTotals(line, 1);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported delta " + delta);
+        }
+        cart = new Cart(cart.getCartId(), items, cart.getPaymentMethod(), cart.getCustomerId(),
+                cart.getCustomerTier(), cart.getVoucherCode());
+    }
+
+    private DiscountResult reprice() {
+        result = calculator.calculate(cart, stage, cartLevelStrategies, ruleVersion, exclusive);
+        return result;
+    }
+
+    private static int positionOf(List<CartItem> items, String productId) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getProductId().equals(productId)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Product " + productId + " is not in the cart");
+    }
+
+    /**
+     * Run the item-level rules matching this line, in plan order, from its full price.
+     */
+    private Line priceLine(CartItem item) {
+        int[] brandRanks = index.brandRanks(item.getBrandId());
+        int[] categoryRanks = index.categoryRanks(item.getCategoryId());
+        int[] ranks = new int[brandRanks.length + categoryRanks.length];
+        int count = 0;
+        int b = 0;
+        int c = 0;
+        while (b < brandRanks.length || c < categoryRanks.length) {
+            int rank = c == categoryRanks.length || (b < brandRanks.length && brandRanks[b] < categoryRanks[c])
+                    ? brandRanks[b++] : categoryRanks[c++];
+            if (rank >= itemRuleCount) {
+                continue;
+            }
+            if (((ItemLevelDiscount) strategies.get(rank)).appliesTo(item)) {
+                ranks[count++] = rank;
+            }
+        }
+
+        long[] prices = new long[count + 1];
+        prices[0] = item.getTotalPaise();
+        for (int j = 0; j < count; j++) {
+            ItemLevelDiscount rule = (ItemLevelDiscount) strategies.get(ranks[j]);
+            prices[j + 1] = prices[j] - rule.discountFor(prices[j]);
+        }
+        return new Line(Arrays.copyOf(ranks, count), prices);
+    }
+
+    private void addTotals(Line line, int sign) {
+        for (int j = 0; j < line.ranks.length; j++) {
+            ruleTotals[line.ranks[j]] += sign * (line.prices[j] - line.prices[j + 1]);
+        }
+    }
+
+    /**
+     * Effect of the item-level rules on one line: the matching rule ranks in order and the
+     * line price before the first and after each of them.
+     */
+    private static final class Line {
+        final int[] ranks;
+        final long[] prices;
+
+        Line(int[] ranks, long[] prices) {
+            this.ranks = ranks;
+            this.prices = prices;
+        }
+
+        long finalPrice() {
+            return prices[prices.length - 1];
+        }
+    }
+
+    /**
+     * Replays the cached per-line results in the order a rule-by-rule run records them:
+     * each rule's steps in line order, then its total or its skip.
+     */
+    private final class LineStage implements ItemStage {
+
+        @Override
+        public void applyTo(Cart cart, PriceLedger ledger, DiscountResult.Builder resultBuilder) {
+            for (int i = 0; i < lines.size(); i++) {
+                ledger.set(i, lines.get(i).finalPrice());
+            }
+            if (resultBuilder.getReasoningLevel().recordsItems()) {
+                traceSteps(resultBuilder);
+            }
+
+            boolean recordsSkips = resultBuilder.getReasoningLevel().recordsSummary();
+            for (int rank = 0; rank < itemRuleCount; rank++) {
+                DiscountStrategy rule = strategies.get(rank);
+                if (ruleTotals[rank] > 0) {
+                    DiscountCalculator.recordApplied(resultBuilder, rule, ruleTotals[rank]);
+                } else if (recordsSkips) {
+                    resultBuilder.traceSkip(rule, ItemLevelDiscount.NO_MATCHING_ITEMS, 0);
+                }
+            }
+        }
+
+        private void traceSteps(DiscountResult.Builder resultBuilder) {
+            int stepCount = 0;
+            for (Line line : lines) {
+                stepCount += line.ranks.length;
+            }
+            // Rank in the high half, line in the low half: sorting gives rule order, then line order
+            long[] steps = new long[stepCount];
+            int s = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                for (int rank : lines.get(i).ranks) {
+                    steps[s++] = ((long) rank << 32) | i;
+                }
+            }
+            Arrays.sort(steps);
+
+            for (long step : steps) {
+                int rank = (int) (step >>> 32);
+                int lineIndex = (int) step;
+                Line line = lines.get(lineIndex);
+                int j = Arrays.binarySearch(line.ranks, rank);
+                resultBuilder.traceItem(strategies.get(rank), ItemLevelDiscount.ITEM_DISCOUNTED,
+                        lineIndex, line.prices[j], line.prices[j + 1]);
+            }
+        }
+    }
+}
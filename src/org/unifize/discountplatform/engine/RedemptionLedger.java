@@ -0,0 +1,521 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global and per-customer redemption limits of discount rules, e.g. "first 10,000
+ * redemptions", "₹10L campaign budget" or "once per customer", held under concurrent
+ * checkouts.
+ *
+ * A checkout reserves the limited discounts its result applied: one redemption, the
+ * discount amount from the budget and one use of the customer's allowance per rule, all
+ * or nothing. Payment then commits the reservation and an abandoned checkout releases it;
+ * a reservation neither committed nor released within the hold time expires and gives its
+ * share back. Reserved and committed redemptions together never exceed a limit.
+ *
+ * Redemption counts and budgets are {@link StripedQuota}s, so checkouts of one hot rule
+ * take from different counters rather than queueing on one. Customer allowances are
+ * counted per customer. Rules without a limit are not tracked at all.
+ *
+ * A {@link DiscountCalculator} pricing with the ledger skips rules that are out of
+ * redemptions, budget or the customer's allowance, so a quote only offers what a
+ * reservation can still take.
+ */
+public final class RedemptionLedger implements AutoCloseable {
+
+    /**
+     * Reservations expire after this long by default.
+     */
+    public static final Duration DEFAULT_HOLD_TIME = Duration.ofMinutes(15);
+
+    private static final long MAX_SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long holdNanos;
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+    // Holds of reservations with something to give back, in the order they were made; all
+    // share one hold time, so that is deadline order too
+    private final ConcurrentLinkedQueue<Hold> holds = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    // Scratch prices for trying budget-limited rules before any rule is applied
+    private final ThreadLocal<PriceLedger> trialLedgers = ThreadLocal.withInitial(PriceLedger::new);
+    private final ScheduledExecutorService sweeper;
+
+    public RedemptionLedger() {
+        this(DEFAULT_HOLD_TIME);
+    }
+
+    /**
+     * Start a ledger whose reservations expire after the given hold time. A daemon thread
+     * expires them; stop it with {@link #close()}.
+     *
+     * @throws IllegalArgumentException if the hold time is not positive
+     */
+    public RedemptionLedger(Duration holdTime) {
+        if (holdTime.isNegative() || holdTime.isZero()) {
+            throw new IllegalArgumentException("Hold time must be positive: " + holdTime);
+        }
+        this.holdNanos = holdTime.toNanos();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "redemption-ledger-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(MAX_SWEEP_NANOS, holdNanos / 4));
+        sweeper.scheduleAtFixedRate(this::expireReservations, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Limit redemptions of one rule. A rule's limit is set once, before it is redeemed.
+     *
+     * @throws IllegalStateException if the rule already has a limit
+     */
+    public void setLimit(String ruleId, RedemptionLimit limit) {
+        Objects.requireNonNull(ruleId, "ruleId");
+        if (pools.putIfAbsent(ruleId, new Pool(limit)) != null) {
+            throw new IllegalStateException("Rule " + ruleId + " already has a redemption limit");
+        }
+    }
+
+    /**
+     * @return The rule's limit, or null if it is not limited
+     */
+    public RedemptionLimit getLimit(String ruleId) {
+        Pool pool = pools.get(ruleId);
+        return pool == null ? null : pool.limit;
+    }
+
+    /**
+     * Reserve the limited discounts a result applied, for the cart's customer.
+     *
+     * @return The reservation, or null if any of its rules is out of redemptions, budget or
+     *         the customer's allowance; nothing is reserved then
+     */
+    public Reservation reserve(Cart cart, DiscountResult result) {
+        List<AppliedDiscount> applied = result.getAppliedDiscounts();
+        String customerId = cart.getCustomerId();
+        Pool[] held = new Pool[applied.size()];
+        long[] amounts = new long[applied.size()];
+        int count = 0;
+        for (AppliedDiscount discount : applied) {
+            Pool pool = pools.get(discount.getDiscountId());
+            if (pool == null) {
+                continue;
+            }
+            long amount = discount.getAmount().getPaise();
+            if (!pool.acquire(customerId, amount)) {
+                for (int i = count - 1; i >= 0; i--) {
+                    held[i].release(customerId, amounts[i]);
+                }
+                return null;
+            }
+            held[count] = pool;
+            amounts[count] = amount;
+            count++;
+        }
+        Reservation reservation = new Reservation(this, result, customerId,
+                Arrays.copyOf(held, count), Arrays.copyOf(amounts, count), System.nanoTime() + holdNanos);
+        if (count > 0) {
+            pending.increment();
+            holds.add(reservation.hold);
+        }
+        return reservation;
+    }
+
+    /**
+     * @return Redemptions of the rule that can still be reserved, or
+     *         {@link RedemptionLimit#UNLIMITED} if its count is not limited
+     */
+    public long getRemainingRedemptions(String ruleId) {
+        Pool pool = pools.get(ruleId);
+        return pool == null || pool.redemptions == null ? RedemptionLimit.UNLIMITED : pool.redemptions.remaining();
+    }
+
+    /**
+     * @return Budget of the rule not yet reserved, or null if it has no budget
+     */
+    public Money getRemainingBudget(String ruleId) {
+        Pool pool = pools.get(ruleId);
+        return pool == null || pool.budget == null ? null : Money.ofPaise(pool.budget.remaining());
+    }
+
+    /**
+     * @return Committed redemptions of the rule
+     */
+    public long getRedemptions(String ruleId) {
+        Pool pool = pools.get(ruleId);
+        return pool == null ? 0 : pool.committed.sum();
+    }
+
+    /**
+     * @return Discount given by committed redemptions of the rule
+     */
+    public Money getRedeemedAmount(String ruleId) {
+        Pool pool = pools.get(ruleId);
+        return Money.ofPaise(pool == null ? 0 : pool.committedPaise.sum());
+    }
+
+    /**
+     * @return Reservations neither committed, released nor expired
+     */
+    public int getPendingCount() {
+        return pending.intValue();
+    }
+
+    /**
+     * @return Reservations that expired since the ledger started
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public Duration getHoldTime() {
+        return Duration.ofNanos(holdNanos);
+    }
+
+    /**
+     * Release every pending reservation past its hold time. The sweeper thread calls this
+     * periodically; callers may too. Only the reservations that are due are visited, so a
+     * call costs the same however many are pending. A reservation made while another thread
+     * was between computing its deadline and queueing it may wait for that one to expire.
+     *
+     * @return Number of reservations expired by this call
+     */
+    public synchronized int expireReservations() {
+        long now = System.nanoTime();
+        int count = 0;
+        Hold head;
+        while ((head = holds.peek()) != null && now - head.deadline >= 0) {
+            holds.poll();
+            Reservation reservation = head.reservation;
+            if (reservation != null && reservation.finish(Reservation.State.EXPIRED)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop the sweeper thread. Pending reservations can still be committed or released,
+     * and expire when committed late.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Leave out the rules the cart's customer can no longer redeem, then the rules that would
+     * take more than their budget has left. This happens before exclusive rules are resolved,
+     * so a redeemable rule can win in their place. The reason for each rule left out is
+     * recorded on the builder.
+     *
+     * @param exclusive Whether any of the rules is exclusive
+     * @param prices    Line prices before the first rule; not modified
+     * @return The rules to apply, in order; the given list if none was left out
+     */
+    List<DiscountStrategy> redeemable(Cart cart, List<DiscountStrategy> sortedStrategies, boolean exclusive,
+                                      PriceLedger prices, DiscountResult.Builder resultBuilder) {
+        List<DiscountStrategy> allowed = allowed(cart, sortedStrategies, resultBuilder);
+        if (allowed != sortedStrategies) {
+            exclusive = CombinationResolver.hasExclusiveRules(allowed);
+        }
+        return affordable(cart, allowed, exclusive, prices, resultBuilder);
+    }
+
+    private List<DiscountStrategy> allowed(Cart cart, List<DiscountStrategy> sortedStrategies,
+                                           DiscountResult.Builder resultBuilder) {
+        List<DiscountStrategy> kept = null;
+        for (int i = 0; i < sortedStrategies.size(); i++) {
+            DiscountStrategy strategy = sortedStrategies.get(i);
+            Pool pool = pools.get(strategy.getId());
+            String refusal = pool == null ? null : pool.refusal(cart.getCustomerId());
+            if (refusal == null) {
+                if (kept != null) {
+                    kept.add(strategy);
+                }
+                continue;
+            }
+            if (kept == null) {
+                kept = new ArrayList<>(sortedStrategies.subList(0, i));
+            }
+            if (resultBuilder.getReasoningLevel().recordsSummary()) {
+                resultBuilder.addSkippedReason(strategy.getId() + ": " + refusal);
+            }
+        }
+        return kept == null ? sortedStrategies : kept;
+    }
+
+    /**
+     * The rules run on a copy of the prices; when one overspends it is dropped and the rest
+     * run again, as dropping it can change which exclusive rules win.
+     */
+    private List<DiscountStrategy> affordable(Cart cart, List<DiscountStrategy> sortedStrategies,
+                                              boolean exclusive, PriceLedger prices,
+                                              DiscountResult.Builder resultBuilder) {
+        long[] budgets = null;
+        for (int i = 0; i < sortedStrategies.size(); i++) {
+            Pool pool = pools.get(sortedStrategies.get(i).getId());
+            if (pool != null && pool.budget != null) {
+                if (budgets == null) {
+                    budgets = new long[sortedStrategies.size()];
+                    Arrays.fill(budgets, Long.MAX_VALUE);
+                }
+                budgets[i] = pool.budget.remaining();
+            }
+        }
+        if (budgets == null) {
+            return sortedStrategies;
+        }
+
+        List<DiscountStrategy> kept = sortedStrategies;
+        int over;
+        while ((over = overspender(cart, kept, exclusive, budgets, prices)) >= 0) {
+            if (resultBuilder.getReasoningLevel().recordsSummary()) {
+                resultBuilder.addSkippedReason(String.format("%s: Discount exceeds the %s left in its budget",
+                        kept.get(over).getId(), Money.ofPaise(budgets[over])));
+            }
+            kept = new ArrayList<>(kept);
+            kept.remove(over);
+            System.arraycopy(budgets, over + 1, budgets, over, kept.size() - over);
+        }
+        return kept;
+    }
+
+    /**
+     * @return Position of the first rule taking more than its budget, or -1 if none does
+     */
+    private int overspender(Cart cart, List<DiscountStrategy> sortedStrategies, boolean exclusive,
+                            long[] budgets, PriceLedger prices) {
+        int last = sortedStrategies.size() - 1;
+        while (last >= 0 && budgets[last] == Long.MAX_VALUE) {
+            last--;
+        }
+        if (last < 0) {
+            return -1;
+        }
+        CombinationResolver.Resolution resolution = null;
+        if (exclusive) {
+            resolution = CombinationResolver.resolve(cart, sortedStrategies, prices);
+        }
+        PriceLedger trial = trialLedgers.get();
+        trial.copyFrom(prices);
+        DiscountResult.Builder silent = DiscountResult.builder(ReasoningLevel.OFF);
+        for (int i = 0; i <= last; i++) {
+            if (resolution != null && resolution.excludes(i)) {
+                continue;
+            }
+            if (sortedStrategies.get(i).apply(cart, trial, silent) > budgets[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Discounts reserved by one checkout, until committed, released or expired.
+     */
+    public static final class Reservation {
+
+        public enum State {
+            PENDING,
+            COMMITTED,
+            RELEASED,
+            EXPIRED
+        }
+
+        private final RedemptionLedger ledger;
+        private final DiscountResult result;
+        private final String customerId;
+        private final Pool[] pools;
+        private final long[] amounts;
+        private final long deadline;
+        private final Hold hold;
+        private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+        private Reservation(RedemptionLedger ledger, DiscountResult result, String customerId,
+                            Pool[] pools, long[] amounts, long deadline) {
+            this.ledger = ledger;
+            this.result = result;
+            this.customerId = customerId;
+            this.pools = pools;
+            this.amounts = amounts;
+            this.deadline = deadline;
+            this.hold = new Hold(this, deadline);
+        }
+
+        /**
+         * @return The priced result whose discounts are reserved
+         */
+        public DiscountResult getResult() {
+            return result;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        /**
+         * Turn the reservation into redemptions, e.g. once the order is paid.
+         *
+         * @return true if committed; false if it was released or its hold time has passed,
+         *         in which case nothing is redeemed
+         */
+        public boolean commit() {
+            if (System.nanoTime() - deadline >= 0) {
+                finish(State.EXPIRED);
+                return false;
+            }
+            if (!state.compareAndSet(State.PENDING, State.COMMITTED)) {
+                return false;
+            }
+            unhold();
+            for (int i = 0; i < pools.length; i++) {
+                pools[i].committed.increment();
+                pools[i].committedPaise.add(amounts[i]);
+            }
+            return true;
+        }
+
+        /**
+         * Give the reserved redemptions back, e.g. when the checkout is abandoned.
+         *
+         * @return true if released; false if it was already committed, released or expired
+         */
+        public boolean release() {
+            return finish(State.RELEASED);
+        }
+
+        private boolean finish(State outcome) {
+            if (!state.compareAndSet(State.PENDING, outcome)) {
+                return false;
+            }
+            unhold();
+            for (int i = pools.length - 1; i >= 0; i--) {
+                pools[i].release(customerId, amounts[i]);
+            }
+            if (outcome == State.EXPIRED) {
+                ledger.expired.increment();
+            }
+            return true;
+        }
+
+        private void unhold() {
+            if (pools.length > 0) {
+                ledger.pending.decrement();
+            }
+            // The hold stays queued until its deadline; don't keep the result alive with it
+            hold.reservation = null;
+        }
+    }
+
+    /**
+     * A reservation's place in the expiry queue, cleared once it is finished.
+     */
+    private static final class Hold {
+        final long deadline;
+        volatile Reservation reservation;
+
+        Hold(Reservation reservation, long deadline) {
+            this.reservation = reservation;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Counters of one limited rule.
+     */
+    private static final class Pool {
+        final RedemptionLimit limit;
+        final StripedQuota redemptions;
+        final StripedQuota budget;
+        final ConcurrentHashMap<String, AtomicLong> perCustomer;
+        final LongAdder committed = new LongAdder();
+        final LongAdder committedPaise = new LongAdder();
+
+        Pool(RedemptionLimit limit) {
+            this.limit = Objects.requireNonNull(limit, "limit");
+            this.redemptions = limit.getMaxRedemptions() == RedemptionLimit.UNLIMITED
+                    ? null : new StripedQuota(limit.getMaxRedemptions());
+            this.budget = limit.getBudget() == null ? null : new StripedQuota(limit.getBudget().getPaise());
+            this.perCustomer = limit.getMaxPerCustomer() == RedemptionLimit.UNLIMITED
+                    ? null : new ConcurrentHashMap<>();
+        }
+
+        String refusal(String customerId) {
+            if (redemptions != null && redemptions.remaining() < 1) {
+                return "Redemption limit reached";
+            }
+            if (budget != null && budget.remaining() < 1) {
+                return "Campaign budget used up";
+            }
+            if (perCustomer != null) {
+                if (customerId == null) {
+                    return "Limited per customer, and the cart has no customer";
+                }
+                AtomicLong used = perCustomer.get(customerId);
+                if (used != null && used.get() >= limit.getMaxPerCustomer()) {
+                    return "Customer's redemption limit reached";
+                }
+            }
+            return null;
+        }
+
+        boolean acquire(String customerId, long amount) {
+            if (perCustomer != null && !acquireCustomer(customerId)) {
+                return false;
+            }
+            if (redemptions != null && !redemptions.tryAcquire(1)) {
+                releaseCustomer(customerId);
+                return false;
+            }
+            if (budget != null && !budget.tryAcquire(amount)) {
+                if (redemptions != null) {
+                    redemptions.release(1);
+                }
+                releaseCustomer(customerId);
+                return false;
+            }
+            return true;
+        }
+
+        void release(String customerId, long amount) {
+            if (budget != null) {
+                budget.release(amount);
+            }
+            if (redemptions != null) {
+                redemptions.release(1);
+            }
+            releaseCustomer(customerId);
+        }
+
+        private boolean acquireCustomer(String customerId) {
+            if (customerId == null) {
+                return false;
+            }
+            AtomicLong used = perCustomer.computeIfAbsent(customerId, id -> new AtomicLong());
+            long current = used.get();
+            while (current < limit.getMaxPerCustomer()) {
+                if (used.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                current = used.get();
+            }
+            return false;
+        }
+
+        private void releaseCustomer(String customerId) {
+            if (perCustomer != null) {
+                perCustomer.get(customerId).decrementAndGet();
+            }
+        }
+    }
+}
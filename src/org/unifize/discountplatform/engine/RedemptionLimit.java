@@ -0,0 +1,74 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Money;
+
+/**
+ * How often, and for how much in total, one rule may be redeemed, as held by a
+ * {@link RedemptionLedger}. Any combination of the three limits may be set; unset ones
+ * don't limit anything.
+ */
+public final class RedemptionLimit {
+
+    /**
+     * Value of a count limit that is not set.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long maxRedemptions;
+    private final Money budget;
+    private final long maxPerCustomer;
+
+    private RedemptionLimit(Builder builder) {
+        this.maxRedemptions = builder.maxRedemptions;
+        this.budget = builder.budget;
+        this.maxPerCustomer = builder.maxPerCustomer;
+    }
+
+    /**
+     * @return Most redemptions over all customers, or {@link #UNLIMITED}
+     */
+    public long getMaxRedemptions() { return maxRedemptions; }
+
+    /**
+     * @return Most discount given over all redemptions, or null for no budget
+     */
+    public Money getBudget() { return budget; }
+
+    /**
+     * @return Most redemptions by one customer, or {@link #UNLIMITED}
+     */
+    public long getMaxPerCustomer() { return maxPerCustomer; }
+
+    @Override
+    public String toString() {
+        return String.format("RedemptionLimit[redemptions=%s, budget=%s, perCustomer=%s]",
+                maxRedemptions == UNLIMITED ? "unlimited" : maxRedemptions,
+                budget == null ? "none" : budget,
+                maxPerCustomer == UNLIMITED ? "unlimited" : maxPerCustomer);
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public static class Builder {
+        private long maxRedemptions = UNLIMITED;
+        private Money budget;
+        private long maxPerCustomer = UNLIMITED;
+
+        public Builder maxRedemptions(long maxRedemptions) { this.maxRedemptions = maxRedemptions; return this; }
+        public Builder budget(Money budget) { this.budget = budget; return this; }
+        public Builder maxPerCustomer(long maxPerCustomer) { this.maxPerCustomer = maxPerCustomer; return this; }
+
+        public RedemptionLimit build() {
+            if (maxRedemptions < 0) {
+                throw new IllegalArgumentException("Max redemptions cannot be negative, was " + maxRedemptions);
+            }
+            if (budget != null && budget.getPaise() < 0) {
+                throw new IllegalArgumentException("Budget cannot be negative, was " + budget);
+            }
+            if (maxPerCustomer < 0) {
+                throw new IllegalArgumentException("Max per customer cannot be negative, was " + maxPerCustomer);
+            }
+            return new RedemptionLimit(this);
+        }
+    }
+}
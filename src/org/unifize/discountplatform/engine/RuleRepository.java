@@ -0,0 +1,128 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.CustomerTiers;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+
+/**
+ * Publishes the active rules as immutable, versioned snapshots.
+ *
+ * Readers take the current snapshot through a single volatile read and keep using it for
+ * the whole calculation, so they never lock and never see a half-applied change. Writers
+ * are serialised among themselves and build the next snapshot (copy, compile, index) before
+ * swapping the reference; in-flight calculations finish on the snapshot they started with.
+ */
+public final class RuleRepository {
+
+    private final Object writeLock = new Object();
+    private final CustomerTiers tiers;
+    private volatile RuleSnapshot current;
+
+    public RuleRepository() {
+        this((CustomerTiers) null);
+    }
+
+    public RuleRepository(List<DiscountStrategy> rules) {
+        this();
+        publish(rules);
+    }
+
+    /**
+     * @param tiers Customer tiers to compile each snapshot's plan for, or null for none;
+     *              rules naming a tier outside the model are then rejected
+     */
+    public RuleRepository(CustomerTiers tiers) {
+        this.tiers = tiers;
+        this.current = RuleSnapshot.empty(tiers);
+    }
+
+    /**
+     * @return The tier model snapshots are compiled for, or null
+     */
+    public CustomerTiers getTiers() {
+        return tiers;
+    }
+
+    /**
+     * @return The latest published snapshot
+     */
+    public RuleSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Replace the whole rule set.
+     *
+     * @return The published snapshot
+     * @throws IllegalArgumentException if a rule is invalid or two rules share an id
+     */
+    public RuleSnapshot publish(List<DiscountStrategy> rules) {
+        LinkedHashMap<String, DiscountStrategy> next = new LinkedHashMap<>();
+        for (DiscountStrategy rule : rules) {
+            if (next.put(rule.getId(), rule) != null) {
+                throw new IllegalArgumentException("Duplicate discount id: " + rule.getId());
+            }
+        }
+        synchronized (writeLock) {
+            return swap(next);
+        }
+    }
+
+    /**
+     * Add a rule, or replace the rule with the same id in place.
+     *
+     * @return The published snapshot
+     */
+    public RuleSnapshot putRule(DiscountStrategy rule) {
+        synchronized (writeLock) {
+            LinkedHashMap<String, DiscountStrategy> next = new LinkedHashMap<>(current.rulesById());
+            next.put(rule.getId(), rule);
+            return swap(next);
+        }
+    }
+
+    /**
+     * Remove the rule with the given id. Publishes nothing if the id is unknown.
+     *
+     * @return The current snapshot after the change
+     */
+    public RuleSnapshot removeRule(String id) {
+        synchronized (writeLock) {
+            if (!current.rulesById().containsKey(id)) {
+                return current;
+            }
+            LinkedHashMap<String, DiscountStrategy> next = new LinkedHashMap<>(current.rulesById());
+            next.remove(id);
+            return swap(next);
+        }
+    }
+
+    /**
+     * Add or replace some rules and remove others in one published snapshot. Publishes
+     * nothing if the change leaves the rules as they are.
+     *
+     * @param put    Rules to add, or to replace the rules with the same ids
+     * @param remove Ids of rules to remove; unknown ids are ignored
+     * @return The current snapshot after the change
+     */
+    public RuleSnapshot update(Collection<DiscountStrategy> put, Collection<String> remove) {
+        synchronized (writeLock) {
+            LinkedHashMap<String, DiscountStrategy> next = new LinkedHashMap<>(current.rulesById());
+            boolean changed = false;
+            for (String id : remove) {
+                changed |= next.remove(id) != null;
+            }
+            for (DiscountStrategy rule : put) {
+                changed |= next.put(rule.getId(), rule) != rule;
+            }
+            return changed ? swap(next) : current;
+        }
+    }
+
+    private RuleSnapshot swap(LinkedHashMap<String, DiscountStrategy> rules) {
+        RuleSnapshot next = new RuleSnapshot(current.getVersion() + 1, rules, tiers);
+        current = next;
+        return next;
+    }
+}
@@ -0,0 +1,260 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a {@link RuleRepository} holding exactly the scheduled rules whose validity window
+ * is open, so calculations never check dates: a rule is published when its window opens
+ * and removed when it closes.
+ *
+ * Window boundaries sit in a {@link TimingWheel} with one-millisecond ticks. A timer thread
+ * sleeps until the next boundary, then publishes every rule due at that millisecond in one
+ * snapshot, so a sale launching thousands of offers at once is one publish. Windows are
+ * read in the clock's time zone; validFrom is inclusive and validTo exclusive.
+ *
+ * Rules with windows should only be changed through the scheduler, which is the one writer
+ * deciding whether they are active. Rules without a window are published right away.
+ */
+public final class RuleScheduler implements AutoCloseable {
+
+    // Longest sleep between clock readings, so wall-clock changes are noticed
+    private static final long MAX_WAIT_MILLIS = 1000;
+
+    private final RuleRepository repository;
+    private final Clock clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition boundariesChanged = lock.newCondition();
+    private final Map<String, DiscountStrategy> scheduled = new HashMap<>();
+    private final TimingWheel<DiscountStrategy> wheel;
+    private final Thread timer;
+    private long fired;
+    private volatile boolean closed;
+
+    public RuleScheduler(RuleRepository repository) {
+        this(repository, Clock.systemUTC());
+    }
+
+    /**
+     * Start a scheduler publishing to the repository, with a daemon timer thread; stop it
+     * with {@link #close()}.
+     *
+     * @param clock Source of the current time, and the zone validity windows are read in
+     */
+    public RuleScheduler(RuleRepository repository, Clock clock) {
+        this.repository = Objects.requireNonNull(repository, "repository");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.wheel = new TimingWheel<>(1, clock.millis());
+        this.timer = new Thread(this::runTimer, "rule-scheduler");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Add a rule, or replace the scheduled rule with the same id.
+     *
+     * @return The repository's snapshot after the change
+     * @throws IllegalArgumentException if the rule is invalid
+     */
+    public RuleSnapshot schedule(DiscountStrategy rule) {
+        return scheduleAll(List.of(rule));
+    }
+
+    /**
+     * Add or replace several rules; those whose window is open now are published together.
+     *
+     * @return The repository's snapshot after the change
+     * @throws IllegalArgumentException if a rule is invalid; nothing is scheduled then
+     */
+    public RuleSnapshot scheduleAll(Collection<? extends DiscountStrategy> rules) {
+        if (repository.getTiers() != null) {
+            TieredPlan.compile(new ArrayList<>(rules), repository.getTiers());
+        } else {
+            DiscountPlan.compile(new ArrayList<>(rules));
+        }
+        lock.lock();
+        try {
+            long now = clock.millis();
+            Changes changes = new Changes();
+            for (DiscountStrategy rule : rules) {
+                scheduled.put(rule.getId(), rule);
+                changes.set(rule, isActive(rule, now));
+                long from = startMillis(rule);
+                long to = endMillis(rule);
+                if (from > now) {
+                    wheel.add(from, rule);
+                }
+                if (to > now && to != Long.MAX_VALUE) {
+                    wheel.add(to, rule);
+                }
+            }
+            boundariesChanged.signal();
+            return changes.publishTo(repository);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop scheduling a rule and remove it from the repository.
+     *
+     * @return The repository's snapshot after the change
+     */
+    public RuleSnapshot unschedule(String id) {
+        lock.lock();
+        try {
+            // Its boundaries stay in the wheel and are ignored when they come due
+            scheduled.remove(id);
+            return repository.update(List.of(), List.of(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publish the changes of every boundary due by now. The timer thread does this at each
+     * boundary; callers may too, e.g. with a clock they move themselves.
+     *
+     * @return Number of boundaries that came due
+     */
+    public int advance() {
+        lock.lock();
+        try {
+            return fire(clock.millis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Rules scheduled, whether or not their window is open
+     */
+    public int getScheduledCount() {
+        lock.lock();
+        try {
+            return scheduled.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Boundaries still to come, including those of replaced or unscheduled rules
+     */
+    public int getPendingBoundaryCount() {
+        lock.lock();
+        try {
+            return wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Boundaries that came due since the scheduler started
+     */
+    public long getFiredCount() {
+        lock.lock();
+        try {
+            return fired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RuleRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Stop the timer thread. Rules stay as last published.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.interrupt();
+    }
+
+    private void runTimer() {
+        lock.lock();
+        try {
+            while (!closed) {
+                long wait = wheel.nextExpiry() - clock.millis();
+                if (wait <= 0) {
+                    fire(clock.millis());
+                } else {
+                    boundariesChanged.await(Math.min(wait, MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int fire(long now) {
+        List<DiscountStrategy> due = wheel.advance(now);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        Changes changes = new Changes();
+        for (DiscountStrategy rule : due) {
+            // Boundaries of rules since replaced or unscheduled are stale
+            if (scheduled.get(rule.getId()) == rule) {
+                changes.set(rule, isActive(rule, now));
+            }
+        }
+        fired += due.size();
+        changes.publishTo(repository);
+        return due.size();
+    }
+
+    private boolean isActive(DiscountStrategy rule, long now) {
+        return startMillis(rule) <= now && now < endMillis(rule);
+    }
+
+    private long startMillis(DiscountStrategy rule) {
+        return rule.getValidFrom() == null ? Long.MIN_VALUE : epochMillis(rule.getValidFrom());
+    }
+
+    private long endMillis(DiscountStrategy rule) {
+        return rule.getValidTo() == null ? Long.MAX_VALUE : epochMillis(rule.getValidTo());
+    }
+
+    /**
+     * Round up to the millisecond, so a window never opens or closes early.
+     */
+    private long epochMillis(LocalDateTime dateTime) {
+        long millis = dateTime.atZone(clock.getZone()).toInstant().toEpochMilli();
+        return dateTime.getNano() % 1_000_000 == 0 ? millis : millis + 1;
+    }
+
+    /**
+     * Rules to publish and remove in one snapshot; the last decision per id wins.
+     */
+    private static final class Changes {
+        private final Map<String, DiscountStrategy> put = new LinkedHashMap<>();
+        private final Set<String> remove = new LinkedHashSet<>();
+
+        void set(DiscountStrategy rule, boolean active) {
+            if (active) {
+                remove.remove(rule.getId());
+                put.put(rule.getId(), rule);
+            } else {
+                put.remove(rule.getId());
+                remove.add(rule.getId());
+            }
+        }
+
+        RuleSnapshot publishTo(RuleRepository repository) {
+            return repository.update(put.values(), remove);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.CustomerTiers;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+
+/**
+ * Immutable, versioned view of the active rules.
+ * Everything a calculation needs (the compiled plan and the rule index) is built when the
+ * snapshot is created, so readers holding a snapshot never see it change or pay to build it.
+ * With a tier model, the plan and its rule index are also built per customer tier, once for
+ * each distinct tier plan.
+ */
+public final class RuleSnapshot {
+
+    private final long version;
+    private final Map<String, DiscountStrategy> rulesById;
+    private final DiscountPlan plan;
+    private final TieredPlan tieredPlan;
+    private final DiscountRuleIndex index;
+    // Index per distinct tier plan, keyed by identity
+    private final Map<DiscountPlan, DiscountRuleIndex> tierIndexes;
+
+    RuleSnapshot(long version, LinkedHashMap<String, DiscountStrategy> rulesById, CustomerTiers tiers) {
+        this.version = version;
+        this.rulesById = Collections.unmodifiableMap(rulesById);
+        List<DiscountStrategy> rules = new ArrayList<>(rulesById.values());
+        this.tieredPlan = tiers != null ? TieredPlan.compile(rules, tiers) : null;
+        this.plan = tieredPlan != null ? tieredPlan.getPlan() : DiscountPlan.compile(rules);
+        this.index = new DiscountRuleIndex(plan);
+        this.tierIndexes = new IdentityHashMap<>();
+        tierIndexes.put(plan, index);
+        if (tieredPlan != null) {
+            for (DiscountPlan tierPlan : tieredPlan.distinctPlans()) {
+                tierIndexes.computeIfAbsent(tierPlan, DiscountRuleIndex::new);
+            }
+        }
+    }
+
+    static RuleSnapshot empty(CustomerTiers tiers) {
+        return new RuleSnapshot(0, new LinkedHashMap<>(), tiers);
+    }
+
+    /**
+     * @return Monotonic version; 0 for the initial empty snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Rules in publication order
+     */
+    public Collection<DiscountStrategy> getRules() {
+        return rulesById.values();
+    }
+
+    /**
+     * @return The rule with the given id, or null
+     */
+    public DiscountStrategy getRule(String id) {
+        return rulesById.get(id);
+    }
+
+    public int size() {
+        return rulesById.size();
+    }
+
+    /**
+     * @return Plan of all rules, whatever their tier
+     */
+    public DiscountPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return Plan of the rules the cart's customer is eligible for; all rules if there is
+     *         no tier model
+     */
+    public DiscountPlan planFor(Cart cart) {
+        return tieredPlan != null ? tieredPlan.planFor(cart) : plan;
+    }
+
+    /**
+     * @return Plans per customer tier, or null if there is no tier model
+     */
+    public TieredPlan getTieredPlan() {
+        return tieredPlan;
+    }
+
+    /**
+     * @return Index of all rules, whatever their tier; use {@link #indexFor(Cart)} to price a cart
+     */
+    public DiscountRuleIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return Index of the rules the cart's customer is eligible for, over {@link #planFor(Cart)}
+     */
+    public DiscountRuleIndex indexFor(Cart cart) {
+        return tierIndexes.get(planFor(cart));
+    }
+
+    Map<String, DiscountStrategy> rulesById() {
+        return rulesById;
+    }
+}
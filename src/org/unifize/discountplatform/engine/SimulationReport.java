@@ -0,0 +1,154 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Money;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of replaying carts against a baseline and a candidate rule set in a
+ * {@link CampaignSimulator}. Price deltas are candidate minus baseline, so a negative delta
+ * is a cart the candidate makes cheaper.
+ */
+public final class SimulationReport {
+
+    private final long carts;
+    private final long affectedCarts;
+    private final long sharedCarts;
+    private final long baselineDiscountPaise;
+    private final long candidateDiscountPaise;
+    private final Map<String, StrategyImpact> strategies;
+    private final PriceDeltaHistogram priceDeltas;
+
+    SimulationReport(long carts, long affectedCarts, long sharedCarts, long baselineDiscountPaise,
+                     long candidateDiscountPaise, Map<String, StrategyImpact> strategies,
+                     PriceDeltaHistogram priceDeltas) {
+        this.carts = carts;
+        this.affectedCarts = affectedCarts;
+        this.sharedCarts = sharedCarts;
+        this.baselineDiscountPaise = baselineDiscountPaise;
+        this.candidateDiscountPaise = candidateDiscountPaise;
+        this.strategies = Collections.unmodifiableMap(strategies);
+        this.priceDeltas = priceDeltas;
+    }
+
+    public long getCarts() {
+        return carts;
+    }
+
+    /**
+     * @return Carts whose final price differs between the rule sets
+     */
+    public long getAffectedCarts() {
+        return affectedCarts;
+    }
+
+    /**
+     * @return Carts both rule sets offered the same rules, so they were priced once
+     */
+    public long getSharedCarts() {
+        return sharedCarts;
+    }
+
+    public Money getBaselineDiscount() {
+        return Money.ofPaise(baselineDiscountPaise);
+    }
+
+    public Money getCandidateDiscount() {
+        return Money.ofPaise(candidateDiscountPaise);
+    }
+
+    /**
+     * @return Extra discount the candidate gives over the baseline, negative if it gives less
+     */
+    public Money getIncrementalDiscount() {
+        return Money.ofPaise(candidateDiscountPaise - baselineDiscountPaise);
+    }
+
+    /**
+     * @return Impact per strategy id of either rule set, sorted by id
+     */
+    public Map<String, StrategyImpact> getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * @return Per-cart change in final price, candidate minus baseline
+     */
+    public PriceDeltaHistogram getPriceDeltas() {
+        return priceDeltas;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%,d carts, %,d affected, %,d priced once%n", carts, affectedCarts, sharedCarts));
+        sb.append(String.format("Discount: baseline %s, candidate %s, incremental %s%n",
+                getBaselineDiscount(), getCandidateDiscount(), getIncrementalDiscount()));
+        sb.append(String.format("Price delta (paise): min %d, p50 %d, p99 %d, max %d%n", priceDeltas.getMinPaise(),
+                priceDeltas.valueAtPercentile(50), priceDeltas.valueAtPercentile(99), priceDeltas.getMaxPaise()));
+        for (StrategyImpact impact : strategies.values()) {
+            sb.append("  ").append(impact).append(String.format("%n"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * How often one strategy applied, and how much it gave, under each rule set.
+     */
+    public static final class StrategyImpact {
+        private final String id;
+        private long baselineApplications;
+        private long baselineDiscountPaise;
+        private long candidateApplications;
+        private long candidateDiscountPaise;
+
+        StrategyImpact(String id) {
+            this.id = id;
+        }
+
+        void recordBaseline(long discountPaise) {
+            baselineApplications++;
+            baselineDiscountPaise += discountPaise;
+        }
+
+        void recordCandidate(long discountPaise) {
+            candidateApplications++;
+            candidateDiscountPaise += discountPaise;
+        }
+
+        void add(StrategyImpact other) {
+            baselineApplications += other.baselineApplications;
+            baselineDiscountPaise += other.baselineDiscountPaise;
+            candidateApplications += other.candidateApplications;
+            candidateDiscountPaise += other.candidateDiscountPaise;
+        }
+
+        public String getId() { return id; }
+
+        /**
+         * @return Carts the strategy gave a discount to under the baseline
+         */
+        public long getBaselineApplications() { return baselineApplications; }
+
+        public long getBaselineDiscountPaise() { return baselineDiscountPaise; }
+
+        /**
+         * @return Carts the strategy gave a discount to under the candidate
+         */
+        public long getCandidateApplications() { return candidateApplications; }
+
+        public long getCandidateDiscountPaise() { return candidateDiscountPaise; }
+
+        /**
+         * @return Candidate minus baseline discount
+         */
+        public long getDiscountDeltaPaise() { return candidateDiscountPaise - baselineDiscountPaise; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: applied %,d -> %,d, discount %s -> %s", id, baselineApplications,
+                    candidateApplications, Money.ofPaise(baselineDiscountPaise), Money.ofPaise(candidateDiscountPaise));
+        }
+    }
+}
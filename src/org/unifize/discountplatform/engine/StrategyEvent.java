@@ -0,0 +1,49 @@
+package org.unifize.discountplatform.engine;
+
+import jdk.jfr.*;
+import org.unifize.discountplatform.domain.PriceLedger;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+/**
+ * Flight recorder event for one strategy run within a calculation. Enabled by default for
+ * runs of 20 us or more; lower the threshold of {@code org.unifize.discountplatform.Strategy}
+ * to see every rule, at the cost of one event per rule per cart.
+ */
+@Name("org.unifize.discountplatform.Strategy")
+@Label("Discount Strategy")
+@Category({"Discount Platform"})
+@Description("One discount rule applied to a cart")
+@Threshold("20 us")
+@StackTrace(false)
+final class StrategyEvent extends Event {
+
+    @Label("Strategy Id")
+    String strategyId;
+
+    @Label("Type")
+    String type;
+
+    @Label("Items Touched")
+    @Description("Cart lines whose price the strategy changed")
+    int itemsTouched;
+
+    @Label("Discount (paise)")
+    long discountPaise;
+
+    /**
+     * @param before Line prices before the run
+     * @param after  Line prices after it
+     */
+    void set(DiscountStrategy strategy, PriceLedger before, PriceLedger after, long discountPaise) {
+        this.strategyId = strategy.getId();
+        this.type = String.valueOf(strategy.getType());
+        this.discountPaise = discountPaise;
+        int touched = 0;
+        for (int i = 0; i < after.size(); i++) {
+            if (before.get(i) != after.get(i)) {
+                touched++;
+            }
+        }
+        this.itemsTouched = touched;
+    }
+}
@@ -0,0 +1,139 @@
+package org.unifize.discountplatform.engine;
+
+/**
+ * Counters and latency distribution of one strategy, one discount type, or of whole
+ * calculations, as of a {@link DiscountMetrics#snapshot()}.
+ * Latencies are in nanoseconds, within 1/8 of the recorded values, and for strategies
+ * drawn from the sampled calculations only.
+ */
+public final class StrategyMetrics {
+
+    private final String name;
+    private final long applied;
+    private final long skipped;
+    private final long excluded;
+    private final long discountPaise;
+    private final long[] latencyCounts;
+    private final long samples;
+    private final long totalNanos;
+
+    StrategyMetrics(String name, long applied, long skipped, long excluded, long discountPaise,
+                    long[] latencyCounts, long totalNanos) {
+        this.name = name;
+        this.applied = applied;
+        this.skipped = skipped;
+        this.excluded = excluded;
+        this.discountPaise = discountPaise;
+        this.latencyCounts = latencyCounts;
+        this.totalNanos = totalNanos;
+        long count = 0;
+        for (long bucket : latencyCounts) {
+            count += bucket;
+        }
+        this.samples = count;
+    }
+
+    /**
+     * @return Strategy id, discount type name, or "calculation"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Number of runs, applied or skipped
+     */
+    public long getRuns() {
+        return applied + skipped;
+    }
+
+    /**
+     * @return Runs that took something off the cart
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return Runs that took nothing off
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return Times the rule was left out because a better combination won its group
+     */
+    public long getExcluded() {
+        return excluded;
+    }
+
+    /**
+     * @return Number of timed runs behind the latencies
+     */
+    public long getLatencySamples() {
+        return samples;
+    }
+
+    /**
+     * @return Total discount given, in paise
+     */
+    public long getDiscountPaise() {
+        return discountPaise;
+    }
+
+    public long getMeanLatencyNanos() {
+        return samples == 0 ? 0 : totalNanos / samples;
+    }
+
+    public long getMedianLatencyNanos() {
+        return latencyAtPercentile(50);
+    }
+
+    public long getP99LatencyNanos() {
+        return latencyAtPercentile(99);
+    }
+
+    public long getP999LatencyNanos() {
+        return latencyAtPercentile(99.9);
+    }
+
+    public long getMaxLatencyNanos() {
+        return latencyAtPercentile(100);
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Latency that the given share of runs did not exceed, or 0 if nothing was timed
+     */
+    public long latencyAtPercentile(double percentile) {
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(samples * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < latencyCounts.length; bucket++) {
+            seen += latencyCounts[bucket];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueIn(bucket);
+            }
+        }
+        return LatencyHistogram.highestValueIn(latencyCounts.length - 1);
+    }
+
+    long[] latencyCounts() {
+        return latencyCounts;
+    }
+
+    long totalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d runs, %d applied, %d skipped, %d excluded, %d paise off, "
+                        + "p50 %d ns, p99 %d ns, max %d ns",
+                name, getRuns(), applied, skipped, excluded, discountPaise,
+                getMedianLatencyNanos(), getP99LatencyNanos(), getMaxLatencyNanos());
+    }
+}
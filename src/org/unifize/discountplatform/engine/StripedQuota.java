@@ -0,0 +1,107 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count or amount that can be taken from and given back concurrently without ever
+ * going below zero.
+ *
+ * What is left is split over stripes on separate cache lines, and a thread takes from the
+ * stripe its id picks with a compare-and-set, then from the others. Only when no single
+ * stripe holds enough are all stripes pooled under a lock and spread again, so the total
+ * taken never exceeds the quota. Small quotas use fewer stripes, so each starts with a
+ * useful share.
+ */
+final class StripedQuota {
+
+    // Longs per stripe, so that each stripe sits on its own 64-byte cache line
+    private static final int PAD = 8;
+    private static final int MAX_STRIPES = 64;
+    private static final long MIN_SHARE = 16;
+
+    private final int stripes;
+    private final AtomicLongArray counts;
+    // Odd while stripes are pooled, so readers can tell a sum taken mid-pool
+    private volatile long poolings;
+
+    StripedQuota(long quota) {
+        // About two stripes per processor, each starting with at least MIN_SHARE
+        int wanted = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) << 1);
+        long shares = Math.max(1, quota / MIN_SHARE);
+        this.stripes = (int) Math.min(wanted, Long.highestOneBit(shares));
+        this.counts = new AtomicLongArray(stripes * PAD);
+        spread(quota);
+    }
+
+    /**
+     * @return true if the amount was taken, false if less than that is left
+     */
+    boolean tryAcquire(long amount) {
+        int home = home();
+        for (int probe = 0; probe < stripes; probe++) {
+            int slot = ((home + probe) & (stripes - 1)) * PAD;
+            long available = counts.get(slot);
+            while (available >= amount) {
+                if (counts.compareAndSet(slot, available, available - amount)) {
+                    return true;
+                }
+                available = counts.get(slot);
+            }
+        }
+        return acquirePooled(amount);
+    }
+
+    /**
+     * Give back an amount taken earlier.
+     */
+    void release(long amount) {
+        counts.addAndGet(home() * PAD, amount);
+    }
+
+    /**
+     * @return What is left; exact when nothing is being taken or given back. Pooling empties
+     *         the stripes for a moment, so a sum that overlapped it is taken again under the lock.
+     */
+    long remaining() {
+        long before = poolings;
+        long total = sum();
+        if ((before & 1) == 0 && poolings == before) {
+            return total;
+        }
+        synchronized (this) {
+            return sum();
+        }
+    }
+
+    private long sum() {
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += counts.get(i * PAD);
+        }
+        return total;
+    }
+
+    private synchronized boolean acquirePooled(long amount) {
+        poolings++;
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += counts.getAndSet(i * PAD, 0);
+        }
+        boolean granted = total >= amount;
+        spread(granted ? total - amount : total);
+        poolings++;
+        return granted;
+    }
+
+    private void spread(long total) {
+        long share = total / stripes;
+        counts.addAndGet(0, total - share * (stripes - 1));
+        for (int i = 1; i < stripes; i++) {
+            counts.addAndGet(i * PAD, share);
+        }
+    }
+
+    private int home() {
+        return (int) Thread.currentThread().getId() & (stripes - 1);
+    }
+}
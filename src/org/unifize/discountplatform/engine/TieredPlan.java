@@ -0,0 +1,127 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.CustomerTiers;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+
+/**
+ * A rule set compiled once per customer tier, so each customer is priced only with the
+ * rules their tier is eligible for and no tier is checked while calculating.
+ *
+ * Eligibility only grows with the tier, so each tier's plan is the previous tier's plus the
+ * rules requiring exactly that tier, kept in application order. Plans hold the same rule
+ * objects, tiers that add no rules reuse the plan below them, and the highest tier reuses
+ * the plan of all rules; a tier costs one reference per eligible rule at most.
+ */
+public final class TieredPlan {
+
+    private final CustomerTiers tiers;
+    private final DiscountPlan plan;
+    // Plan per rank + 1; index 0 holds the plan for customers without a known tier
+    private final DiscountPlan[] byRank;
+
+    private TieredPlan(CustomerTiers tiers, DiscountPlan plan, DiscountPlan[] byRank) {
+        this.tiers = tiers;
+        this.plan = plan;
+        this.byRank = byRank;
+    }
+
+    /**
+     * Validate a rule set and compile its plan for every tier.
+     *
+     * @throws IllegalArgumentException if a rule is invalid or names a tier outside the model
+     */
+    public static TieredPlan compile(List<DiscountStrategy> strategies, CustomerTiers tiers) {
+        DiscountPlan plan = DiscountPlan.compile(strategies);
+        List<DiscountStrategy> sorted = plan.getStrategies();
+        int[] required = new int[sorted.size()];
+        int highest = CustomerTiers.NO_TIER;
+        boolean[] gates = new boolean[tiers.size()];
+        for (int i = 0; i < required.length; i++) {
+            DiscountStrategy rule = sorted.get(i);
+            try {
+                required[i] = tiers.requiredRank(rule.getMinCustomerTier());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(rule.getId() + ": " + e.getMessage(), e);
+            }
+            if (required[i] != CustomerTiers.NO_TIER) {
+                gates[required[i]] = true;
+            }
+            highest = Math.max(highest, required[i]);
+        }
+
+        DiscountPlan[] byRank = new DiscountPlan[tiers.size() + 1];
+        for (int rank = CustomerTiers.NO_TIER; rank < tiers.size(); rank++) {
+            if (rank >= highest) {
+                byRank[rank + 1] = plan;
+            } else if (rank >= 0 && !gates[rank]) {
+                byRank[rank + 1] = byRank[rank];
+            } else {
+                List<DiscountStrategy> eligible = new ArrayList<>();
+                for (int i = 0; i < required.length; i++) {
+                    if (required[i] <= rank) {
+                        eligible.add(sorted.get(i));
+                    }
+                }
+                byRank[rank + 1] = DiscountPlan.ofSorted(eligible);
+            }
+        }
+        return new TieredPlan(tiers, plan, byRank);
+    }
+
+    /**
+     * @return Plan of the rules a customer of the given tier is eligible for
+     */
+    public DiscountPlan planFor(String customerTier) {
+        return byRank[tiers.rank(customerTier) + 1];
+    }
+
+    /**
+     * @return Plan of the rules the cart's customer is eligible for
+     */
+    public DiscountPlan planFor(Cart cart) {
+        return planFor(cart.getCustomerTier());
+    }
+
+    /**
+     * @return Plan of all rules, whatever their tier
+     */
+    public DiscountPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return true if the cart's customer tier is eligible for the rule; a rule naming a tier
+     *         outside the model is never eligible
+     */
+    boolean isEligible(Cart cart, DiscountStrategy rule) {
+        String minimum = rule.getMinCustomerTier();
+        if (minimum == null) {
+            return true;
+        }
+        int required = tiers.rank(minimum);
+        return required != CustomerTiers.NO_TIER && tiers.rank(cart.getCustomerTier()) >= required;
+    }
+
+    public CustomerTiers getTiers() {
+        return tiers;
+    }
+
+    /**
+     * @return Number of distinct plans behind the tiers
+     */
+    public int getDistinctPlanCount() {
+        return distinctPlans().size();
+    }
+
+    /**
+     * @return The distinct plans behind the tiers
+     */
+    Collection<DiscountPlan> distinctPlans() {
+        Set<DiscountPlan> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(Arrays.asList(byRank));
+        return distinct;
+    }
+}
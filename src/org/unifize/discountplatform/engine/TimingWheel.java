@@ -0,0 +1,162 @@
+package org.unifize.discountplatform.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical timing wheel of deadlines in epoch milliseconds.
+ *
+ * Each level has {@code SLOTS} buckets; a bucket of the first level spans one tick and a
+ * bucket of each further level spans a whole turn of the level below. A deadline goes into
+ * the finest level whose turn reaches it, so adding is constant time however far ahead it
+ * lies. Only non-empty buckets are queued by expiry, so an idle wheel costs nothing and
+ * the owner can sleep until {@link #nextExpiry()}. When a coarse bucket expires its entries
+ * are added again and fall into finer levels, until they are due.
+ *
+ * Not thread-safe; the owner serialises access.
+ */
+final class TimingWheel<T> {
+
+    private static final int SLOTS = 64;
+
+    private final long tick;
+    private final long span;
+    private final Bucket<T>[] buckets;
+    private final PriorityQueue<Bucket<T>> queue;
+    private long currentTime;
+    private TimingWheel<T> overflow;
+    private int size;
+
+    /**
+     * @param tick      Width of a first-level bucket, in milliseconds
+     * @param startTime Current time, in epoch milliseconds
+     */
+    TimingWheel(long tick, long startTime) {
+        this(tick, startTime, new PriorityQueue<>((a, b) -> Long.compare(a.expiry, b.expiry)));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TimingWheel(long tick, long startTime, PriorityQueue<Bucket<T>> queue) {
+        this.tick = tick;
+        this.span = tick * SLOTS;
+        this.currentTime = startTime - startTime % tick;
+        this.queue = queue;
+        this.buckets = new Bucket[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            buckets[i] = new Bucket<>();
+        }
+    }
+
+    /**
+     * Schedule an entry.
+     *
+     * @return false if the deadline is already due, in which case nothing was scheduled
+     */
+    boolean add(long deadline, T value) {
+        if (!insert(new Entry<>(deadline, value))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @return Number of scheduled entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Epoch milliseconds at which the earliest bucket expires, or Long.MAX_VALUE if none
+     */
+    long nextExpiry() {
+        Bucket<T> head = queue.peek();
+        return head == null ? Long.MAX_VALUE : head.expiry;
+    }
+
+    /**
+     * Move the wheel to the given time and collect everything due by then.
+     *
+     * @return Values whose deadline is at or before {@code now}
+     */
+    List<T> advance(long now) {
+        List<T> due = new ArrayList<>();
+        Bucket<T> head;
+        while ((head = queue.peek()) != null && head.expiry <= now) {
+            queue.poll();
+            advanceClock(head.expiry);
+            List<Entry<T>> entries = head.drain();
+            for (Entry<T> entry : entries) {
+                if (entry.deadline <= now || !insert(entry)) {
+                    due.add(entry.value);
+                    size--;
+                }
+            }
+        }
+        advanceClock(now);
+        return due;
+    }
+
+    private boolean insert(Entry<T> entry) {
+        if (entry.deadline < currentTime + tick) {
+            return false;
+        }
+        if (entry.deadline < currentTime + span) {
+            long virtualSlot = entry.deadline / tick;
+            Bucket<T> bucket = buckets[(int) (virtualSlot % SLOTS)];
+            bucket.entries.add(entry);
+            if (bucket.expireAt(virtualSlot * tick)) {
+                queue.add(bucket);
+            }
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new TimingWheel<>(span, currentTime, queue);
+        }
+        return overflow.insert(entry);
+    }
+
+    private void advanceClock(long time) {
+        if (time >= currentTime + tick) {
+            currentTime = time - time % tick;
+            if (overflow != null) {
+                overflow.advanceClock(currentTime);
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        final long deadline;
+        final T value;
+
+        Entry(long deadline, T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+    }
+
+    private static final class Bucket<T> {
+        List<Entry<T>> entries = new ArrayList<>();
+        long expiry = -1;
+
+        /**
+         * @return true if the bucket was idle and now needs queueing
+         */
+        boolean expireAt(long time) {
+            if (expiry == time) {
+                return false;
+            }
+            expiry = time;
+            return true;
+        }
+
+        List<Entry<T>> drain() {
+            List<Entry<T>> drained = entries;
+            entries = new ArrayList<>();
+            expiry = -1;
+            return drained;
+        }
+    }
+}
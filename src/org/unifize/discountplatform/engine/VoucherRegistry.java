@@ -0,0 +1,405 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.CustomerTiers;
+import org.unifize.discountplatform.domain.strategy.VoucherDiscount;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Finds the voucher rule behind a code, for registries of many millions of codes.
+ *
+ * Codes are compared case-insensitively, like brands and categories. Each code is stored
+ * once, as UTF-8 bytes in an append-only off-heap arena, and found through an off-heap
+ * open-addressing table; the heap holds only a filter of about one byte per table slot and
+ * the rules themselves. Off-heap memory is roughly 8 bytes per slot plus 5 bytes and the
+ * code's length per code; size -XX:MaxDirectMemorySize for it. A lookup costs one filter
+ * probe for an unknown code, which is what brute-forced codes almost always are, and one
+ * or two table probes for a registered one, however many codes there are.
+ *
+ * A registry built with a tier model rejects vouchers whose minimum tier is outside it when
+ * they are registered, so pricing with a {@link TieredPlan} of the same tiers never meets one.
+ *
+ * Lookups never block while no import is writing and are safe from any thread; imports are
+ * serialised and take the write lock one batch at a time.
+ */
+public final class VoucherRegistry {
+
+    private static final int MAX_CODE_BYTES = 255;
+    private static final int CHUNK_BITS = 22; // 4 MB arena chunks
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int RECORD_HEADER = Integer.BYTES + 1; // rule id, code length
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 27; // slot table must fit one buffer
+    private static final int IMPORT_BATCH = 4096;
+    private static final long OFFSET_MASK = (1L << 40) - 1;
+    private static final int MISSING = -1;
+
+    private final CustomerTiers tiers;
+    private final StampedLock lock = new StampedLock();
+    private final Map<VoucherDiscount, Integer> ruleIds = new IdentityHashMap<>();
+    private VoucherDiscount[] rules = new VoucherDiscount[0];
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int[] chunkEnds = new int[0];
+    private Table table;
+    private int size;
+
+    public VoucherRegistry() {
+        this(0);
+    }
+
+    /**
+     * @param expectedCodes Number of codes to size the table for, so imports up to it never rehash
+     */
+    public VoucherRegistry(int expectedCodes) {
+        this(expectedCodes, null);
+    }
+
+    /**
+     * @param tiers Tier model the vouchers' minimum tiers must belong to
+     */
+    public VoucherRegistry(CustomerTiers tiers) {
+        this(0, tiers);
+    }
+
+    /**
+     * @param expectedCodes Number of codes to size the table for, so imports up to it never rehash
+     * @param tiers         Tier model the vouchers' minimum tiers must belong to, or null for none
+     */
+    public VoucherRegistry(int expectedCodes, CustomerTiers tiers) {
+        this.table = new Table(capacityFor(expectedCodes));
+        this.tiers = tiers;
+    }
+
+    /**
+     * Register a voucher under its own code.
+     *
+     * @throws IllegalArgumentException if the voucher has no code, names a tier outside the
+     *         registry's tiers, or the code belongs to another voucher
+     */
+    public void register(VoucherDiscount voucher) {
+        if (voucher.getVoucherCode() == null) {
+            throw new IllegalArgumentException(voucher.getId() + ": voucher has no code");
+        }
+        importCodes(voucher, Collections.singletonList(voucher.getVoucherCode()));
+    }
+
+    /**
+     * Register a batch of codes that all redeem the given voucher, e.g. generated single-use codes.
+     * Codes already registered for this voucher are skipped, so a batch can be imported again.
+     * If a code is rejected, the codes before it stay registered.
+     *
+     * @return Number of codes newly registered
+     * @throws IllegalArgumentException if the voucher names a tier outside the registry's tiers,
+     *         or a code is empty, longer than 255 UTF-8 bytes once case-folded, or registered
+     *         for another voucher
+     * @throws IllegalStateException if the registry cannot grow any further
+     */
+    public int importCodes(VoucherDiscount voucher, Iterable<? extends CharSequence> codes) {
+        if (tiers != null) {
+            try {
+                tiers.requiredRank(voucher.getMinCustomerTier());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(voucher.getId() + ": " + e.getMessage(), e);
+            }
+        }
+        byte[][] keys = new byte[IMPORT_BATCH][];
+        long[] hashes = new long[IMPORT_BATCH];
+        int added = 0;
+        int pending = 0;
+        for (CharSequence code : codes) {
+            byte[] key = encode(code.toString());
+            if (key == null || key.length == 0) {
+                throw new IllegalArgumentException(voucher.getId() + ": invalid voucher code \"" + code + "\"");
+            }
+            keys[pending] = key;
+            hashes[pending] = hash(key);
+            if (++pending == IMPORT_BATCH) {
+                added += insert(voucher, keys, hashes, pending);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            added += insert(voucher, keys, hashes, pending);
+        }
+        return added;
+    }
+
+    /**
+     * @param code Code as entered by the customer, or null
+     * @return The voucher the code redeems, or null if the code is not registered
+     */
+    public VoucherDiscount lookup(String code) {
+        if (code == null) {
+            return null;
+        }
+        byte[] key = encode(code);
+        if (key == null) {
+            return null;
+        }
+        long hash = hash(key);
+
+        long stamp = lock.tryOptimisticRead();
+        VoucherDiscount[] knownRules = rules;
+        int ruleId;
+        try {
+            ruleId = find(table, chunks, key, hash);
+        } catch (RuntimeException tornRead) {
+            ruleId = MISSING; // an import was writing; validation fails below
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                knownRules = rules;
+                ruleId = find(table, chunks, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return ruleId == MISSING ? null : knownRules[ruleId];
+    }
+
+    /**
+     * @return Tier model the vouchers are checked against, or null if none
+     */
+    public CustomerTiers getTiers() {
+        return tiers;
+    }
+
+    /**
+     * @return Number of registered codes
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int insert(VoucherDiscount voucher, byte[][] keys, long[] hashes, int count) {
+        long stamp = lock.writeLock();
+        try {
+            int ruleId = ruleIdFor(voucher);
+            int added = 0;
+            for (int i = 0; i < count; i++) {
+                int existing = find(table, chunks, keys[i], hashes[i]);
+                if (existing == ruleId) {
+                    continue;
+                }
+                if (existing != MISSING) {
+                    throw new IllegalArgumentException(voucher.getId() + ": code \""
+                            + new String(keys[i], StandardCharsets.UTF_8)
+                            + "\" already redeems " + rules[existing].getId());
+                }
+                if (size + 1 > table.capacity / 4 * 3) {
+                    grow();
+                }
+                long offset = append(ruleId, keys[i]);
+                table.put(hashes[i], offset);
+                size++;
+                added++;
+            }
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int ruleIdFor(VoucherDiscount voucher) {
+        Integer id = ruleIds.get(voucher);
+        if (id != null) {
+            return id;
+        }
+        int newId = rules.length;
+        VoucherDiscount[] grown = Arrays.copyOf(rules, newId + 1);
+        grown[newId] = voucher;
+        rules = grown;
+        ruleIds.put(voucher, newId);
+        return newId;
+    }
+
+    /**
+     * @return Arena offset of the new record
+     */
+    private long append(int ruleId, byte[] key) {
+        int recordSize = RECORD_HEADER + key.length;
+        int last = chunks.length - 1;
+        if (last < 0 || chunkEnds[last] + recordSize > CHUNK_SIZE) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunkEnds = Arrays.copyOf(chunkEnds, chunkEnds.length + 1);
+            last++;
+            chunks[last] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        ByteBuffer chunk = chunks[last];
+        int position = chunkEnds[last];
+        chunk.putInt(position, ruleId);
+        chunk.put(position + Integer.BYTES, (byte) key.length);
+        chunk.put(position + RECORD_HEADER, key);
+        chunkEnds[last] = position + recordSize;
+        return ((long) last << CHUNK_BITS) | position;
+    }
+
+    /**
+     * Move every code into a table twice the size; the arena stays as it is.
+     */
+    private void grow() {
+        if (table.capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Voucher registry is full at " + size + " codes");
+        }
+        Table grown = new Table(table.capacity * 2);
+        byte[] key = new byte[MAX_CODE_BYTES];
+        for (int c = 0; c < chunks.length; c++) {
+            ByteBuffer chunk = chunks[c];
+            int position = 0;
+            while (position < chunkEnds[c]) {
+                int length = chunk.get(position + Integer.BYTES) & 0xFF;
+                chunk.get(position + RECORD_HEADER, key, 0, length);
+                grown.put(hash(key, length), ((long) c << CHUNK_BITS) | position);
+                position += RECORD_HEADER + length;
+            }
+        }
+        table = grown;
+    }
+
+    private static int find(Table table, ByteBuffer[] chunks, byte[] key, long hash) {
+        if (!table.filter.mightContain(hash)) {
+            return MISSING;
+        }
+        long tag = hash >>> 40;
+        int mask = table.capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = table.slots.getLong(slot * Long.BYTES);
+            if (entry == 0) {
+                return MISSING;
+            }
+            if (entry >>> 40 == tag) {
+                long offset = (entry & OFFSET_MASK) - 1;
+                ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)];
+                int position = (int) offset & (CHUNK_SIZE - 1);
+                if (matches(chunk, position, key)) {
+                    return chunk.getInt(position);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(ByteBuffer chunk, int position, byte[] key) {
+        if ((chunk.get(position + Integer.BYTES) & 0xFF) != key.length) {
+            return false;
+        }
+        int start = position + RECORD_HEADER;
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Case-folded UTF-8 bytes, or null if too long to be a registered code
+     */
+    private static byte[] encode(String code) {
+        byte[] key = DiscountRuleIndex.normalize(code).getBytes(StandardCharsets.UTF_8);
+        return key.length <= MAX_CODE_BYTES ? key : null;
+    }
+
+    private static long hash(byte[] key) {
+        return hash(key, key.length);
+    }
+
+    /**
+     * FNV-1a over the bytes, finished with the MurmurHash3 mixer so every bit is usable.
+     */
+    private static long hash(byte[] key, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ key[i]) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int capacityFor(int expectedCodes) {
+        long needed = (long) expectedCodes * 4 / 3 + 1;
+        if (needed > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Too many expected codes: " + expectedCodes);
+        }
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * Slot table and the filter in front of it. A slot holds the top 24 bits of the code's
+     * hash and its arena offset plus one, so 0 marks an empty slot.
+     */
+    private static final class Table {
+        final int capacity;
+        final ByteBuffer slots;
+        final BlockFilter filter;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+            this.filter = new BlockFilter(capacity / 64);
+        }
+
+        void put(long hash, long offset) {
+            int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            while (slots.getLong(slot * Long.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putLong(slot * Long.BYTES, (hash >>> 40) << 40 | (offset + 1));
+            filter.add(hash);
+        }
+    }
+
+    /**
+     * Split-block Bloom filter: a code sets one bit in each of the eight words of one
+     * 64-byte block, so a probe touches a single cache line. At 8 bits per table slot it
+     * passes about 1% of unknown codes when the table is full, far fewer after it grows.
+     */
+    private static final class BlockFilter {
+        private final long[] words;
+        private final int blockMask;
+
+        BlockFilter(int blocks) {
+            this.words = new long[blocks * 8];
+            this.blockMask = blocks - 1;
+        }
+
+        void add(long hash) {
+            long bits = hash * 0x9e3779b97f4a7c15L;
+            int block = blockOf(hash);
+            for (int i = 0; i < 8; i++) {
+                words[block + i] |= 1L << (bits >>> (i * 6));
+            }
+        }
+
+        boolean mightContain(long hash) {
+            long bits = hash * 0x9e3779b97f4a7c15L;
+            int block = blockOf(hash);
+            for (int i = 0; i < 8; i++) {
+                if ((words[block + i] & (1L << (bits >>> (i * 6)))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Uses hash bits the slot index does not, so filter and table fail independently.
+         */
+        private int blockOf(long hash) {
+            return ((int) (hash >>> 32) & blockMask) * 8;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.unifize.discountplatform.io;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Layouts of cart dumps read by {@link RepricingPipeline}. Results are written in the
+ * same layout as the input.
+ *
+ * <pre>
+ *   NDJSON  one cart object per line:
+ *           {"cartId": "c1", "customerId": "u1", "customerTier": "GOLD", "voucherCode": "SUPER69",
+ *            "payment": {"mode": "CREDIT_CARD", "bank": "ICICI", "cardType": "PLATINUM"},
+ *            "items": [{"productId": "p1", "name": "Shoe", "brand": "PUMA", "category": "Shoes",
+ *                       "price": 999.0, "quantity": 2}]}
+ *   CSV     a header row, then one row per cart line; consecutive rows with the same cart_id
+ *           form one cart. Columns: cart_id, customer_id, customer_tier, voucher_code,
+ *           payment_mode, bank, card_type, upi_app, wallet_provider, product_id, name, brand,
+ *           category, price, quantity; only cart_id, price and quantity are required.
+ * </pre>
+ * Prices are in rupees. CSV fields may be quoted with "" for a literal quote, but not span
+ * lines.
+ */
+public enum CartRecordFormat {
+    NDJSON,
+    CSV;
+
+    /**
+     * @return CSV for files ending in .csv, NDJSON otherwise
+     */
+    public static CartRecordFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") ? CSV : NDJSON;
+    }
+}
@@ -0,0 +1,309 @@
+package org.unifize.discountplatform.io;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.payment.*;
+
+import java.util.*;
+
+/**
+ * Reads carts from, and writes results to, the record layouts of {@link CartRecordFormat}.
+ */
+final class CartRecords {
+
+    static final String CSV_RESULT_HEADER = "cart_id,original_total,final_price,savings,discounts\n";
+
+    private CartRecords() {} // Prevent instantiation
+
+    /**
+     * Build a cart from one parsed NDJSON record.
+     *
+     * @throws IllegalArgumentException or ClassCastException if the record is malformed
+     */
+    static Cart fromJson(Map<String, Object> fields) {
+        List<?> rows = (List<?>) fields.get("items");
+        if (rows == null) {
+            throw new IllegalArgumentException("missing items");
+        }
+        List<CartItem> items = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> item = (Map<String, Object>) row;
+            Number price = (Number) item.get("price");
+            Number quantity = (Number) item.get("quantity");
+            if (price == null || quantity == null) {
+                throw new IllegalArgumentException("item needs price and quantity");
+            }
+            items.add(new CartItem(string(item, "productId"), string(item, "name"), string(item, "brand"),
+                    string(item, "category"), Money.ofRupees(price.doubleValue()), quantity.intValue()));
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> payment = (Map<String, Object>) fields.get("payment");
+        PaymentMethod paymentMethod = payment == null ? null : payment(string(payment, "mode"),
+                string(payment, "bank"), string(payment, "cardType"),
+                string(payment, "upiApp"), string(payment, "walletProvider"));
+        return new Cart(string(fields, "cartId"), items, paymentMethod, string(fields, "customerId"),
+                string(fields, "customerTier"), string(fields, "voucherCode"));
+    }
+
+    private static String string(Map<String, Object> fields, String name) {
+        return (String) fields.get(name);
+    }
+
+    private static PaymentMethod payment(String mode, String bank, String cardType, String upiApp, String walletProvider) {
+        if (mode == null) {
+            return null;
+        }
+        PaymentMode paymentMode = PaymentMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        switch (paymentMode) {
+            case UPI:
+                return UpiPaymentMethod.builder().app(upiApp).build();
+            case WALLET:
+                return PaymentMethodFactory.createWallet(walletProvider);
+            default:
+                return CardPaymentMethod.builder().mode(paymentMode).bank(bank).cardType(cardType).build();
+        }
+    }
+
+    /**
+     * Column positions of a CSV cart dump, read from its header row.
+     */
+    static final class CsvLayout {
+        private final int cartId;
+        private final int customerId;
+        private final int customerTier;
+        private final int voucherCode;
+        private final int paymentMode;
+        private final int bank;
+        private final int cardType;
+        private final int upiApp;
+        private final int walletProvider;
+        private final int productId;
+        private final int name;
+        private final int brand;
+        private final int category;
+        private final int price;
+        private final int quantity;
+
+        private CsvLayout(List<String> header) {
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            cartId = required(columns, "cart_id");
+            price = required(columns, "price");
+            quantity = required(columns, "quantity");
+            customerId = columns.getOrDefault("customer_id", -1);
+            customerTier = columns.getOrDefault("customer_tier", -1);
+            voucherCode = columns.getOrDefault("voucher_code", -1);
+            paymentMode = columns.getOrDefault("payment_mode", -1);
+            bank = columns.getOrDefault("bank", -1);
+            cardType = columns.getOrDefault("card_type", -1);
+            upiApp = columns.getOrDefault("upi_app", -1);
+            walletProvider = columns.getOrDefault("wallet_provider", -1);
+            productId = columns.getOrDefault("product_id", -1);
+            name = columns.getOrDefault("name", -1);
+            brand = columns.getOrDefault("brand", -1);
+            category = columns.getOrDefault("category", -1);
+        }
+
+        /**
+         * @throws IllegalArgumentException if a required column is missing
+         */
+        static CsvLayout of(String headerLine) {
+            return new CsvLayout(csvFields(headerLine));
+        }
+
+        private static int required(Map<String, Integer> columns, String name) {
+            Integer index = columns.get(name);
+            if (index == null) {
+                throw new IllegalArgumentException("CSV header has no " + name + " column");
+            }
+            return index;
+        }
+
+        String cartId(List<String> row) {
+            return field(row, cartId);
+        }
+
+        /**
+         * Build a cart from its rows; cart-level columns are read from the first row.
+         *
+         * @throws IllegalArgumentException if a price or quantity is missing or not a number
+         */
+        Cart toCart(List<List<String>> rows) {
+            List<CartItem> items = new ArrayList<>(rows.size());
+            for (List<String> row : rows) {
+                String unitPrice = field(row, price);
+                String count = field(row, quantity);
+                if (unitPrice == null || count == null) {
+                    throw new IllegalArgumentException("row needs price and quantity");
+                }
+                items.add(new CartItem(field(row, productId), field(row, name), field(row, brand),
+                        field(row, category), Money.ofRupees(Double.parseDouble(unitPrice)), Integer.parseInt(count)));
+            }
+            List<String> first = rows.get(0);
+            PaymentMethod paymentMethod = payment(field(first, paymentMode), field(first, bank),
+                    field(first, cardType), field(first, upiApp), field(first, walletProvider));
+            return new Cart(field(first, cartId), items, paymentMethod, field(first, customerId),
+                    field(first, customerTier), field(first, voucherCode));
+        }
+
+        /**
+         * @return The field, or null if the column is absent or the field empty
+         */
+        private static String field(List<String> row, int index) {
+            if (index < 0 || index >= row.size()) {
+                return null;
+            }
+            String value = row.get(index);
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    /**
+     * Split one CSV line into fields, unquoting quoted fields.
+     *
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static List<String> csvFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            length--;
+        }
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < length && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < length && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            } else {
+                int end = line.indexOf(',', i);
+                if (end < 0 || end > length) {
+                    end = length;
+                }
+                field.append(line, i, end);
+                i = end;
+            }
+            fields.add(field.toString());
+            if (i >= length) {
+                return fields;
+            }
+            i++; // Comma
+        }
+    }
+
+    /**
+     * Append a result as one NDJSON line.
+     */
+    static void appendJson(StringBuilder out, Cart cart, DiscountResult result) {
+        out.append("{\"cartId\":");
+        appendJsonString(out, cart.getCartId());
+        out.append(",\"originalTotal\":");
+        appendRupees(out, result.getOriginalTotal().getPaise());
+        out.append(",\"finalPrice\":");
+        appendRupees(out, result.getFinalPrice().getPaise());
+        out.append(",\"savings\":");
+        appendRupees(out, result.getTotalSavings().getPaise());
+        out.append(",\"ruleVersion\":").append(result.getRuleVersion());
+        out.append(",\"discounts\":[");
+        List<AppliedDiscount> applied = result.getAppliedDiscounts();
+        for (int i = 0; i < applied.size(); i++) {
+            AppliedDiscount discount = applied.get(i);
+            out.append(i == 0 ? "{\"id\":" : ",{\"id\":");
+            appendJsonString(out, discount.getDiscountId());
+            out.append(",\"type\":\"").append(discount.getType()).append("\",\"amount\":");
+            appendRupees(out, discount.getAmount().getPaise());
+            out.append('}');
+        }
+        out.append("]}\n");
+    }
+
+    /**
+     * Append a result as one CSV row under {@link #CSV_RESULT_HEADER}; discounts are listed
+     * as id:amount pairs separated by semicolons.
+     */
+    static void appendCsv(StringBuilder out, Cart cart, DiscountResult result) {
+        appendCsvField(out, cart.getCartId());
+        out.append(',');
+        appendRupees(out, result.getOriginalTotal().getPaise());
+        out.append(',');
+        appendRupees(out, result.getFinalPrice().getPaise());
+        out.append(',');
+        appendRupees(out, result.getTotalSavings().getPaise());
+        out.append(',');
+        StringBuilder discounts = new StringBuilder();
+        for (AppliedDiscount discount : result.getAppliedDiscounts()) {
+            if (discounts.length() > 0) {
+                discounts.append(';');
+            }
+            discounts.append(discount.getDiscountId()).append(':');
+            appendRupees(discounts, discount.getAmount().getPaise());
+        }
+        appendCsvField(out, discounts.toString());
+        out.append('\n');
+    }
+
+    /**
+     * Append an amount as rupees with two decimals.
+     */
+    static void appendRupees(StringBuilder out, long paise) {
+        if (paise < 0) {
+            out.append('-');
+            paise = -paise;
+        }
+        long fraction = paise % 100;
+        out.append(paise / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static void appendCsvField(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.append(value);
+            return;
+        }
+        out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
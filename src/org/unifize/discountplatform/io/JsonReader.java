@@ -0,0 +1,239 @@
+package org.unifize.discountplatform.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON reader over a character stream.
+ * Reads one top-level value at a time, so a large array of rules can be consumed
+ * element by element without holding the whole document in memory.
+ *
+ * Objects become LinkedHashMaps, arrays Lists, numbers Long or Double.
+ */
+final class JsonReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder scratch = new StringBuilder();
+    private int position;
+    private int limit;
+    private long offset;
+
+    JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Start reading another stream, keeping the buffers, e.g. for one document per line.
+     */
+    JsonReader reset(Reader reader) {
+        this.reader = reader;
+        this.position = 0;
+        this.limit = 0;
+        this.offset = 0;
+        return this;
+    }
+
+    /**
+     * @return The next non-whitespace character without consuming it, or -1 at end of input
+     */
+    int peek() throws IOException {
+        skipWhitespace();
+        return fill() ? buffer[position] : -1;
+    }
+
+    /**
+     * Consume the expected structural character.
+     */
+    void expect(char expected) throws IOException {
+        int c = peek();
+        if (c != expected) {
+            throw error("Expected '" + expected + "' but found " + describe(c));
+        }
+        position++;
+    }
+
+    /**
+     * Consume a comma if one comes next.
+     *
+     * @return true if a comma was consumed
+     */
+    boolean consumeComma() throws IOException {
+        if (peek() == ',') {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    Object readValue() throws IOException {
+        int c = peek();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                readLiteral("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected " + describe(c));
+        }
+    }
+
+    Map<String, Object> readObject() throws IOException {
+        expect('{');
+        Map<String, Object> object = new LinkedHashMap<>();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        do {
+            if (peek() != '"') {
+                throw error("Expected field name but found " + describe(peek()));
+            }
+            String name = readString();
+            expect(':');
+            object.put(name, readValue());
+        } while (consumeComma());
+        expect('}');
+        return object;
+    }
+
+    private List<Object> readArray() throws IOException {
+        expect('[');
+        List<Object> array = new ArrayList<>();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        do {
+            array.add(readValue());
+        } while (consumeComma());
+        expect(']');
+        return array;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        scratch.setLength(0);
+        while (true) {
+            if (!fill()) {
+                throw error("Unterminated string");
+            }
+            char c = buffer[position++];
+            if (c == '"') {
+                return scratch.toString();
+            }
+            if (c != '\\') {
+                scratch.append(c);
+                continue;
+            }
+            if (!fill()) {
+                throw error("Unterminated escape");
+            }
+            char escaped = buffer[position++];
+            switch (escaped) {
+                case 'b': scratch.append('\b'); break;
+                case 'f': scratch.append('\f'); break;
+                case 'n': scratch.append('\n'); break;
+                case 'r': scratch.append('\r'); break;
+                case 't': scratch.append('\t'); break;
+                case 'u': scratch.append(readUnicodeEscape()); break;
+                default: scratch.append(escaped); break;
+            }
+        }
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (!fill()) {
+                throw error("Unterminated unicode escape");
+            }
+            int digit = Character.digit(buffer[position++], 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private Object readNumber() throws IOException {
+        scratch.setLength(0);
+        boolean decimal = false;
+        while (fill()) {
+            char c = buffer[position];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                scratch.append(c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+                scratch.append(c);
+            } else {
+                break;
+            }
+            position++;
+        }
+        String text = scratch.toString();
+        try {
+            return decimal ? (Object) Double.parseDouble(text) : (Object) Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + text);
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (!fill() || buffer[position] != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+            position++;
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (fill() && Character.isWhitespace(buffer[position])) {
+            position++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        offset += limit;
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private static String describe(int c) {
+        return c < 0 ? "end of input" : "'" + (char) c + "'";
+    }
+
+    IOException error(String message) {
+        return new IOException(message + " at character " + (offset + position));
+    }
+}
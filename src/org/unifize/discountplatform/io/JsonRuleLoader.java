@@ -0,0 +1,197 @@
+package org.unifize.discountplatform.io;
+
+import org.unifize.discountplatform.domain.Money;
+import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Loads rules in the canonical JSON models from the README.
+ * Accepts either a JSON array of rules or one rule object per line, and streams them:
+ * only one rule object is held in memory at a time. Rules with "active": false are skipped.
+ *
+ * Amounts (maxDiscountCap, minCartValue) are in rupees; timestamps are epoch seconds (UTC).
+ * validFrom and validTo are epoch seconds or ISO dates (UTC); a validTo date is inclusive.
+ * Rules are stackable unless "stackable": false, and join an "exclusiveGroup" if one is named.
+ */
+public final class JsonRuleLoader {
+
+    private JsonRuleLoader() {} // Prevent instantiation
+
+    public static List<DiscountStrategy> load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    public static List<DiscountStrategy> load(Reader reader) throws IOException {
+        List<DiscountStrategy> rules = new ArrayList<>();
+        forEach(reader, rules::add);
+        return rules;
+    }
+
+    /**
+     * Stream rules to a consumer as they are parsed.
+     *
+     * @return Number of active rules delivered
+     * @throws IOException if the input is not valid JSON or a rule is malformed
+     */
+    public static long forEach(Reader reader, Consumer<DiscountStrategy> consumer) throws IOException {
+        JsonReader json = new JsonReader(reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+        long count = 0;
+
+        if (json.peek() == '[') {
+            json.expect('[');
+            if (json.peek() == ']') {
+                json.expect(']');
+                return 0;
+            }
+            do {
+                count += deliver(json, consumer);
+            } while (json.consumeComma());
+            json.expect(']');
+        } else {
+            while (json.peek() != -1) {
+                count += deliver(json, consumer);
+            }
+        }
+        return count;
+    }
+
+    private static int deliver(JsonReader json, Consumer<DiscountStrategy> consumer) throws IOException {
+        Map<String, Object> fields = json.readObject();
+        if (Boolean.FALSE.equals(fields.get("active"))) {
+            return 0;
+        }
+        try {
+            consumer.accept(toStrategy(fields));
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw json.error("Invalid rule " + fields.get("id") + ": " + e.getMessage());
+        }
+        return 1;
+    }
+
+    static DiscountStrategy toStrategy(Map<String, Object> fields) {
+        String type = requireString(fields, "type");
+        switch (type.toUpperCase(Locale.ROOT)) {
+            case "BRAND":
+                return common(BrandDiscount.builder(), fields)
+                        .targetBrand(requireString(fields, "targetBrand"))
+                        .build();
+            case "CATEGORY":
+                return common(CategoryDiscount.builder(), fields)
+                        .targetCategory(requireString(fields, "targetCategory"))
+                        .build();
+            case "VOUCHER":
+                return common(VoucherDiscount.builder(), fields)
+                        .voucherCode(string(fields, "voucher_code"))
+                        .excludedBrands(stringSet(fields, "excludedBrands"))
+                        .minCustomerTier(string(fields, "minCustomerTier"))
+                        .build();
+            case "PAYMENT":
+                String mode = string(fields, "payment_mode");
+                return common(PaymentDiscount.builder(), fields)
+                        .paymentMode(mode != null ? PaymentMode.valueOf(mode.toUpperCase(Locale.ROOT)) : null)
+                        .requiredBank(string(fields, "bank"))
+                        .requiredCardType(string(fields, "cardType"))
+                        .requiredUpiApp(string(fields, "upiApp"))
+                        .requiredWalletProvider(string(fields, "walletProvider"))
+                        .minCartValue(rupees(fields, "minCartValue"))
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown discount type " + type);
+        }
+    }
+
+    private static <B extends AbstractDiscountStrategy.AbstractBuilder<B>> B common(B builder, Map<String, Object> fields) {
+        return builder
+                .id(requireString(fields, "id"))
+                .description(string(fields, "description"))
+                .discountPercent(number(fields, "discountPercent").intValue())
+                .maxDiscountCap(rupees(fields, "maxDiscountCap"))
+                .createdDateTime(epochSeconds(fields, "created_date_time"))
+                .lastUpdatedDateTime(epochSeconds(fields, "last_updated_date_time"))
+                .validFrom(validity(fields, "validFrom", false))
+                .validTo(validity(fields, "validTo", true))
+                .stackable(!Boolean.FALSE.equals(fields.get("stackable")))
+                .exclusiveGroup(string(fields, "exclusiveGroup"));
+    }
+
+    private static String string(Map<String, Object> fields, String name) {
+        return (String) fields.get(name);
+    }
+
+    private static String requireString(Map<String, Object> fields, String name) {
+        String value = string(fields, name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing " + name);
+        }
+        return value;
+    }
+
+    private static Number number(Map<String, Object> fields, String name) {
+        Number value = (Number) fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing " + name);
+        }
+        return value;
+    }
+
+    private static Money rupees(Map<String, Object> fields, String name) {
+        Number value = (Number) fields.get(name);
+        return value != null ? Money.ofRupees(value.doubleValue()) : null;
+    }
+
+    private static LocalDateTime epochSeconds(Map<String, Object> fields, String name) {
+        Number value = (Number) fields.get(name);
+        return value != null ? LocalDateTime.ofEpochSecond(value.longValue(), 0, ZoneOffset.UTC) : null;
+    }
+
+    /**
+     * Read a validity bound given as epoch seconds, an ISO date-time, or an ISO date. A date
+     * names a whole day, so a validTo date ends the window at the start of the next day.
+     */
+    private static LocalDateTime validity(Map<String, Object> fields, String name, boolean end) {
+        Object value = fields.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return LocalDateTime.ofEpochSecond(((Number) value).longValue(), 0, ZoneOffset.UTC);
+        }
+        String text = (String) value;
+        try {
+            if (text.indexOf('T') >= 0) {
+                return LocalDateTime.parse(text);
+            }
+            LocalDate day = LocalDate.parse(text);
+            return (end ? day.plusDays(1) : day).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("bad " + name + ": " + text, e);
+        }
+    }
+
+    private static Set<String> stringSet(Map<String, Object> fields, String name) {
+        List<?> values = (List<?>) fields.get(name);
+        if (values == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (Object value : values) {
+            result.add((String) value);
+        }
+        return result;
+    }
+}
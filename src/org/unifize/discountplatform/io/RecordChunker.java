@@ -0,0 +1,188 @@
+package org.unifize.discountplatform.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cuts a text file into chunks of whole lines, read through a memory-mapped window that
+ * slides along the file, so a file of any size is read with the same address space and
+ * only the pages being scanned are resident.
+ *
+ * A chunk holds about the requested number of lines. For CSV dumps a chunk never splits a
+ * cart: it is extended, or cut earlier, so rows sharing a cart_id stay together.
+ */
+final class RecordChunker {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Consecutive whole lines of the file; the bytes stay valid while the window is mapped,
+     * which the chunk keeps alive by holding a view of it.
+     */
+    static final class Chunk {
+        private final ByteBuffer bytes;
+        private final long firstLine;
+
+        private Chunk(ByteBuffer bytes, long firstLine) {
+            this.bytes = bytes;
+            this.firstLine = firstLine;
+        }
+
+        /**
+         * @return Number of the chunk's first line in the file, from 1
+         */
+        long getFirstLine() {
+            return firstLine;
+        }
+
+        int getLength() {
+            return bytes.capacity();
+        }
+
+        String text() {
+            byte[] copy = new byte[bytes.capacity()];
+            bytes.get(0, copy);
+            return new String(copy, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final int linesPerChunk;
+    private CartRecords.CsvLayout csv;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private long line = 1;
+    private int[] lineStarts = new int[64];
+
+    RecordChunker(FileChannel channel, int linesPerChunk) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.linesPerChunk = linesPerChunk;
+    }
+
+    /**
+     * Keep rows with the same cart_id in one chunk from now on.
+     */
+    void groupBy(CartRecords.CsvLayout csv) {
+        this.csv = csv;
+    }
+
+    /**
+     * @return The next line, without its line break, or null at end of file
+     */
+    String readLine() throws IOException {
+        Chunk chunk = next(1, false);
+        if (chunk == null) {
+            return null;
+        }
+        String text = chunk.text();
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    /**
+     * @return The next chunk, or null at end of file
+     * @throws IOException if a line, or a CSV cart, does not fit in a 2 GB window
+     */
+    Chunk next() throws IOException {
+        return next(linesPerChunk, csv != null);
+    }
+
+    private Chunk next(int wanted, boolean grouped) throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        if (window == null || position >= windowStart + window.limit()) {
+            map(WINDOW_SIZE);
+        }
+        while (true) {
+            int start = (int) (position - windowStart);
+            int limit = window.limit();
+            boolean lastWindow = windowStart + limit == size;
+            boolean full = false;
+            int lines = 0;
+            int at = start;
+            String groupId = null;
+            while (at < limit) {
+                int end = indexOf(window, at, limit);
+                if (end < 0 && !lastWindow) {
+                    break; // The line runs past the window
+                }
+                int next = end < 0 ? limit : end + 1;
+                if (lines >= wanted) {
+                    if (grouped && groupId == null) {
+                        groupId = cartId(lineStarts[lines - 1], at);
+                    }
+                    if (!grouped || !groupId.equals(cartId(at, next))) {
+                        full = true;
+                        break;
+                    }
+                }
+                if (lines == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+                }
+                lineStarts[lines++] = at;
+                at = next;
+            }
+            if (grouped && !full && !lastWindow && lines > 0) {
+                // The last cart may have more rows past the window, so leave it for the next chunk
+                int groupFirst = lines - 1;
+                String last = cartId(lineStarts[groupFirst], at);
+                while (groupFirst > 0 && last.equals(cartId(lineStarts[groupFirst - 1], lineStarts[groupFirst]))) {
+                    groupFirst--;
+                }
+                lines = groupFirst;
+                at = lines > 0 ? lineStarts[lines] : start;
+            }
+            if (lines == 0) {
+                // Not one whole record in the window: map a larger one from here
+                long length = windowStart == position ? 2L * limit : WINDOW_SIZE;
+                if (windowStart == position && limit >= Integer.MAX_VALUE) {
+                    throw new IOException("Line " + line + " starts a record longer than 2 GB");
+                }
+                map(Math.min(Integer.MAX_VALUE, length));
+                continue;
+            }
+            Chunk chunk = new Chunk(window.slice(start, at - start), line);
+            position = windowStart + at;
+            line += lines;
+            return chunk;
+        }
+    }
+
+    /**
+     * Map up to the given number of bytes from the current position.
+     */
+    private void map(long length) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, length));
+    }
+
+    private String cartId(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        window.get(from, bytes);
+        return csv.cartId(CartRecords.csvFields(stripLineBreak(new String(bytes, StandardCharsets.UTF_8))));
+    }
+
+    private static String stripLineBreak(String line) {
+        return line.endsWith("\n") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+package org.unifize.discountplatform.io;
+
+import org.unifize.discountplatform.domain.CustomerTiers;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.engine.RuleRepository;
+import org.unifize.discountplatform.engine.RuleSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Command line entry point of {@link RepricingPipeline}:
+ * <pre>
+ *   RepriceCommand --rules rules.json|rules.snap --input carts.ndjson|carts.csv --output results
+ *                  [--format NDJSON|CSV] [--threads n] [--chunk lines] [--tiers STANDARD,SILVER,GOLD]
+ * </pre>
+ * Rules are read from a {@link RuleSnapshotFile} when the file ends in .snap, otherwise with
+ * {@link JsonRuleLoader}. Progress is printed to stderr once a second.
+ */
+public final class RepriceCommand {
+
+    private RepriceCommand() {} // Prevent instantiation
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: RepriceCommand --rules <file> --input <file> --output <file>"
+                    + " [--format NDJSON|CSV] [--threads n] [--chunk lines] [--tiers A,B,C]");
+            System.exit(2);
+            return;
+        }
+        try {
+            RepricingStats stats = run(options);
+            System.err.println("Repriced " + stats);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Repricing failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static RepricingStats run(Map<String, String> options) throws IOException {
+        Path rulesFile = Path.of(options.get("rules"));
+        List<DiscountStrategy> rules = rulesFile.toString().endsWith(".snap")
+                ? RuleSnapshotFile.read(rulesFile)
+                : JsonRuleLoader.load(rulesFile);
+        String tiers = options.get("tiers");
+        RuleRepository repository = new RuleRepository(tiers == null ? null : CustomerTiers.of(tiers.split(",")));
+        RuleSnapshot snapshot = repository.publish(rules);
+
+        RepricingPipeline.Builder pipeline = RepricingPipeline.builder()
+                .rules(snapshot)
+                .progress(stats -> System.err.println(stats));
+        if (options.containsKey("format")) {
+            pipeline.format(CartRecordFormat.valueOf(options.get("format").toUpperCase(Locale.ROOT)));
+        }
+        if (options.containsKey("threads")) {
+            pipeline.parallelism(Integer.parseInt(options.get("threads")));
+        }
+        if (options.containsKey("chunk")) {
+            pipeline.chunkSize(Integer.parseInt(options.get("chunk")));
+        }
+        return pipeline.build().run(Path.of(options.get("input")), Path.of(options.get("output")));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Set<String> known = Set.of("rules", "input", "output", "format", "threads", "chunk", "tiers");
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if (!known.contains(name) || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            options.put(name, args[i + 1]);
+        }
+        for (String required : List.of("rules", "input", "output")) {
+            if (!options.containsKey(required)) {
+                throw new IllegalArgumentException("Missing --" + required);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,293 @@
+package org.unifize.discountplatform.io;
+
+import org.unifize.discountplatform.domain.Cart;
+import org.unifize.discountplatform.domain.ReasoningLevel;
+import org.unifize.discountplatform.engine.DiscountCalculator;
+import org.unifize.discountplatform.engine.RuleSnapshot;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Reprices a cart dump against one rule snapshot, streaming from input file to output file.
+ *
+ * The input is read through a memory-mapped window and cut into chunks of whole records
+ * (see {@link CartRecordFormat}). Workers parse and price a chunk at a time and render its
+ * results; the caller thread writes rendered chunks in input order. At most
+ * maxPendingChunks chunks are in flight: once that many are queued, the reader waits for
+ * the oldest to be written, so memory stays flat whatever the size of the input and a slow
+ * disk slows the whole pipeline rather than filling the heap.
+ *
+ * Results are written in the input's layout, one per cart: NDJSON objects with cartId,
+ * originalTotal, finalPrice, savings, ruleVersion and discounts, or CSV rows under the
+ * header {@code cart_id,original_total,final_price,savings,discounts}. Amounts are rupees.
+ */
+public final class RepricingPipeline {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final DiscountCalculator calculator;
+    private final RuleSnapshot rules;
+    private final CartRecordFormat format;
+    private final int parallelism;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+    private final Consumer<RepricingStats> progress;
+    private final ThreadLocal<JsonReader> jsonReaders = ThreadLocal.withInitial(() -> new JsonReader(null));
+
+    private RepricingPipeline(Builder builder) {
+        this.calculator = builder.calculator;
+        this.rules = builder.rules;
+        this.format = builder.format;
+        this.parallelism = builder.parallelism;
+        this.chunkSize = builder.chunkSize;
+        this.maxPendingChunks = builder.maxPendingChunks > 0 ? builder.maxPendingChunks : 2 * builder.parallelism;
+        this.progress = builder.progress;
+    }
+
+    /**
+     * Reprice every cart in the input, replacing the output file.
+     *
+     * @return Totals of the run
+     * @throws IOException if a file cannot be read or written, or a record is malformed;
+     *                     the message names the line
+     */
+    public RepricingStats run(Path input, Path output) throws IOException {
+        CartRecordFormat layout = format != null ? format : CartRecordFormat.of(input);
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "repricing-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), OUTPUT_BUFFER_SIZE)) {
+            RecordChunker chunker = new RecordChunker(channel, chunkSize);
+            CartRecords.CsvLayout csv = null;
+            if (layout == CartRecordFormat.CSV) {
+                String header = chunker.readLine();
+                if (header != null) {
+                    csv = parseHeader(input, header);
+                    chunker.groupBy(csv);
+                }
+                out.write(CartRecords.CSV_RESULT_HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+
+            Progress written = new Progress(start);
+            ArrayDeque<Future<PricedChunk>> pending = new ArrayDeque<>();
+            for (RecordChunker.Chunk chunk; (chunk = chunker.next()) != null; ) {
+                RecordChunker.Chunk next = chunk;
+                CartRecords.CsvLayout columns = csv;
+                pending.add(workers.submit(() -> price(input, next, columns)));
+                if (pending.size() >= maxPendingChunks) {
+                    written.write(await(pending.poll()), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                written.write(await(pending.poll()), out);
+            }
+            return written.stats();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static CartRecords.CsvLayout parseHeader(Path input, String header) throws IOException {
+        try {
+            return CartRecords.CsvLayout.of(header);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(input + ":1: " + e.getMessage(), e);
+        }
+    }
+
+    private PricedChunk price(Path input, RecordChunker.Chunk chunk, CartRecords.CsvLayout csv) throws IOException {
+        String text = chunk.text();
+        StringBuilder rendered = new StringBuilder(text.length());
+        long line = chunk.getFirstLine();
+        long failed = line;
+        int carts = 0;
+        // Rows of the CSV cart being collected, and the line it starts on
+        List<List<String>> rows = new ArrayList<>();
+        long cartLine = line;
+        String cartId = null;
+        int at = 0;
+        try {
+            while (at < text.length()) {
+                int end = text.indexOf('\n', at);
+                String record = text.substring(at, end < 0 ? text.length() : end);
+                at = end < 0 ? text.length() : end + 1;
+                long number = line++;
+                failed = number;
+                if (record.isBlank()) {
+                    continue;
+                }
+                if (csv == null) {
+                    Map<String, Object> fields = jsonReaders.get().reset(new StringReader(record)).readObject();
+                    Cart cart = CartRecords.fromJson(fields);
+                    CartRecords.appendJson(rendered, cart, calculator.calculate(cart, rules));
+                    carts++;
+                } else {
+                    List<String> row = CartRecords.csvFields(record);
+                    String id = csv.cartId(row);
+                    if (!rows.isEmpty() && !Objects.equals(cartId, id)) {
+                        failed = cartLine;
+                        carts += priceCsv(csv, rows, rendered);
+                    }
+                    if (rows.isEmpty()) {
+                        cartLine = number;
+                    }
+                    cartId = id;
+                    rows.add(row);
+                }
+            }
+            if (!rows.isEmpty()) {
+                failed = cartLine;
+                carts += priceCsv(csv, rows, rendered);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IOException(input + ":" + failed + ": " + e.getMessage(), e);
+        }
+        return new PricedChunk(rendered.toString().getBytes(StandardCharsets.UTF_8), carts, chunk.getLength());
+    }
+
+    private int priceCsv(CartRecords.CsvLayout csv, List<List<String>> rows, StringBuilder rendered) {
+        Cart cart = csv.toCart(rows);
+        CartRecords.appendCsv(rendered, cart, calculator.calculate(cart, rules));
+        rows.clear();
+        return 1;
+    }
+
+    private static PricedChunk await(Future<PricedChunk> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Repricing interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Results of one chunk, rendered and ready to write.
+     */
+    private static final class PricedChunk {
+        final byte[] output;
+        final int carts;
+        final int bytesRead;
+
+        PricedChunk(byte[] output, int carts, int bytesRead) {
+            this.output = output;
+            this.carts = carts;
+            this.bytesRead = bytesRead;
+        }
+    }
+
+    /**
+     * Totals of the chunks written so far, reported to the progress listener once per
+     * interval.
+     */
+    private final class Progress {
+        private final long start;
+        private long carts;
+        private long bytesRead;
+        private long lastReport;
+
+        Progress(long start) {
+            this.start = start;
+            this.lastReport = start;
+        }
+
+        void write(PricedChunk chunk, OutputStream out) throws IOException {
+            out.write(chunk.output);
+            carts += chunk.carts;
+            bytesRead += chunk.bytesRead;
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                progress.accept(new RepricingStats(carts, bytesRead, now - start));
+            }
+        }
+
+        RepricingStats stats() {
+            return new RepricingStats(carts, bytesRead, System.nanoTime() - start);
+        }
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public static class Builder {
+        private DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.OFF);
+        private RuleSnapshot rules;
+        private CartRecordFormat format;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private int maxPendingChunks;
+        private Consumer<RepricingStats> progress;
+
+        /**
+         * Calculator to price with; defaults to one without reasoning.
+         */
+        public Builder calculator(DiscountCalculator calculator) { this.calculator = calculator; return this; }
+        public Builder rules(RuleSnapshot rules) { this.rules = rules; return this; }
+
+        /**
+         * Input layout; defaults to the one named by the input's extension.
+         */
+        public Builder format(CartRecordFormat format) { this.format = format; return this; }
+        public Builder parallelism(int parallelism) { this.parallelism = parallelism; return this; }
+
+        /**
+         * Number of input lines priced by one task.
+         */
+        public Builder chunkSize(int chunkSize) { this.chunkSize = chunkSize; return this; }
+
+        /**
+         * Chunks read ahead of the writer; defaults to twice the parallelism.
+         */
+        public Builder maxPendingChunks(int maxPendingChunks) { this.maxPendingChunks = maxPendingChunks; return this; }
+
+        /**
+         * Listener called on the caller thread about once a second with the totals so far.
+         */
+        public Builder progress(Consumer<RepricingStats> progress) { this.progress = progress; return this; }
+
+        public RepricingPipeline build() {
+            Objects.requireNonNull(calculator, "calculator");
+            Objects.requireNonNull(rules, "rules");
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be positive, was " + parallelism);
+            }
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+            }
+            if (maxPendingChunks < 0) {
+                throw new IllegalArgumentException("Pending chunks must not be negative, was " + maxPendingChunks);
+            }
+            return new RepricingPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.unifize.discountplatform.io;
+
+import java.time.Duration;
+
+/**
+ * Progress of a {@link RepricingPipeline} run: carts written so far and their rate.
+ */
+public final class RepricingStats {
+
+    private final long carts;
+    private final long bytesRead;
+    private final long elapsedNanos;
+
+    RepricingStats(long carts, long bytesRead, long elapsedNanos) {
+        this.carts = carts;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return Carts priced and written to the output
+     */
+    public long getCarts() {
+        return carts;
+    }
+
+    /**
+     * @return Input bytes behind the carts written
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    /**
+     * @return Average carts written per second since the run started
+     */
+    public double getCartsPerSecond() {
+        return elapsedNanos == 0 ? 0 : carts * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d carts in %.1f s (%,.0f carts/s, %.1f MB/s)", carts, elapsedNanos / 1e9,
+                getCartsPerSecond(), elapsedNanos == 0 ? 0 : bytesRead * 1e3 / elapsedNanos);
+    }
+}
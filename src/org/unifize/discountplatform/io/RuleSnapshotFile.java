@@ -0,0 +1,369 @@
+package org.unifize.discountplatform.io;
+
+import org.unifize.discountplatform.domain.Money;
+import org.unifize.discountplatform.domain.PaymentMode;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Compact binary rule snapshot, written once and loaded through a memory-mapped file.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header      magic, format version, rule count, string count,
+ *               strings offset (long), exclusions offset (long)        32 bytes
+ *   records     one fixed-width record per rule, in rule-set order      96 bytes each
+ *   exclusions  string ids of voucher excluded brands                    4 bytes each
+ *   strings     end offset of each string, then their UTF-8 bytes
+ * </pre>
+ * Every string field is an index into the string dictionary (-1 for null), so repeated
+ * brands, categories and banks are stored and decoded once. Timestamps keep second
+ * precision (UTC), as do validity windows. Older files are still read: version 1 records
+ * (72 bytes) predate stacking flags and exclusive groups, so their rules are stackable, and
+ * version 2 records (80 bytes) predate validity windows, so their rules are always valid.
+ *
+ * Only the four built-in rule types can be written.
+ */
+public final class RuleSnapshotFile {
+
+    private static final int MAGIC = 0x44534331; // "DSC1"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 96;
+    private static final int V2_RECORD_SIZE = 80;
+    private static final int V1_RECORD_SIZE = 72;
+    private static final int NO_STRING = -1;
+    private static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final byte BRAND = 1;
+    private static final byte CATEGORY = 2;
+    private static final byte VOUCHER = 3;
+    private static final byte PAYMENT = 4;
+
+    private static final byte NOT_STACKABLE = 1;
+
+    private RuleSnapshotFile() {} // Prevent instantiation
+
+    /**
+     * Write the rules to a snapshot file, replacing any existing file.
+     *
+     * @throws IllegalArgumentException if a rule is not one of the built-in types
+     */
+    public static void write(Path file, Collection<? extends DiscountStrategy> rules) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<Integer> exclusions = new ArrayList<>();
+
+        ByteBuffer records = ByteBuffer.allocate(Math.multiplyExact(rules.size(), RECORD_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (DiscountStrategy rule : rules) {
+            writeRecord(records, rule, dictionary, strings, exclusions);
+        }
+        records.flip();
+
+        ByteBuffer exclusionBytes = ByteBuffer.allocate(exclusions.size() * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int stringId : exclusions) {
+            exclusionBytes.putInt(stringId);
+        }
+        exclusionBytes.flip();
+
+        byte[][] encoded = new byte[strings.size()][];
+        int stringBytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringBytes += encoded[i].length;
+        }
+        ByteBuffer stringTable = ByteBuffer.allocate(encoded.length * Integer.BYTES + stringBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int end = 0;
+        for (byte[] bytes : encoded) {
+            end += bytes.length;
+            stringTable.putInt(end);
+        }
+        for (byte[] bytes : encoded) {
+            stringTable.put(bytes);
+        }
+        stringTable.flip();
+
+        long exclusionsOffset = HEADER_SIZE + (long) records.remaining();
+        long stringsOffset = exclusionsOffset + exclusionBytes.remaining();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(rules.size())
+                .putInt(strings.size())
+                .putLong(stringsOffset)
+                .putLong(exclusionsOffset);
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {header, records, exclusionBytes, stringTable};
+            while (stringTable.hasRemaining()) {
+                channel.write(sections);
+            }
+        }
+    }
+
+    /**
+     * Map a snapshot file and decode its rules, in the order they were written.
+     *
+     * @throws IOException if the file is not a snapshot of a supported format version
+     */
+    public static List<DiscountStrategy> read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + ": snapshot larger than 2 GB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + ": not a rule snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException(file + ": unsupported snapshot version " + version);
+        }
+        int recordSize = version == 1 ? V1_RECORD_SIZE : version == 2 ? V2_RECORD_SIZE : RECORD_SIZE;
+        int ruleCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        int stringsOffset = (int) buffer.getLong(16);
+        int exclusionsOffset = (int) buffer.getLong(24);
+
+        Decoder decoder = new Decoder(buffer, stringsOffset, stringCount);
+        List<DiscountStrategy> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(readRecord(buffer, i, HEADER_SIZE + i * recordSize, version, exclusionsOffset, decoder));
+        }
+        return rules;
+    }
+
+    private static void writeRecord(ByteBuffer out, DiscountStrategy rule, Map<String, Integer> dictionary,
+                                    List<String> strings, List<Integer> exclusions) {
+        if (!(rule instanceof AbstractDiscountStrategy)) {
+            throw new IllegalArgumentException(rule.getId() + ": cannot snapshot custom rule type");
+        }
+        AbstractDiscountStrategy base = (AbstractDiscountStrategy) rule;
+
+        byte type;
+        String key = null;
+        String mode = null;
+        String first = null;
+        String second = null;
+        String third = null;
+        int exclusionStart = exclusions.size();
+        long minCartValue = NO_VALUE;
+
+        if (rule instanceof BrandDiscount) {
+            type = BRAND;
+            key = ((BrandDiscount) rule).getTargetBrand();
+        } else if (rule instanceof CategoryDiscount) {
+            type = CATEGORY;
+            key = ((CategoryDiscount) rule).getTargetCategory();
+        } else if (rule instanceof VoucherDiscount) {
+            VoucherDiscount voucher = (VoucherDiscount) rule;
+            type = VOUCHER;
+            key = voucher.getVoucherCode();
+            first = voucher.getMinCustomerTier();
+            for (String brand : voucher.getExcludedBrands()) {
+                exclusions.add(intern(brand, dictionary, strings));
+            }
+        } else if (rule instanceof PaymentDiscount) {
+            PaymentDiscount payment = (PaymentDiscount) rule;
+            type = PAYMENT;
+            key = payment.getRequiredBank();
+            mode = payment.getPaymentMode() != null ? payment.getPaymentMode().name() : null;
+            first = payment.getRequiredCardType();
+            second = payment.getRequiredUpiApp();
+            third = payment.getRequiredWalletProvider();
+            minCartValue = paise(payment.getMinCartValue());
+        } else {
+            throw new IllegalArgumentException(rule.getId() + ": cannot snapshot custom rule type");
+        }
+
+        out.put(type)
+                .put(base.isStackable() ? 0 : NOT_STACKABLE)
+                .putShort((short) base.getDiscountPercent())
+                .putInt(intern(base.getId(), dictionary, strings))
+                .putInt(intern(base.getDescription(), dictionary, strings))
+                .putInt(intern(key, dictionary, strings))
+                .putInt(intern(mode, dictionary, strings))
+                .putInt(intern(first, dictionary, strings))
+                .putInt(intern(second, dictionary, strings))
+                .putInt(intern(third, dictionary, strings))
+                .putInt(exclusionStart)
+                .putInt(exclusions.size() - exclusionStart)
+                .putLong(paise(base.getMaxDiscountCap()))
+                .putLong(minCartValue)
+                .putLong(epochSeconds(base.getCreatedDateTime()))
+                .putLong(epochSeconds(base.getLastUpdatedDateTime()))
+                .putInt(intern(base.getExclusiveGroup(), dictionary, strings))
+                .putInt(0) // reserved
+                .putLong(epochSeconds(base.getValidFrom()))
+                .putLong(epochSeconds(base.getValidTo()));
+    }
+
+    private static DiscountStrategy readRecord(ByteBuffer in, int index, int at, int version,
+                                               int exclusionsOffset, Decoder decoder) throws IOException {
+        byte type = in.get(at);
+        boolean stackable = (in.get(at + 1) & NOT_STACKABLE) == 0;
+        int percent = in.getShort(at + 2);
+        String id = decoder.string(in.getInt(at + 4));
+        String description = decoder.string(in.getInt(at + 8));
+        String key = decoder.string(in.getInt(at + 12));
+        String mode = decoder.string(in.getInt(at + 16));
+        String first = decoder.string(in.getInt(at + 20));
+        String second = decoder.string(in.getInt(at + 24));
+        String third = decoder.string(in.getInt(at + 28));
+        int exclusionStart = in.getInt(at + 32);
+        int exclusionCount = in.getInt(at + 36);
+        Money cap = money(in.getLong(at + 40));
+        Money minCartValue = money(in.getLong(at + 48));
+        LocalDateTime created = decoder.dateTime(in.getLong(at + 56));
+        LocalDateTime updated = decoder.dateTime(in.getLong(at + 64));
+        String group = version > 1 ? decoder.string(in.getInt(at + 72)) : null;
+        LocalDateTime validFrom = version > 2 ? decoder.dateTime(in.getLong(at + 80)) : null;
+        LocalDateTime validTo = version > 2 ? decoder.dateTime(in.getLong(at + 88)) : null;
+
+        switch (type) {
+            case BRAND:
+                return common(BrandDiscount.builder(), id, description, percent, cap, created, updated,
+                        stackable, group, validFrom, validTo)
+                        .targetBrand(key)
+                        .build();
+            case CATEGORY:
+                return common(CategoryDiscount.builder(), id, description, percent, cap, created, updated,
+                        stackable, group, validFrom, validTo)
+                        .targetCategory(key)
+                        .build();
+            case VOUCHER:
+                Set<String> excluded = new HashSet<>();
+                for (int i = 0; i < exclusionCount; i++) {
+                    excluded.add(decoder.string(in.getInt(exclusionsOffset + (exclusionStart + i) * Integer.BYTES)));
+                }
+                return common(VoucherDiscount.builder(), id, description, percent, cap, created, updated,
+                        stackable, group, validFrom, validTo)
+                        .voucherCode(key)
+                        .minCustomerTier(first)
+                        .excludedBrands(excluded)
+                        .build();
+            case PAYMENT:
+                return common(PaymentDiscount.builder(), id, description, percent, cap, created, updated,
+                        stackable, group, validFrom, validTo)
+                        .paymentMode(mode != null ? PaymentMode.valueOf(mode) : null)
+                        .requiredBank(key)
+                        .requiredCardType(first)
+                        .requiredUpiApp(second)
+                        .requiredWalletProvider(third)
+                        .minCartValue(minCartValue)
+                        .build();
+            default:
+                throw new IOException("Unknown rule type " + type + " in record " + index);
+        }
+    }
+
+    private static <B extends AbstractDiscountStrategy.AbstractBuilder<B>> B common(
+            B builder, String id, String description, int percent, Money cap,
+            LocalDateTime created, LocalDateTime updated, boolean stackable, String group,
+            LocalDateTime validFrom, LocalDateTime validTo) {
+        return builder
+                .id(id)
+                .description(description)
+                .discountPercent(percent)
+                .maxDiscountCap(cap)
+                .createdDateTime(created)
+                .lastUpdatedDateTime(updated)
+                .stackable(stackable)
+                .exclusiveGroup(group)
+                .validFrom(validFrom)
+                .validTo(validTo);
+    }
+
+    private static int intern(String value, Map<String, Integer> dictionary, List<String> strings) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer existing = dictionary.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int id = strings.size();
+        strings.add(value);
+        dictionary.put(value, id);
+        return id;
+    }
+
+    private static long paise(Money money) {
+        return money != null ? money.getPaise() : NO_VALUE;
+    }
+
+    private static Money money(long paise) {
+        return paise != NO_VALUE ? Money.ofPaise(paise) : null;
+    }
+
+    private static long epochSeconds(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toEpochSecond(ZoneOffset.UTC) : NO_VALUE;
+    }
+
+    /**
+     * Decoding state for one read. Dictionary strings are decoded on first use and shared;
+     * rules loaded in bulk mostly carry the same timestamps, so the last one is reused.
+     */
+    private static final class Decoder {
+        private final ByteBuffer buffer;
+        private final int offsetsAt;
+        private final int bytesAt;
+        private final String[] decoded;
+        private long lastEpochSeconds = NO_VALUE;
+        private LocalDateTime lastDateTime;
+
+        Decoder(ByteBuffer buffer, int offset, int count) {
+            this.buffer = buffer;
+            this.offsetsAt = offset;
+            this.bytesAt = offset + count * Integer.BYTES;
+            this.decoded = new String[count];
+        }
+
+        String string(int id) {
+            if (id == NO_STRING) {
+                return null;
+            }
+            String value = decoded[id];
+            if (value == null) {
+                int start = id == 0 ? 0 : buffer.getInt(offsetsAt + (id - 1) * Integer.BYTES);
+                int end = buffer.getInt(offsetsAt + id * Integer.BYTES);
+                byte[] bytes = new byte[end - start];
+                buffer.get(bytesAt + start, bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+                decoded[id] = value;
+            }
+            return value;
+        }
+
+        LocalDateTime dateTime(long epochSeconds) {
+            if (epochSeconds == NO_VALUE) {
+                return null;
+            }
+            if (epochSeconds != lastEpochSeconds) {
+                lastDateTime = LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+                lastEpochSeconds = epochSeconds;
+            }
+            return lastDateTime;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.unifize.discountplatform.sample;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.payment.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+/**
+ * The cart and rules from the assignment example.
+ * Shared by Main and the benchmarks so both exercise the same baseline case.
+ */
+public final class AssignmentScenario {
+
+    private AssignmentScenario() {} // Prevent instantiation
+
+    public static Cart createCart() {
+        // Create cart items from the assignment example
+        List<CartItem> items = Arrays.asList(
+                new CartItem("PUMA-001", "PUMA T-shirt", "PUMA", "T-shirts",
+                        Money.ofRupees(999), 2),
+                new CartItem("NIKE-001", "Nike Shoes", "Nike", "Footwear",
+                        Money.ofRupees(4999), 1)
+        );
+
+        // Create payment method using factory (NEW - Factory Pattern)
+        PaymentMethod payment = PaymentMethodFactory.createCreditCard("ICICI", "VISA");
+
+        return new Cart("cart-123", items, payment, "cust-456", "STANDARD");
+    }
+
+    public static List<DiscountStrategy> createDiscountStrategies() {
+        return Arrays.asList(
+                // 1. Brand discount: 40% off PUMA
+                BrandDiscount.builder()
+                        .id("BRAND_PUMA_40")
+                        .description("40% off PUMA items")
+                        .discountPercent(40)
+                        .targetBrand("PUMA")
+                        .build(),
+
+                // 2. Category discount: 10% off T-shirts (stackable)
+                CategoryDiscount.builder()
+                        .id("CAT_TSHIRT_10")
+                        .description("10% off T-shirts")
+                        .discountPercent(10)
+                        .targetCategory("T-shirts")
+                        .build(),
+
+                // 3. Voucher: SUPER69 - 69% off, excludes Nike, max cap Rs.500
+                // NEW: Now includes voucherCode field
+                VoucherDiscount.builder()
+                        .id("SUPER69")
+                        .voucherCode("SUPER69")
+                        .description("69% off with SUPER69 voucher")
+                        .discountPercent(69)
+                        .excludedBrands(new HashSet<>(Arrays.asList("Nike")))
+                        .maxDiscountCap(Money.ofRupees(500))
+                        .build(),
+
+                // 4. Payment offer: 10% ICICI, max Rs.200, min cart Rs.2000
+                // NEW: Now includes paymentMode field
+                PaymentDiscount.builder()
+                        .id("ICICI_10")
+                        .paymentMode(PaymentMode.CREDIT_CARD)
+                        .description("10% instant discount on ICICI credit cards")
+                        .discountPercent(10)
+                        .requiredBank("ICICI")
+                        .maxDiscountCap(Money.ofRupees(200))
+                        .minCartValue(Money.ofRupees(2000))
+                        .build()
+        );
+    }
+}
@@ -0,0 +1,48 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchExecutorTest {
+
+    @Test
+    void pricesInInputOrderOnTheCallersPool() {
+        RandomRules random = new RandomRules(47);
+        DiscountPlan plan = DiscountPlan.compile(random.rules(40));
+        List<Cart> carts = new ArrayList<>();
+        for (int c = 0; c < 500; c++) {
+            carts.add(random.cart("cart-" + c, 5, 3));
+        }
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            List<DiscountResult> common = calculator.calculateBatch(carts, plan,
+                    BatchOptions.builder().chunkSize(16).build());
+            List<DiscountResult> owned = calculator.calculateBatch(carts, plan,
+                    BatchOptions.builder().chunkSize(16).pool(pool).build());
+
+            for (int c = 0; c < carts.size(); c++) {
+                String expected = Results.describe(calculator.calculate(carts.get(c), plan));
+                assertEquals(expected, Results.describe(common.get(c)));
+                assertEquals(expected, Results.describe(owned.get(c)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsVirtualThreadsWhenTheRuntimeLacksThem() {
+        BatchOptions.Builder builder = BatchOptions.builder().mode(BatchOptions.Mode.VIRTUAL_THREADS);
+        if (Runtime.version().feature() >= 21) {
+            assertEquals(BatchOptions.Mode.VIRTUAL_THREADS, builder.build().getMode());
+        } else {
+            assertThrows(IllegalArgumentException.class, builder::build);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.BrandDiscount;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CampaignSimulatorTest {
+
+    @Test
+    void reportsWhatPricingEachCartWithEachRuleSetGives() {
+        RandomRules random = new RandomRules(53);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int round = 0; round < 20; round++) {
+                List<DiscountStrategy> baseline = random.rules(5 + random.random().nextInt(50));
+                List<DiscountStrategy> candidate = new ArrayList<>(baseline);
+                for (int change = 0; change < 1 + random.random().nextInt(4); change++) {
+                    int position = random.random().nextInt(candidate.size());
+                    switch (random.random().nextInt(3)) {
+                        case 0:
+                            candidate.set(position, random.rule("changed-" + change));
+                            break;
+                        case 1:
+                            candidate.add(random.rule("added-" + change));
+                            break;
+                        default:
+                            candidate.remove(position);
+                            break;
+                    }
+                }
+                List<Cart> carts = new ArrayList<>();
+                for (int c = 0; c < 200; c++) {
+                    carts.add(random.cart("cart-" + c, 5, 3));
+                }
+
+                SimulationReport report = new CampaignSimulator(baseline, candidate,
+                        BatchOptions.builder().chunkSize(16).pool(pool).build()).simulate(carts);
+
+                assertReport(baseline, candidate, carts, report);
+                // A corpus that is not a random-access list is read in blocks, with the same totals
+                assertEquals(report.toString(),
+                        new CampaignSimulator(baseline, candidate).simulate(new LinkedList<>(carts)).toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void pricesEachCartWithBothSetsWhenSharedRulesChangeOrder() {
+        RandomRules random = new RandomRules(59);
+        DiscountStrategy deep = brandRule("deep", "Br1", 40);
+        DiscountStrategy light = brandRule("light", "Br1", 5);
+        List<DiscountStrategy> baseline = List.of(deep, light);
+        // Same rules and priority, listed the other way round, plus a rule no cart matches
+        List<DiscountStrategy> candidate = List.of(light, deep, brandRule("unused", "none", 10));
+        List<Cart> carts = new ArrayList<>();
+        for (int c = 0; c < 50; c++) {
+            carts.add(random.cart("cart-" + c, 5, 3));
+        }
+
+        SimulationReport report = new CampaignSimulator(baseline, candidate).simulate(carts);
+
+        assertReport(baseline, candidate, carts, report);
+        assertNotEquals(report.getStrategies().get("deep").getBaselineDiscountPaise(),
+                report.getStrategies().get("deep").getCandidateDiscountPaise());
+    }
+
+    private static DiscountStrategy brandRule(String id, String brand, int percent) {
+        return BrandDiscount.builder().id(id).description("brand " + id)
+                .discountPercent(percent).targetBrand(brand).build();
+    }
+
+    static void assertReport(List<DiscountStrategy> baseline, List<DiscountStrategy> candidate, List<Cart> carts,
+                             SimulationReport report) {
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.OFF);
+        DiscountPlan baselinePlan = DiscountPlan.compile(baseline);
+        DiscountPlan candidatePlan = DiscountPlan.compile(candidate);
+        long affected = 0;
+        long baselineDiscount = 0;
+        long candidateDiscount = 0;
+        Map<String, long[]> impacts = new TreeMap<>();
+        for (Cart cart : carts) {
+            DiscountResult before = calculator.calculate(cart, baselinePlan);
+            DiscountResult after = calculator.calculate(cart, candidatePlan);
+            if (!before.getFinalPrice().equals(after.getFinalPrice())) {
+                affected++;
+            }
+            baselineDiscount += before.getTotalSavings().getPaise();
+            candidateDiscount += after.getTotalSavings().getPaise();
+            for (AppliedDiscount applied : before.getAppliedDiscounts()) {
+                long[] impact = impacts.computeIfAbsent(applied.getDiscountId(), id -> new long[4]);
+                impact[0]++;
+                impact[1] += applied.getAmount().getPaise();
+            }
+            for (AppliedDiscount applied : after.getAppliedDiscounts()) {
+                long[] impact = impacts.computeIfAbsent(applied.getDiscountId(), id -> new long[4]);
+                impact[2]++;
+                impact[3] += applied.getAmount().getPaise();
+            }
+        }
+
+        assertEquals(carts.size(), report.getCarts());
+        assertEquals(affected, report.getAffectedCarts());
+        assertEquals(baselineDiscount, report.getBaselineDiscount().getPaise());
+        assertEquals(candidateDiscount, report.getCandidateDiscount().getPaise());
+        assertEquals(carts.size(), report.getPriceDeltas().getCount());
+        assertEquals(carts.size() - affected, report.getPriceDeltas().getUnchangedCount());
+        for (Map.Entry<String, long[]> entry : impacts.entrySet()) {
+            SimulationReport.StrategyImpact impact = report.getStrategies().get(entry.getKey());
+            long[] expected = entry.getValue();
+            assertArrayEquals(expected, new long[]{impact.getBaselineApplications(), impact.getBaselineDiscountPaise(),
+                    impact.getCandidateApplications(), impact.getCandidateDiscountPaise()}, entry.getKey());
+        }
+    }
+}
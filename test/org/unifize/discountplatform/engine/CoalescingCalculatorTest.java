@@ -0,0 +1,121 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+import org.unifize.discountplatform.sample.AssignmentScenario;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingCalculatorTest {
+
+    @Test
+    void sharesOneCalculationBetweenCallersOfTheSameCart() throws Exception {
+        RuleSnapshot snapshot = new RuleRepository(AssignmentScenario.createDiscountStrategies()).current();
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        CoalescingCalculator coalescing = new CoalescingCalculator(
+                new DiscountCalculator(ReasoningLevel.SUMMARY), 8, tasks::add);
+
+        CompletableFuture<DiscountResult> first = coalescing.calculateAsync(cart("page"), snapshot);
+        CompletableFuture<DiscountResult> second = coalescing.calculateAsync(cart("mini-cart"), snapshot);
+        CompletableFuture<DiscountResult> cancelled = coalescing.calculateAsync(cart("prefetch"), snapshot);
+        FutureTask<DiscountResult> waiting = new FutureTask<>(() -> coalescing.calculate(cart("checkout"), snapshot));
+        new Thread(waiting).start();
+        awaitCoalesced(coalescing, 3);
+        cancelled.cancel(false);
+
+        assertEquals(1, tasks.size());
+        assertEquals(1, coalescing.getInFlightCount());
+        tasks.poll().run();
+
+        DiscountResult result = first.get();
+        assertSame(result, second.get());
+        assertSame(result, waiting.get(10, TimeUnit.SECONDS));
+        assertEquals(Results.describe(new DiscountCalculator(ReasoningLevel.SUMMARY).calculate(cart("page"), snapshot)),
+                Results.describe(result));
+        assertEquals(1, coalescing.getComputedCount());
+        assertEquals(0, coalescing.getInFlightCount());
+    }
+
+    @Test
+    void sharesOnlyBetweenCallersOfTheSameSnapshot() {
+        RuleRepository repository = new RuleRepository(AssignmentScenario.createDiscountStrategies());
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        CoalescingCalculator coalescing = new CoalescingCalculator(
+                new DiscountCalculator(ReasoningLevel.OFF), 8, tasks::add);
+
+        CompletableFuture<DiscountResult> before = coalescing.calculateAsync(cart("a"), repository);
+        repository.removeRule("SUPER69");
+        CompletableFuture<DiscountResult> after = coalescing.calculateAsync(cart("b"), repository);
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+
+        assertEquals(2, coalescing.getComputedCount());
+        assertEquals(0, coalescing.getCoalescedCount());
+        assertNotEquals(before.join().getFinalPrice(), after.join().getFinalPrice());
+    }
+
+    @Test
+    void everyCallerOfAFailedCalculationSeesItsException() throws Exception {
+        List<DiscountStrategy> rules = new ArrayList<>(AssignmentScenario.createDiscountStrategies());
+        rules.add(new FailingRule());
+        RuleSnapshot snapshot = new RuleRepository(rules).current();
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        CoalescingCalculator coalescing = new CoalescingCalculator(
+                new DiscountCalculator(ReasoningLevel.OFF), 8, tasks::add);
+
+        CompletableFuture<DiscountResult> first = coalescing.calculateAsync(cart("page"), snapshot);
+        CompletableFuture<DiscountResult> second = coalescing.calculateAsync(cart("mini-cart"), snapshot);
+        FutureTask<DiscountResult> waiting = new FutureTask<>(() -> coalescing.calculate(cart("checkout"), snapshot));
+        new Thread(waiting).start();
+        awaitCoalesced(coalescing, 2);
+        tasks.poll().run();
+
+        for (Future<DiscountResult> caller : Arrays.asList(first, second, waiting)) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> caller.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+        }
+        assertEquals(0, coalescing.getInFlightCount());
+        // A failure is not kept: the next caller computes again
+        assertThrows(IllegalStateException.class, () -> coalescing.calculate(cart("retry"), snapshot));
+        assertEquals(2, coalescing.getComputedCount());
+    }
+
+    private static Cart cart(String cartId) {
+        Cart sample = AssignmentScenario.createCart();
+        return new Cart(cartId, sample.getItems(), sample.getPaymentMethod(), sample.getCustomerId(),
+                sample.getCustomerTier());
+    }
+
+    private static void awaitCoalesced(CoalescingCalculator coalescing, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (coalescing.getCoalescedCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "callers never joined the flight");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * A custom rule whose pricing always fails.
+     */
+    private static final class FailingRule implements DiscountStrategy {
+        @Override public String getId() { return "FAILING"; }
+        @Override public DiscountType getType() { return DiscountType.PAYMENT; }
+        @Override public int getPriority() { return DiscountType.PAYMENT.getPriority(); }
+        @Override public String getDescription() { return "Fails to price"; }
+        @Override public int getDiscountPercent() { return 0; }
+        @Override public Money getMaxDiscountCap() { return null; }
+        @Override public LocalDateTime getCreatedDateTime() { return null; }
+        @Override public LocalDateTime getLastUpdatedDateTime() { return null; }
+
+        @Override
+        public Money apply(Cart cart, Map<CartItem, Money> itemPrices, DiscountResult.Builder resultBuilder) {
+            throw new IllegalStateException("Pricing service unavailable");
+        }
+    }
+}
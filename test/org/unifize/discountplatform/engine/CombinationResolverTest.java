@@ -0,0 +1,115 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CombinationResolverTest {
+
+    @Test
+    void choosesTheCheapestCombinationLikeBruteForce() {
+        RandomRules random = new RandomRules(41);
+        int resolved = 0;
+        for (int round = 0; round < 300; round++) {
+            List<DiscountStrategy> rules = random.rules(4 + random.random().nextInt(10));
+            if (random.random().nextBoolean()) {
+                rules.add(thresholdOffer(random, "T" + round));
+            }
+            List<DiscountStrategy> ordered = DiscountPlan.compile(rules).getStrategies();
+            if (!CombinationResolver.hasExclusiveRules(ordered)) {
+                continue;
+            }
+            for (int c = 0; c < 10; c++) {
+                Cart cart = random.cart("cart-" + c, 5, 3);
+                PriceLedger start = new PriceLedger(cart);
+                CombinationResolver.Resolution resolution = CombinationResolver.resolve(cart, ordered, start);
+
+                boolean[] applied = new boolean[ordered.size()];
+                for (int i = 0; i < applied.length; i++) {
+                    applied[i] = !resolution.excludes(i);
+                }
+                assertEquals(bruteForce(cart, ordered), total(cart, ordered, applied),
+                        "round " + round + ", " + cart.getCartId());
+                assertEquals(new PriceLedger(cart).total(), start.total());
+                resolved++;
+            }
+        }
+        assertTrue(resolved > 1000);
+    }
+
+    @Test
+    void skipsAGroupWhenEveryMemberCostsAPaymentOffersMinimum() {
+        Cart cart = new Cart("cart", Collections.singletonList(new CartItem("p", "shirt", "PUMA", "T-shirts",
+                Money.ofRupees(2100), 1)), new RandomRules(43).paymentMethod(), "cust", null);
+        DiscountStrategy brand = BrandDiscount.builder().id("PUMA_10").description("10% off PUMA")
+                .discountPercent(10).targetBrand("PUMA").exclusiveGroup("launch").build();
+        DiscountStrategy offer = PaymentDiscount.builder().id("ANY_20").description("20% off above 2000")
+                .discountPercent(20).paymentMode(cart.getPaymentMethod().getMode())
+                .minCartValue(Money.ofRupees(2000)).build();
+        List<DiscountStrategy> ordered = DiscountPlan.compile(Arrays.asList(brand, offer)).getStrategies();
+
+        CombinationResolver.Resolution resolution = CombinationResolver.resolve(cart, ordered, new PriceLedger(cart));
+
+        assertTrue(resolution.excludes(0));
+        assertFalse(resolution.excludes(1));
+        assertEquals("PUMA_10: Not applied, the cart saves more without it (exclusive group launch)",
+                resolution.reason(0));
+    }
+
+    private static DiscountStrategy thresholdOffer(RandomRules random, String id) {
+        return PaymentDiscount.builder().id(id).description("offer " + id)
+                .discountPercent(5 + random.random().nextInt(20))
+                .paymentMode(random.random().nextBoolean() ? PaymentMode.UPI : PaymentMode.CREDIT_CARD)
+                .minCartValue(Money.ofPaise(50_000 + random.random().nextInt(500_000)))
+                .stackable(random.random().nextBoolean())
+                .build();
+    }
+
+    /**
+     * @return Lowest total over every choice of at most one rule per exclusive group
+     */
+    private static long bruteForce(Cart cart, List<DiscountStrategy> ordered) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        boolean[] applied = new boolean[ordered.size()];
+        for (int i = 0; i < ordered.size(); i++) {
+            DiscountStrategy strategy = ordered.get(i);
+            if (CombinationResolver.isExclusive(strategy)) {
+                String group = strategy.getExclusiveGroup() != null
+                        ? strategy.getExclusiveGroup() : "priority " + strategy.getPriority();
+                groups.computeIfAbsent(group, g -> new ArrayList<>()).add(i);
+            } else {
+                applied[i] = true;
+            }
+        }
+        return cheapest(cart, ordered, new ArrayList<>(groups.values()), 0, applied);
+    }
+
+    private static long cheapest(Cart cart, List<DiscountStrategy> ordered, List<List<Integer>> groups,
+                                 int depth, boolean[] applied) {
+        if (depth == groups.size()) {
+            return total(cart, ordered, applied);
+        }
+        long best = cheapest(cart, ordered, groups, depth + 1, applied);
+        for (int member : groups.get(depth)) {
+            applied[member] = true;
+            best = Math.min(best, cheapest(cart, ordered, groups, depth + 1, applied));
+            applied[member] = false;
+        }
+        return best;
+    }
+
+    private static long total(Cart cart, List<DiscountStrategy> ordered, boolean[] applied) {
+        PriceLedger ledger = new PriceLedger(cart);
+        DiscountResult.Builder silent = DiscountResult.builder(ReasoningLevel.OFF);
+        for (int i = 0; i < ordered.size(); i++) {
+            if (applied[i]) {
+                ordered.get(i).apply(cart, ledger, silent);
+            }
+        }
+        return ledger.total();
+    }
+}
@@ -0,0 +1,71 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.BrandDiscount;
+import org.unifize.discountplatform.sample.AssignmentScenario;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiscountResultCacheTest {
+
+    @Test
+    void servesRepeatedCartsFromTheCache() {
+        RuleRepository repository = new RuleRepository(AssignmentScenario.createDiscountStrategies());
+        DiscountResultCache cache = new DiscountResultCache(100);
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY, cache);
+
+        DiscountResult first = calculator.calculate(AssignmentScenario.createCart(), repository);
+        // An equal cart built separately has the same key
+        DiscountResult second = calculator.calculate(AssignmentScenario.createCart(), repository);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void dropsEveryEntryWhenANewerSnapshotIsSeen() {
+        RuleRepository repository = new RuleRepository(AssignmentScenario.createDiscountStrategies());
+        DiscountResultCache cache = new DiscountResultCache(100);
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY, cache);
+        DiscountCalculator uncached = new DiscountCalculator(ReasoningLevel.SUMMARY);
+        Cart cart = AssignmentScenario.createCart();
+        RuleSnapshot before = repository.current();
+        DiscountResult old = calculator.calculate(cart, repository);
+
+        RuleSnapshot after = repository.putRule(BrandDiscount.builder()
+                .id("BRAND_PUMA_40").description("50% off PUMA items")
+                .discountPercent(50).targetBrand("PUMA").build());
+        DiscountResult current = calculator.calculate(cart, repository);
+
+        assertTrue(after.getVersion() > before.getVersion());
+        assertNotEquals(old.getFinalPrice(), current.getFinalPrice());
+        assertEquals(Results.describe(uncached.calculate(cart, after)), Results.describe(current));
+        assertEquals(after.getVersion(), current.getRuleVersion());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void bypassesTheCacheForAnOlderSnapshot() {
+        RuleRepository repository = new RuleRepository(AssignmentScenario.createDiscountStrategies());
+        DiscountResultCache cache = new DiscountResultCache(100);
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY, cache);
+        Cart cart = AssignmentScenario.createCart();
+        RuleSnapshot before = repository.current();
+        repository.removeRule("SUPER69");
+        DiscountResult current = calculator.calculate(cart, repository);
+
+        DiscountResult old = calculator.calculate(cart, before);
+        DiscountResult again = calculator.calculate(cart, before);
+
+        assertNotSame(old, again);
+        assertEquals(before.getVersion(), old.getRuleVersion());
+        assertEquals(new DiscountCalculator(ReasoningLevel.SUMMARY).calculate(cart, before).getFinalPrice(),
+                old.getFinalPrice());
+        assertSame(current, calculator.calculate(cart, repository));
+        assertEquals(1, cache.size());
+    }
+}
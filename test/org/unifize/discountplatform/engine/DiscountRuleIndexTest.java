@@ -0,0 +1,51 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.DiscountStrategy;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiscountRuleIndexTest {
+
+    @Test
+    void matchesTheLinearScanAtEveryReasoningLevel() {
+        RandomRules random = new RandomRules(23);
+        for (int round = 0; round < 30; round++) {
+            DiscountPlan plan = DiscountPlan.compile(random.rules(5 + random.random().nextInt(60)));
+            DiscountRuleIndex index = new DiscountRuleIndex(plan);
+            for (int c = 0; c < 40; c++) {
+                Cart cart = random.cart("cart-" + c, 6, 3);
+                Set<String> pruned = new HashSet<>();
+                for (DiscountStrategy strategy : plan.getStrategies()) {
+                    pruned.add(strategy.getId());
+                }
+                for (DiscountStrategy candidate : index.candidatesFor(cart)) {
+                    pruned.remove(candidate.getId());
+                }
+
+                for (ReasoningLevel level : ReasoningLevel.values()) {
+                    DiscountCalculator calculator = new DiscountCalculator(level);
+                    DiscountResult scanned = calculator.calculate(cart, plan);
+                    DiscountResult indexed = calculator.calculateDiscounts(cart, index);
+                    String context = cart.getCartId() + " at " + level;
+
+                    assertEquals(scanned.getFinalPrice(), indexed.getFinalPrice(), context);
+                    assertEquals(scanned.getAppliedDiscounts().toString(), indexed.getAppliedDiscounts().toString(),
+                            context);
+                    assertEquals(scanned.getReasoning(), indexed.getReasoning(), context);
+                    // Pruned rules cannot match the cart, so the index never reports why they were skipped
+                    List<String> expectedSkips = new ArrayList<>();
+                    for (String reason : scanned.getSkippedReasons()) {
+                        if (!pruned.contains(reason.substring(0, reason.indexOf(':')))) {
+                            expectedSkips.add(reason);
+                        }
+                    }
+                    assertEquals(expectedSkips, indexed.getSkippedReasons(), context);
+                }
+            }
+        }
+    }
+}
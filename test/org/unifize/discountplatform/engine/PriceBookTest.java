@@ -0,0 +1,145 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+import org.unifize.discountplatform.sample.AssignmentScenario;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceBookTest {
+
+    @Test
+    void matchesPlanCalculationAtEveryReasoningLevel() {
+        RandomRules random = new RandomRules(7);
+        for (int round = 0; round < 30; round++) {
+            DiscountPlan plan = DiscountPlan.compile(random.rules(5 + random.random().nextInt(40)));
+            PriceBook book = new PriceBook(plan.getStrategies());
+            // Quantities past the cached ones are priced on the fly
+            assertSameResults(random, plan, book, PriceBook.CACHED_QUANTITIES + 3);
+        }
+    }
+
+    @Test
+    void neverAppliesBookRulesMissingFromThePlan() {
+        RandomRules random = new RandomRules(11);
+        for (int round = 0; round < 30; round++) {
+            List<DiscountStrategy> rules = random.rules(10 + random.random().nextInt(30));
+            List<DiscountStrategy> planned = new ArrayList<>();
+            for (DiscountStrategy rule : rules) {
+                if (random.random().nextInt(3) != 0) {
+                    planned.add(rule);
+                }
+            }
+            assertSameResults(random, DiscountPlan.compile(planned), new PriceBook(rules), 4);
+        }
+    }
+
+    @Test
+    void runsPlanRulesTheBookDoesNotHoldInPriorityOrder() {
+        RandomRules random = new RandomRules(13);
+        for (int round = 0; round < 30; round++) {
+            List<DiscountStrategy> rules = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                rules.add(random.random().nextBoolean() ? random.brandRule("B" + i) : random.categoryRule("C" + i));
+            }
+            List<DiscountStrategy> held = new ArrayList<>();
+            for (DiscountStrategy rule : rules) {
+                if (random.random().nextBoolean()) {
+                    held.add(rule);
+                }
+            }
+            assertSameResults(random, DiscountPlan.compile(rules), new PriceBook(held), 4);
+        }
+    }
+
+    @Test
+    void stopsTheBookWhereThePlanOrdersEqualPrioritiesDifferently() {
+        List<DiscountStrategy> rules = new ArrayList<>(AssignmentScenario.createDiscountStrategies());
+        rules.add(1, BrandDiscount.builder().id("BRAND_PUMA_5").description("5% off PUMA items")
+                .discountPercent(5).targetBrand("PUMA").build());
+        List<DiscountStrategy> swapped = new ArrayList<>(rules);
+        Collections.swap(swapped, 0, 1);
+        DiscountPlan plan = DiscountPlan.compile(swapped);
+        PriceBook book = new PriceBook(rules);
+
+        // The book applies BRAND_PUMA_40 first, the plan BRAND_PUMA_5
+        assertEquals(1, book.stageFor(plan).size());
+        assertEquals(3, book.stageFor(DiscountPlan.compile(rules)).size());
+        assertSameResults(new RandomRules(17), plan, book, 3);
+        Cart cart = AssignmentScenario.createCart();
+        for (ReasoningLevel level : ReasoningLevel.values()) {
+            DiscountCalculator calculator = new DiscountCalculator(level);
+            assertEquals(Results.describe(calculator.calculate(cart, plan)),
+                    Results.describe(calculator.calculate(cart, book, plan)));
+        }
+    }
+
+    @Test
+    void publishesEachRuleChangeAsANewVersion() {
+        RandomRules random = new RandomRules(19);
+        List<DiscountStrategy> rules = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            rules.add(random.random().nextBoolean() ? random.brandRule("B" + i) : random.categoryRule("C" + i));
+        }
+        rules.removeIf(rule -> !PriceBook.holds(rule));
+        PriceBook book = new PriceBook(rules);
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.FULL);
+
+        for (int change = 0; change < 20; change++) {
+            for (int c = 0; c < 20; c++) {
+                calculator.calculate(random.cart("warm-" + c, 5, 3), book, DiscountPlan.compile(rules));
+            }
+            long version = book.getVersion();
+            int position = random.random().nextInt(rules.size());
+            if (change % 3 == 2) {
+                book.removeRule(rules.remove(position).getId());
+            } else {
+                DiscountStrategy replacement;
+                do {
+                    replacement = random.brandRule(rules.get(position).getId());
+                } while (!PriceBook.holds(replacement));
+                book.putRule((ItemLevelDiscount) replacement);
+                rules.set(position, replacement);
+            }
+            assertEquals(version + 1, book.getVersion());
+            assertEquals(rules.size(), book.ruleCount());
+            assertSameResults(random, DiscountPlan.compile(rules), book, 4);
+        }
+    }
+
+    @Test
+    void keepsThePricesOfTheVersionAStageRead() {
+        List<DiscountStrategy> rules = AssignmentScenario.createDiscountStrategies();
+        DiscountPlan plan = DiscountPlan.compile(rules);
+        PriceBook book = new PriceBook(rules);
+        Cart cart = AssignmentScenario.createCart();
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY);
+        assertEquals(Results.describe(calculator.calculate(cart, plan)),
+                Results.describe(calculator.calculate(cart, book, plan)));
+
+        PriceBook.Block stage = book.stageFor(plan);
+        assertEquals(1, book.removeRule("BRAND_PUMA_40"));
+        PriceLedger ledger = new PriceLedger(cart);
+        stage.applyTo(cart, ledger, DiscountResult.builder(ReasoningLevel.OFF));
+
+        // 999 x 2 less 40% and then 10%; no rule matches the shoes
+        assertEquals(107_892, ledger.get(0));
+        assertEquals(499_900, ledger.get(1));
+        assertEquals(89_910, book.getUnitPrice("PUMA-001").getPaise());
+        assertEquals(499_900, book.getUnitPrice("NIKE-001").getPaise());
+    }
+
+    private static void assertSameResults(RandomRules random, DiscountPlan plan, PriceBook book, int maxQuantity) {
+        for (int c = 0; c < 40; c++) {
+            Cart cart = random.cart("cart-" + c, 6, maxQuantity);
+            for (ReasoningLevel level : ReasoningLevel.values()) {
+                DiscountCalculator calculator = new DiscountCalculator(level);
+                assertEquals(Results.describe(calculator.calculate(cart, plan)),
+                        Results.describe(calculator.calculate(cart, book, plan)), cart.getCartId() + " at " + level);
+            }
+        }
+    }
+}
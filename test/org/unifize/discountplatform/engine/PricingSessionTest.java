@@ -0,0 +1,81 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingSessionTest {
+
+    @Test
+    void everyDeltaPricesLikeAFullCalculation() {
+        RandomRules random = new RandomRules(29);
+        for (int round = 0; round < 20; round++) {
+            DiscountPlan plan = DiscountPlan.compile(random.rules(5 + random.random().nextInt(40)));
+            for (ReasoningLevel level : ReasoningLevel.values()) {
+                DiscountCalculator calculator = new DiscountCalculator(level);
+                PricingSession session = new PricingSession(calculator, plan, random.cart("cart", 4, 3));
+                assertEquals(Results.describe(calculator.calculate(session.getCart(), plan)),
+                        Results.describe(session.getResult()));
+
+                for (int edit = 0; edit < 30; edit++) {
+                    DiscountResult result = session.apply(randomDelta(random, session.getCart(), edit));
+                    assertSame(result, session.getResult());
+                    assertEquals(Results.describe(calculator.calculate(session.getCart(), plan)),
+                            Results.describe(result), "edit " + edit + " at " + level);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pricesAgainstTheSnapshotItStartedWith() {
+        RandomRules random = new RandomRules(31);
+        RuleRepository repository = new RuleRepository(random.rules(30));
+        RuleSnapshot snapshot = repository.current();
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.FULL);
+        PricingSession session = new PricingSession(calculator, snapshot, random.cart("cart", 4, 3));
+
+        repository.publish(random.rules(30));
+        for (int edit = 0; edit < 20; edit++) {
+            DiscountResult result = session.apply(randomDelta(random, session.getCart(), edit));
+            assertEquals(snapshot.getVersion(), result.getRuleVersion());
+            assertEquals(Results.describe(calculator.calculate(session.getCart(), snapshot)),
+                    Results.describe(result));
+        }
+    }
+
+    @Test
+    void keepsTheEditsBeforeARejectedDelta() {
+        RandomRules random = new RandomRules(37);
+        DiscountPlan plan = DiscountPlan.compile(random.rules(30));
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY);
+        PricingSession session = new PricingSession(calculator, plan, random.cart("cart", 0, 1));
+
+        List<CartDelta> deltas = Arrays.asList(
+                CartDelta.add(random.item("a", 2)),
+                CartDelta.add(random.item("b", 1)),
+                CartDelta.remove("missing"),
+                CartDelta.add(random.item("c", 1)));
+        assertThrows(IllegalArgumentException.class, () -> session.applyAll(deltas));
+
+        assertEquals(2, session.getCart().getItems().size());
+        assertEquals(Results.describe(calculator.calculate(session.getCart(), plan)),
+                Results.describe(session.getResult()));
+    }
+
+    private static CartDelta randomDelta(RandomRules random, Cart cart, int edit) {
+        List<CartItem> items = cart.getItems();
+        int kind = items.isEmpty() ? 0 : random.random().nextInt(3);
+        if (kind == 0) {
+            return CartDelta.add(random.item("added-" + edit, 1 + random.random().nextInt(3)));
+        }
+        String productId = items.get(random.random().nextInt(items.size())).getProductId();
+        if (kind == 1) {
+            return CartDelta.remove(productId);
+        }
+        return CartDelta.updateQuantity(productId, 1 + random.random().nextInt(12));
+    }
+}
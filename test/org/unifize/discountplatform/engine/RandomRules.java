@@ -0,0 +1,101 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.payment.*;
+import org.unifize.discountplatform.domain.strategy.*;
+
+import java.util.*;
+
+/**
+ * Seeded random rules and carts over a small set of brands, categories, voucher codes and
+ * payment methods, so rules and carts overlap often.
+ */
+final class RandomRules {
+
+    static final int BRANDS = 10;
+    static final int CATEGORIES = 6;
+
+    private final Random random;
+
+    RandomRules(long seed) {
+        this.random = new Random(seed);
+    }
+
+    Random random() {
+        return random;
+    }
+
+    /**
+     * @return A rule of any built-in type; about a quarter are non-stackable and a fifth grouped
+     */
+    DiscountStrategy rule(String id) {
+        int kind = random.nextInt(4);
+        if (kind == 0) {
+            return brandRule(id);
+        }
+        if (kind == 1) {
+            return categoryRule(id);
+        }
+        boolean stackable = random.nextInt(4) != 0;
+        String group = random.nextInt(5) == 0 ? "G" + random.nextInt(3) : null;
+        if (kind == 2) {
+            return VoucherDiscount.builder().id(id).description("voucher " + id)
+                    .discountPercent(1 + random.nextInt(60)).voucherCode("CODE" + random.nextInt(3))
+                    .maxDiscountCap(Money.ofRupees(500)).stackable(stackable).exclusiveGroup(group).build();
+        }
+        return PaymentDiscount.builder().id(id).description("payment " + id)
+                .discountPercent(1 + random.nextInt(20))
+                .paymentMode(random.nextBoolean() ? PaymentMode.UPI : PaymentMode.CREDIT_CARD)
+                .requiredBank(random.nextBoolean() ? "ICICI" : null).maxDiscountCap(Money.ofRupees(100))
+                .stackable(stackable).exclusiveGroup(group).build();
+    }
+
+    DiscountStrategy brandRule(String id) {
+        boolean stackable = random.nextInt(4) != 0;
+        String group = random.nextInt(5) == 0 ? "G" + random.nextInt(3) : null;
+        return BrandDiscount.builder().id(id).description("brand " + id)
+                .discountPercent(1 + random.nextInt(40)).targetBrand("Br" + random.nextInt(BRANDS))
+                .stackable(stackable).exclusiveGroup(group).build();
+    }
+
+    DiscountStrategy categoryRule(String id) {
+        boolean stackable = random.nextInt(4) != 0;
+        String group = random.nextInt(5) == 0 ? "G" + random.nextInt(3) : null;
+        return CategoryDiscount.builder().id(id).description("category " + id)
+                .discountPercent(1 + random.nextInt(40)).targetCategory("Ca" + random.nextInt(CATEGORIES))
+                .stackable(stackable).exclusiveGroup(group)
+                .maxDiscountCap(random.nextBoolean() ? Money.ofRupees(300) : null).build();
+    }
+
+    List<DiscountStrategy> rules(int count) {
+        List<DiscountStrategy> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(rule("R" + i));
+        }
+        return rules;
+    }
+
+    /**
+     * @return A cart of up to {@code maxLines} lines with distinct products
+     */
+    Cart cart(String cartId, int maxLines, int maxQuantity) {
+        List<CartItem> items = new ArrayList<>();
+        int lines = random.nextInt(maxLines + 1);
+        for (int j = 0; j < lines; j++) {
+            items.add(item("p" + j, 1 + random.nextInt(maxQuantity)));
+        }
+        return new Cart(cartId, items, paymentMethod(), "cust-" + random.nextInt(4), null,
+                random.nextBoolean() ? "CODE" + random.nextInt(3) : null);
+    }
+
+    CartItem item(String productId, int quantity) {
+        return new CartItem(productId, "product " + productId, "Br" + random.nextInt(BRANDS),
+                "Ca" + random.nextInt(CATEGORIES), Money.ofPaise(10_000 + random.nextInt(300_000)), quantity);
+    }
+
+    PaymentMethod paymentMethod() {
+        return random.nextBoolean()
+                ? PaymentMethodFactory.createUpi("user@upi", "GPay")
+                : PaymentMethodFactory.createCreditCard(random.nextBoolean() ? "ICICI" : "HDFC", "VISA");
+    }
+}
@@ -0,0 +1,164 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.strategy.*;
+import org.unifize.discountplatform.sample.AssignmentScenario;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedemptionLedgerTest {
+
+    private static final DiscountPlan PLAN = DiscountPlan.compile(AssignmentScenario.createDiscountStrategies());
+
+    @Test
+    void expiresOnlyReservationsPastTheirHoldTime() throws InterruptedException {
+        Cart cart = AssignmentScenario.createCart();
+        DiscountResult result = new DiscountCalculator(ReasoningLevel.OFF).calculate(cart, PLAN);
+        try (RedemptionLedger ledger = new RedemptionLedger(Duration.ofMillis(100))) {
+            ledger.setLimit("SUPER69", RedemptionLimit.builder().maxRedemptions(3).build());
+            RedemptionLedger.Reservation committed = ledger.reserve(cart, result);
+            RedemptionLedger.Reservation released = ledger.reserve(cart, result);
+            RedemptionLedger.Reservation abandoned = ledger.reserve(cart, result);
+            assertNull(ledger.reserve(cart, result));
+            assertTrue(committed.commit());
+            assertTrue(released.release());
+            assertEquals(1, ledger.getPendingCount());
+
+            Thread.sleep(150);
+            ledger.expireReservations();
+            RedemptionLedger.Reservation fresh = ledger.reserve(cart, result);
+            assertEquals(0, ledger.expireReservations());
+
+            assertEquals(RedemptionLedger.Reservation.State.EXPIRED, abandoned.getState());
+            assertFalse(abandoned.commit());
+            assertEquals(RedemptionLedger.Reservation.State.PENDING, fresh.getState());
+            assertEquals(1, ledger.getExpiredCount());
+            assertEquals(1, ledger.getPendingCount());
+            assertEquals(1, ledger.getRemainingRedemptions("SUPER69"));
+            assertEquals(1, ledger.getRedemptions("SUPER69"));
+        }
+    }
+
+    @Test
+    void pricingLetsAnAffordableRuleWinOverOneThatWouldOverspendItsBudget() {
+        List<DiscountStrategy> rules = Arrays.asList(
+                VoucherDiscount.builder().id("BIG").voucherCode("BIG").description("30% off")
+                        .discountPercent(30).exclusiveGroup("vouchers").build(),
+                VoucherDiscount.builder().id("SMALL").voucherCode("SMALL").description("10% off")
+                        .discountPercent(10).exclusiveGroup("vouchers").build(),
+                BrandDiscount.builder().id("PUMA").description("10% off PUMA")
+                        .discountPercent(10).targetBrand("PUMA").build());
+        DiscountPlan plan = DiscountPlan.compile(rules);
+        Cart cart = AssignmentScenario.createCart();
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.SUMMARY);
+
+        try (RedemptionLedger ledger = new RedemptionLedger()) {
+            ledger.setLimit("BIG", RedemptionLimit.builder().budget(Money.ofRupees(100)).build());
+            DiscountResult result = calculator.calculate(cart, plan, ledger);
+
+            assertEquals(Arrays.asList("PUMA", "SMALL"), ids(result));
+            assertEquals(Collections.singletonList("BIG: Discount exceeds the ₹100.00 left in its budget"),
+                    result.getSkippedReasons());
+        }
+        try (RedemptionLedger ledger = new RedemptionLedger()) {
+            ledger.setLimit("BIG", RedemptionLimit.builder().budget(Money.ofRupees(10_000)).build());
+            assertEquals(Results.describe(calculator.calculate(cart, plan)),
+                    Results.describe(calculator.calculate(cart, plan, ledger)));
+        }
+    }
+
+    @Test
+    void concurrentReservationsNeverExceedTheLimits() throws Exception {
+        int threads = 4;
+        int customers = 60;
+        RedemptionLimit limit = RedemptionLimit.builder().maxRedemptions(150)
+                .budget(Money.ofRupees(12_000)).maxPerCustomer(3).build();
+        AtomicInteger held = new AtomicInteger();
+        AtomicLong heldPaise = new AtomicLong();
+        AtomicInteger[] heldByCustomer = new AtomicInteger[customers];
+        Arrays.setAll(heldByCustomer, c -> new AtomicInteger());
+        AtomicInteger committed = new AtomicInteger();
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+        try (RedemptionLedger ledger = new RedemptionLedger()) {
+            ledger.setLimit("FLASH", limit);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                workers.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int attempt = 0; attempt < 3_000; attempt++) {
+                        int customer = random.nextInt(customers);
+                        long paise = 100 * (1 + random.nextInt(200));
+                        RedemptionLedger.Reservation reservation = ledger.reserve(cart(customer), result(paise));
+                        if (reservation == null) {
+                            continue;
+                        }
+                        // Counted after the ledger took its share and before it gets it back,
+                        // so these never run ahead of what the ledger holds
+                        int count = held.incrementAndGet();
+                        long amount = heldPaise.addAndGet(paise);
+                        int perCustomer = heldByCustomer[customer].incrementAndGet();
+                        if (count > 150 || amount > Money.ofRupees(12_000).getPaise() || perCustomer > 3) {
+                            violations.add(count + " redemptions, " + amount + " paise, " + perCustomer
+                                    + " for customer " + customer);
+                        }
+                        int outcome = random.nextInt(3);
+                        if (outcome == 0) {
+                            assertTrue(reservation.commit());
+                            committed.incrementAndGet();
+                        } else if (outcome == 1) {
+                            held.decrementAndGet();
+                            heldPaise.addAndGet(-paise);
+                            heldByCustomer[customer].decrementAndGet();
+                            assertTrue(reservation.release());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            pool.shutdown();
+
+            assertEquals(Collections.emptyList(), violations);
+            // The checkouts ran the budget down to less than the largest discount
+            assertTrue(ledger.getRemainingBudget("FLASH").getPaise() < 20_000);
+            assertEquals(committed.get(), ledger.getRedemptions("FLASH"));
+            assertEquals(150 - held.get(), ledger.getRemainingRedemptions("FLASH"));
+            assertEquals(Money.ofRupees(12_000).getPaise() - heldPaise.get(),
+                    ledger.getRemainingBudget("FLASH").getPaise());
+            assertEquals(held.get() - committed.get(), ledger.getPendingCount());
+        }
+    }
+
+    private static List<String> ids(DiscountResult result) {
+        List<String> ids = new ArrayList<>();
+        for (AppliedDiscount discount : result.getAppliedDiscounts()) {
+            ids.add(discount.getDiscountId());
+        }
+        return ids;
+    }
+
+    private static Cart cart(int customer) {
+        return new Cart("cart", Collections.emptyList(), new RandomRules(customer).paymentMethod(),
+                "cust-" + customer, null);
+    }
+
+    private static DiscountResult result(long paise) {
+        return DiscountResult.builder(ReasoningLevel.OFF)
+                .originalTotal(Money.ofRupees(1_000))
+                .finalPrice(Money.ofPaise(Money.ofRupees(1_000).getPaise() - paise))
+                .addAppliedDiscount(new AppliedDiscount("FLASH", DiscountType.VOUCHER, Money.ofPaise(paise), "flash sale"))
+                .build();
+    }
+}
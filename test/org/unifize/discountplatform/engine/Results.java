@@ -0,0 +1,15 @@
+package org.unifize.discountplatform.engine;
+
+import org.unifize.discountplatform.domain.DiscountResult;
+
+/**
+ * Comparable text of a result: prices, applied discounts, skips, reasoning and rule version.
+ */
+final class Results {
+
+    private Results() {} // Prevent instantiation
+
+    static String describe(DiscountResult result) {
+        return result + "\n" + result.getReasoning() + "\nversion " + result.getRuleVersion();
+    }
+}
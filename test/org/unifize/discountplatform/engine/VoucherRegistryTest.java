@@ -0,0 +1,51 @@
+package org.unifize.discountplatform.engine;
+
+import org.junit.jupiter.api.Test;
+import org.unifize.discountplatform.domain.*;
+import org.unifize.discountplatform.domain.payment.PaymentMethodFactory;
+import org.unifize.discountplatform.domain.strategy.VoucherDiscount;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoucherRegistryTest {
+
+    private static final CustomerTiers TIERS = CustomerTiers.of("STANDARD", "GOLD");
+
+    @Test
+    void rejectsVouchersNamingATierOutsideItsModel() {
+        VoucherRegistry vouchers = new VoucherRegistry(TIERS);
+        vouchers.register(voucher("GOLD10", "gold"));
+
+        assertThrows(IllegalArgumentException.class, () -> vouchers.register(voucher("VIP10", "PLATINUM")));
+        assertThrows(IllegalArgumentException.class,
+                () -> vouchers.importCodes(voucher("VIP", "PLATINUM"), List.of("VIP-1", "VIP-2")));
+        assertNull(vouchers.lookup("VIP-1"));
+        assertEquals(1, vouchers.size());
+    }
+
+    @Test
+    void tieredPricingNeverThrowsOnAVoucherOutsideTheModel() {
+        TieredPlan plan = TieredPlan.compile(List.of(), TIERS);
+        VoucherRegistry vouchers = new VoucherRegistry();
+        vouchers.register(voucher("GOLD10", "GOLD"));
+        vouchers.register(voucher("VIP10", "PLATINUM"));
+        DiscountCalculator calculator = new DiscountCalculator(ReasoningLevel.OFF);
+
+        assertEquals(1, calculator.calculate(cart("GOLD", "GOLD10"), plan, vouchers).getAppliedDiscounts().size());
+        assertTrue(calculator.calculate(cart("STANDARD", "GOLD10"), plan, vouchers).getAppliedDiscounts().isEmpty());
+        assertTrue(calculator.calculate(cart("GOLD", "VIP10"), plan, vouchers).getAppliedDiscounts().isEmpty());
+    }
+
+    private static VoucherDiscount voucher(String code, String minCustomerTier) {
+        return VoucherDiscount.builder().id(code).description("voucher " + code).discountPercent(10)
+                .voucherCode(code).minCustomerTier(minCustomerTier).build();
+    }
+
+    private static Cart cart(String customerTier, String voucherCode) {
+        List<CartItem> items = List.of(new CartItem("p1", "Shirt", "Br0", "Ca0", Money.ofRupees(1000), 1));
+        return new Cart("cart", items, PaymentMethodFactory.createUpi("user@upi", "GPay"), "cust-1",
+                customerTier, voucherCode);
+    }
+}